@@ -0,0 +1,4 @@
+-- Adds the index on bin.device_id of create_db.sql to an existing database. Safe to run more than once.
+-- Built concurrently, so the application can keep running (and writing to bin) meanwhile; must not run inside a transaction.
+-- A build that fails leaves an invalid index behind, which IF NOT EXISTS would keep: drop it before running again.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS bin_device_id_idx ON public.bin USING btree (device_id);
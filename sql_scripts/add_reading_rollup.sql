@@ -0,0 +1,30 @@
+-- Adds the reading_rollup table of create_db.sql to an existing database. Safe to run more than once.
+-- The application fills it from the existing readings on its first rollup run (SensorRollupService).
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS public.reading_rollup (
+                                       sensor varchar(16) NOT NULL,
+                                       resolution varchar(8) NOT NULL,
+                                       bin_id int8 NOT NULL,
+                                       bucket timestamp NOT NULL,
+                                       min_value float8 NOT NULL,
+                                       max_value float8 NOT NULL,
+                                       sum_value float8 NOT NULL,
+                                       reading_count int8 NOT NULL,
+                                       last_value float8 NOT NULL,
+                                       last_at timestamp NOT NULL
+);
+
+-- Added separately, so that a table created by hand without them still gets the key the rollup's upsert relies on
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'reading_rollup_pk') THEN
+        ALTER TABLE public.reading_rollup ADD CONSTRAINT reading_rollup_pk PRIMARY KEY (sensor, resolution, bin_id, bucket);
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'reading_rollup_fk') THEN
+        ALTER TABLE public.reading_rollup ADD CONSTRAINT reading_rollup_fk FOREIGN KEY (bin_id)
+            REFERENCES public.bin(id) ON UPDATE CASCADE ON DELETE CASCADE;
+    END IF;
+END $$;
+
+COMMIT;
@@ -9,28 +9,55 @@ CREATE TABLE public.bin (
                                 longitude float8 NULL,
                                 CONSTRAINT bin_pk PRIMARY KEY (id)
 );
+-- Bins are looked up by the ID of the device in them whenever a device connects or sends a reading
+CREATE INDEX bin_device_id_idx ON public.bin USING btree (device_id);
+-- Readings are stored in float8 and partitioned by month on date_time, so that a query with a time range only
+-- scans the partitions of that range and old months can be dropped as a whole.
+-- The partitions are created ahead of time by the application (SensorPartitionMaintainer), the default partition
+-- only catches readings of a month whose partition does not exist yet.
 CREATE TABLE public.humidity (
-                                 value numeric NULL,
+                                 value float8 NULL,
                                  date_time timestamp NOT NULL,
                                  bin_id int8 NOT NULL,
                                  CONSTRAINT humidity_pk PRIMARY KEY (bin_id, date_time),
                                  CONSTRAINT humidity_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
-);
+) PARTITION BY RANGE (date_time);
+CREATE TABLE public.humidity_default PARTITION OF public.humidity DEFAULT;
 
 CREATE TABLE public."level" (
-                                value numeric NULL,
+                                value float8 NULL,
                                 date_time timestamp NOT NULL,
                                 bin_id int8 NOT NULL,
                                 CONSTRAINT level_pk PRIMARY KEY (bin_id, date_time),
                                 CONSTRAINT level_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
-);
+) PARTITION BY RANGE (date_time);
+CREATE TABLE public.level_default PARTITION OF public."level" DEFAULT;
 
 CREATE TABLE public.temperature (
-                                    value numeric NULL,
+                                    value float8 NULL,
                                     date_time timestamp NOT NULL,
                                     bin_id int8 NOT NULL,
                                     CONSTRAINT temperature_pk PRIMARY KEY (bin_id, date_time),
                                     CONSTRAINT temperature_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
+) PARTITION BY RANGE (date_time);
+CREATE TABLE public.temperature_default PARTITION OF public.temperature DEFAULT;
+
+-- Hourly and daily aggregates of the readings, maintained by the application (SensorRollupService)
+-- sensor is the reading table (humidity, level or temperature) and resolution is hour or day.
+-- The sum is kept instead of the average, so that days can be aggregated from their hours.
+CREATE TABLE public.reading_rollup (
+                                       sensor varchar(16) NOT NULL,
+                                       resolution varchar(8) NOT NULL,
+                                       bin_id int8 NOT NULL,
+                                       bucket timestamp NOT NULL,
+                                       min_value float8 NOT NULL,
+                                       max_value float8 NOT NULL,
+                                       sum_value float8 NOT NULL,
+                                       reading_count int8 NOT NULL,
+                                       last_value float8 NOT NULL,
+                                       last_at timestamp NOT NULL,
+                                       CONSTRAINT reading_rollup_pk PRIMARY KEY (sensor, resolution, bin_id, bucket),
+                                       CONSTRAINT reading_rollup_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE ON DELETE CASCADE
 );
 
 CREATE TABLE public.users (
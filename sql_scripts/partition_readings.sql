@@ -0,0 +1,66 @@
+-- Moves an existing database to the partitioned reading tables of create_db.sql: float8 values, one partition per month.
+-- Run once, while the application is stopped. The old tables are kept as *_plain until the new ones are checked.
+-- A partition is created for every month that has readings, the application creates the upcoming ones from then on.
+BEGIN;
+
+ALTER TABLE public.humidity RENAME TO humidity_plain;
+ALTER TABLE public.humidity_plain RENAME CONSTRAINT humidity_pk TO humidity_plain_pk;
+ALTER TABLE public.humidity_plain RENAME CONSTRAINT humidity_fk TO humidity_plain_fk;
+ALTER TABLE public."level" RENAME TO level_plain;
+ALTER TABLE public.level_plain RENAME CONSTRAINT level_pk TO level_plain_pk;
+ALTER TABLE public.level_plain RENAME CONSTRAINT level_fk TO level_plain_fk;
+ALTER TABLE public.temperature RENAME TO temperature_plain;
+ALTER TABLE public.temperature_plain RENAME CONSTRAINT temperature_pk TO temperature_plain_pk;
+ALTER TABLE public.temperature_plain RENAME CONSTRAINT temperature_fk TO temperature_plain_fk;
+
+CREATE TABLE public.humidity (
+                                 value float8 NULL,
+                                 date_time timestamp NOT NULL,
+                                 bin_id int8 NOT NULL,
+                                 CONSTRAINT humidity_pk PRIMARY KEY (bin_id, date_time),
+                                 CONSTRAINT humidity_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
+) PARTITION BY RANGE (date_time);
+
+CREATE TABLE public."level" (
+                                value float8 NULL,
+                                date_time timestamp NOT NULL,
+                                bin_id int8 NOT NULL,
+                                CONSTRAINT level_pk PRIMARY KEY (bin_id, date_time),
+                                CONSTRAINT level_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
+) PARTITION BY RANGE (date_time);
+
+CREATE TABLE public.temperature (
+                                    value float8 NULL,
+                                    date_time timestamp NOT NULL,
+                                    bin_id int8 NOT NULL,
+                                    CONSTRAINT temperature_pk PRIMARY KEY (bin_id, date_time),
+                                    CONSTRAINT temperature_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
+) PARTITION BY RANGE (date_time);
+
+-- One partition per month with readings, named like the ones SensorPartitionRepository creates (level_2024_01)
+DO $$
+DECLARE
+    reading_table text;
+    month date;
+BEGIN
+    FOREACH reading_table IN ARRAY ARRAY['humidity', 'level', 'temperature'] LOOP
+        FOR month IN EXECUTE format('SELECT DISTINCT date_trunc(''month'', date_time)::date FROM public.%I', reading_table || '_plain') LOOP
+            EXECUTE format('CREATE TABLE public.%I PARTITION OF public.%I FOR VALUES FROM (%L) TO (%L)',
+                           reading_table || to_char(month, '_YYYY_MM'), reading_table, month, (month + interval '1 month')::date);
+        END LOOP;
+        EXECUTE format('CREATE TABLE public.%I PARTITION OF public.%I DEFAULT', reading_table || '_default', reading_table);
+    END LOOP;
+END $$;
+
+INSERT INTO public.humidity (value, date_time, bin_id) SELECT value::float8, date_time, bin_id FROM public.humidity_plain;
+INSERT INTO public."level" (value, date_time, bin_id) SELECT value::float8, date_time, bin_id FROM public.level_plain;
+INSERT INTO public.temperature (value, date_time, bin_id) SELECT value::float8, date_time, bin_id FROM public.temperature_plain;
+
+COMMIT;
+
+ANALYZE public.humidity;
+ANALYZE public."level";
+ANALYZE public.temperature;
+
+-- Once the application runs fine on the new tables:
+-- DROP TABLE public.humidity_plain, public.level_plain, public.temperature_plain;
@@ -1,10 +1,6 @@
 package garbagegroup.cloud.DTOs;
 
-import garbagegroup.cloud.model.*;
-import jakarta.persistence.*;
-
 import java.time.LocalDateTime;
-import java.util.List;
 
 public class BinDto {
     private Long id;
@@ -15,15 +11,12 @@ public class BinDto {
     private LocalDateTime pickUpTime;
     private Double fillThreshold;
     private int deviceId;
-    private List<Humidity> humidity;
-    private List<Level> fillLevels;
-    private List<Temperature> temperatures;
     private String status;
 
     public BinDto(){
     }
 
-    public BinDto(Long id, Double longitude, Double latitude, Double capacity, LocalDateTime emptiedLast, LocalDateTime pickUpTime, Double fillThreshold, int deviceId, List<Humidity> humidity,List<Level> fillLevels, List<Temperature> temperatures, String status) {
+    public BinDto(Long id, Double longitude, Double latitude, Double capacity, LocalDateTime emptiedLast, LocalDateTime pickUpTime, Double fillThreshold, int deviceId, String status) {
         this.id = id;
         this.longitude = longitude;
         this.latitude = latitude;
@@ -32,9 +25,6 @@ public class BinDto {
         this.pickUpTime = pickUpTime;
         this.fillThreshold = fillThreshold;
         this.deviceId = deviceId;
-        this.humidity = humidity;
-        this.fillLevels = fillLevels;
-        this.temperatures = temperatures;
         this.status = status;
     }
 
@@ -77,33 +67,6 @@ public class BinDto {
         this.deviceId = deviceId;
     }
 
-    @OneToMany
-    public List<Humidity> getHumidity() {
-        return humidity;
-    }
-
-    public void setHumidity(List<Humidity> humidity) {
-        this.humidity = humidity;
-    }
-
-    @OneToMany
-    public List<Level> getFillLevels() {
-        return fillLevels;
-    }
-
-    public void setFillLevels(List<Level> fillLevels) {
-        this.fillLevels = fillLevels;
-    }
-
-    @OneToMany
-    public List<Temperature> getTemperatures() {
-        return temperatures;
-    }
-
-    public void setTemperatures(List<Temperature> temperatures) {
-        this.temperatures = temperatures;
-    }
-
     public Double getCapacity() {
         return capacity;
     }
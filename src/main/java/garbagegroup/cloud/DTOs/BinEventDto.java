@@ -0,0 +1,100 @@
+package garbagegroup.cloud.DTOs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+/**
+ * One update pushed to dashboards over the bin event stream
+ * type is "reading" (a new humidity, temperature or fill level), "alert" (the fill level crossed the threshold, up or down)
+ * or "status" (the device status changed), only the fields of that type are set
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BinEventDto {
+    public static final String READING = "reading";
+    public static final String ALERT = "alert";
+    public static final String STATUS = "status";
+
+    private String type;
+    private Long binId;
+    private String sensor;
+    private Double value;
+    private Double fillThreshold;
+    private Boolean raised;
+    private String status;
+    private LocalDateTime dateTime;
+
+    public BinEventDto(String type, Long binId, LocalDateTime dateTime) {
+        this.type = type;
+        this.binId = binId;
+        this.dateTime = dateTime;
+    }
+
+    public static BinEventDto reading(Long binId, String sensor, double value, LocalDateTime dateTime) {
+        BinEventDto event = new BinEventDto(READING, binId, dateTime);
+        event.sensor = sensor;
+        event.value = value;
+        return event;
+    }
+
+    /**
+     * @param binId
+     * @param alert the bin's alert if it was raised, null if it was cleared
+     */
+    public static BinEventDto alert(Long binId, NotificationBinDto alert) {
+        BinEventDto event = new BinEventDto(ALERT, binId, alert == null ? LocalDateTime.now() : alert.getTimestamp());
+        event.raised = alert != null;
+        if (alert != null) {
+            event.value = alert.getLevelValue();
+            event.fillThreshold = alert.getFillThreshold();
+        }
+        return event;
+    }
+
+    public static BinEventDto status(Long binId, String status) {
+        BinEventDto event = new BinEventDto(STATUS, binId, LocalDateTime.now());
+        event.status = status;
+        return event;
+    }
+
+    /**
+     * @return what the event is an update of, a newer event with the same key supersedes an older one that is not sent yet
+     */
+    @JsonIgnore
+    public String getKey() {
+        return type + "/" + binId + (sensor == null ? "" : "/" + sensor);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getBinId() {
+        return binId;
+    }
+
+    public String getSensor() {
+        return sensor;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public Double getFillThreshold() {
+        return fillThreshold;
+    }
+
+    public Boolean getRaised() {
+        return raised;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+}
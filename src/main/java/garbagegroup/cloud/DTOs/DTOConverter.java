@@ -16,9 +16,6 @@ public class DTOConverter {
         dto.setPickUpTime(bin.getPickUpTime());
         dto.setFillThreshold(bin.getFillThreshold());
         dto.setDeviceId(bin.getDeviceId());
-        dto.setHumidity(bin.getHumidity());
-        dto.setFillLevels(bin.getFillLevels());
-        dto.setTemperatures(bin.getTemperatures());
         dto.setStatus("");
         return dto;
     }
@@ -0,0 +1,53 @@
+package garbagegroup.cloud.DTOs;
+
+import java.time.LocalDateTime;
+
+/**
+ * One point of a sensor's history: the readings of one hour or day aggregated, or a single raw reading
+ * (then min, max, avg and last are its value and count is 1)
+ */
+public class SensorPointDto {
+    private LocalDateTime dateTime;
+    private double min;
+    private double max;
+    private double avg;
+    private double last;
+    private long count;
+
+    public SensorPointDto(LocalDateTime dateTime, double min, double max, double avg, double last, long count) {
+        this.dateTime = dateTime;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+        this.last = last;
+        this.count = count;
+    }
+
+    public static SensorPointDto reading(LocalDateTime dateTime, double value) {
+        return new SensorPointDto(dateTime, value, value, value, value, 1);
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
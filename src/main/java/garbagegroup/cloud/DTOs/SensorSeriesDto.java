@@ -0,0 +1,49 @@
+package garbagegroup.cloud.DTOs;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A bin's sensor history over [from, to) at the resolution picked for the length of the window, oldest point first
+ */
+public class SensorSeriesDto {
+    private Long binId;
+    private String sensor;
+    private String resolution;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<SensorPointDto> points;
+
+    public SensorSeriesDto(Long binId, String sensor, String resolution, LocalDateTime from, LocalDateTime to, List<SensorPointDto> points) {
+        this.binId = binId;
+        this.sensor = sensor;
+        this.resolution = resolution;
+        this.from = from;
+        this.to = to;
+        this.points = points;
+    }
+
+    public Long getBinId() {
+        return binId;
+    }
+
+    public String getSensor() {
+        return sensor;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public List<SensorPointDto> getPoints() {
+        return points;
+    }
+}
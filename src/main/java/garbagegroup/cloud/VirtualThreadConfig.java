@@ -0,0 +1,33 @@
+package garbagegroup.cloud;
+
+import garbagegroup.cloud.tcpserver.VirtualThreads;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in virtual threads for HTTP requests, enabled with spring.threads.virtual.enabled=true
+ * (the same switch also moves device connections onto virtual threads, see TCPServer).
+ * Spring Boot only does this itself from 3.2 on, this configuration can go once the project is upgraded.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Every request Tomcat accepts is handled on a virtual thread of its own instead of the bounded worker pool
+     *
+     * @return customizer that replaces Tomcat's executor, a no-op if the runtime has no virtual threads
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (VirtualThreads.isSupported()) {
+                protocolHandler.setExecutor(VirtualThreads.perTaskExecutor("http-request"));
+            } else {
+                System.out.println("Virtual threads need Java 21, HTTP requests keep using Tomcat's worker pool");
+            }
+        };
+    }
+}
@@ -2,29 +2,42 @@ package garbagegroup.cloud.controller;
 
 import garbagegroup.cloud.DTOs.*;
 import garbagegroup.cloud.model.*;
+import garbagegroup.cloud.service.serviceImplementation.BinEventStream;
 import garbagegroup.cloud.service.serviceInterface.IBinService;
+import garbagegroup.cloud.tcpserver.DeviceCallGuard;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/bins")
-@CrossOrigin // Needed to send requests from/to URLs on different ports (so for the frontend, because IoT doesn't care since it is TCP)
+@CrossOrigin(exposedHeaders = HttpHeaders.AGE) // Needed to send requests from/to URLs on different ports (so for the frontend, because IoT doesn't care since it is TCP), Age is read by the frontend
 public class BinController {
     private IBinService binService;
+    private BinEventStream eventStream;
     private Logger logger = LoggerFactory.getLogger(BinController.class);
 
     @Autowired
-    public BinController(IBinService binService) {
+    public BinController(IBinService binService, BinEventStream eventStream) {
         this.binService = binService;
+        this.eventStream = eventStream;
     }
 
     /**
@@ -37,7 +50,7 @@ public class BinController {
         try {
             Optional<Humidity> humidity = binService.getCurrentHumidityByBinId(id);
 
-            return humidity.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+            return humidity.map(this::withAge)
                     .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
         } catch (Exception e) {
             logger.error("Error retrieving humidity for bin with id {}", id, e);
@@ -73,7 +86,7 @@ public class BinController {
         try {
             Optional<Temperature> temperature = binService.getCurrentTemperatureByBinId(id);
 
-            return temperature.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+            return temperature.map(this::withAge)
                     .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
         } catch (Exception e) {
             logger.error("Error retrieving humidity for bin with id {}", id, e);
@@ -86,7 +99,7 @@ public class BinController {
         try {
             Optional<Level> fillLevel = binService.getCurrentFillLevelByBinId(id);
 
-            return fillLevel.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+            return fillLevel.map(this::withAge)
                     .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
         } catch (Exception e) {
             logger.error("Error retrieving humidity for bin with id {}", id, e);
@@ -94,6 +107,101 @@ public class BinController {
         }
     }
 
+    /**
+     * The current reading endpoints answer right away with the latest stored reading, even if it is stale (a fresh one is
+     * then fetched from the device in the background), so the reading's age in seconds is sent along in the Age header
+     *
+     * @param reading
+     * @return 200 with the reading and its age
+     */
+    private <T extends SensorData> ResponseEntity<T> withAge(T reading) {
+        if (reading.getDateTime() == null) return ResponseEntity.ok(reading);
+        long ageSeconds = Math.max(0, Duration.between(reading.getDateTime(), LocalDateTime.now()).getSeconds());
+        return ResponseEntity.ok().header(HttpHeaders.AGE, String.valueOf(ageSeconds)).body(reading);
+    }
+
+    /**
+     * Returns one page of the bin's readings, newest first
+     * The window [from, to) defaults to the last day, ISO date-times, e.g. 2023-12-01T00:00:00
+     */
+    @GetMapping("/{id}/humidity/history")
+    public ResponseEntity<Page<Humidity>> getHumidityHistory(@PathVariable Long id,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                             @RequestParam(defaultValue = "0") int page,
+                                                             @RequestParam(defaultValue = "100") int size) {
+        return getHistory(id, "humidity", () -> binService.getHumidityHistory(id, from, to, page, size));
+    }
+
+    @GetMapping("/{id}/temperature/history")
+    public ResponseEntity<Page<Temperature>> getTemperatureHistory(@PathVariable Long id,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "100") int size) {
+        return getHistory(id, "temperature", () -> binService.getTemperatureHistory(id, from, to, page, size));
+    }
+
+    @GetMapping("/{id}/fill_level/history")
+    public ResponseEntity<Page<Level>> getFillLevelHistory(@PathVariable Long id,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                           @RequestParam(defaultValue = "0") int page,
+                                                           @RequestParam(defaultValue = "100") int size) {
+        return getHistory(id, "fill level", () -> binService.getFillLevelHistory(id, from, to, page, size));
+    }
+
+    /**
+     * Returns the bin's readings over the window as a chart series: raw readings for short windows, hourly and then
+     * daily aggregates (min, max, avg, last, count) for longer ones, so that the number of points stays bounded
+     * The window [from, to) defaults to the last day, resolution (raw, hour or day) can be given to override the choice
+     */
+    @GetMapping("/{id}/humidity/series")
+    public ResponseEntity<SensorSeriesDto> getHumiditySeries(@PathVariable Long id,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                             @RequestParam(defaultValue = "auto") String resolution) {
+        return getHistory(id, "humidity", () -> binService.getSensorSeries(id, SensorType.HUMIDITY, from, to, parseResolution(resolution)));
+    }
+
+    @GetMapping("/{id}/temperature/series")
+    public ResponseEntity<SensorSeriesDto> getTemperatureSeries(@PathVariable Long id,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                @RequestParam(defaultValue = "auto") String resolution) {
+        return getHistory(id, "temperature", () -> binService.getSensorSeries(id, SensorType.TEMPERATURE, from, to, parseResolution(resolution)));
+    }
+
+    @GetMapping("/{id}/fill_level/series")
+    public ResponseEntity<SensorSeriesDto> getFillLevelSeries(@PathVariable Long id,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                              @RequestParam(defaultValue = "auto") String resolution) {
+        return getHistory(id, "fill level", () -> binService.getSensorSeries(id, SensorType.LEVEL, from, to, parseResolution(resolution)));
+    }
+
+    /**
+     * @return null for auto, the resolution is then picked from the length of the window
+     */
+    private static Resolution parseResolution(String resolution) {
+        return "auto".equalsIgnoreCase(resolution) ? null : Resolution.fromName(resolution);
+    }
+
+    private <T> ResponseEntity<T> getHistory(Long id, String sensor, Supplier<T> history) {
+        try {
+            return new ResponseEntity<>(history.get(), HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            logger.error(e.getMessage());
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            logger.error("Error retrieving " + sensor + " history for bin with id " + id, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Handles POST request for creating a bin
      * @param binDTO
@@ -171,6 +279,14 @@ public class BinController {
         }
     }
 
+    /**
+     * Hit and miss counters of the cache of current readings and device statuses
+     */
+    @GetMapping("/cache_stats")
+    public ResponseEntity<Map<String, Long>> getSensorCacheStatistics() {
+        return ResponseEntity.ok(binService.getSensorCacheStatistics());
+    }
+
     @GetMapping("/{binId}/device_status")
     public ResponseEntity<String> getDeviceStatusByBinId(@PathVariable Long binId) {
         try {
@@ -192,6 +308,67 @@ public class BinController {
         return ResponseEntity.ok("Periodic level request started with interval: " + intervalSeconds + " seconds");
     }
 
+    /**
+     * Duration, lag and poll counts of the periodic level request
+     */
+    @GetMapping("/polling_stats")
+    public ResponseEntity<Map<String, Long>> getPollingStatistics() {
+        return ResponseEntity.ok(binService.getPollingStatistics());
+    }
+
+    /**
+     * How many device circuits are open, and how many requests to devices failed or were rejected
+     */
+    @GetMapping("/circuit_stats")
+    public ResponseEntity<Map<String, Long>> getCircuitStatistics() {
+        return ResponseEntity.ok(binService.getCircuitStatistics());
+    }
+
+    /**
+     * How often the readings were rolled up into hourly and daily aggregates, and how long the last run took
+     */
+    @GetMapping("/rollup_stats")
+    public ResponseEntity<Map<String, Long>> getRollupStatistics() {
+        return ResponseEntity.ok(binService.getRollupStatistics());
+    }
+
+    /**
+     * How many raw readings, aggregates and partitions were purged past their retention, in total and by the last run
+     */
+    @GetMapping("/retention_stats")
+    public ResponseEntity<Map<String, Long>> getRetentionStatistics() {
+        return ResponseEntity.ok(binService.getRetentionStatistics());
+    }
+
+    /**
+     * Devices whose circuit is open or half-open, requests to them are answered from cached or stored data
+     */
+    @GetMapping("/unhealthy_devices")
+    public ResponseEntity<Map<Integer, DeviceCallGuard.State>> getUnhealthyDevices() {
+        return ResponseEntity.ok(binService.getUnhealthyDevices());
+    }
+
+    /**
+     * Server-Sent Events stream of new readings ("reading"), threshold crossings ("alert") and device status changes ("status")
+     * Dashboards subscribe once instead of polling the bins, optionally only for the bins within a rectangle of their region
+     * Updates are sent at most every stream.flush-interval-ms, a newer update of the same kind for the same bin replaces one not sent yet
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBinEvents(@RequestParam(required = false) Double minLatitude,
+                                      @RequestParam(required = false) Double maxLatitude,
+                                      @RequestParam(required = false) Double minLongitude,
+                                      @RequestParam(required = false) Double maxLongitude) {
+        return eventStream.subscribe(BinEventStream.Region.of(minLatitude, maxLatitude, minLongitude, maxLongitude));
+    }
+
+    /**
+     * Subscribers of the bin event stream and the number of updates published, sent and coalesced
+     */
+    @GetMapping("/stream_stats")
+    public ResponseEntity<Map<String, Long>> getStreamStatistics() {
+        return ResponseEntity.ok(eventStream.getStatistics());
+    }
+
     @PostMapping("/stopPeriodicRequest")
     public ResponseEntity<String> stopPeriodicRequest() {
         binService.stopPeriodicLevelRequest();
@@ -7,6 +7,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "bin_device_id_idx", columnList = "device_id"))     // Bins are looked up by their device
 public class Bin {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -33,23 +34,34 @@ public class Bin {
     @Column(name = "device_id")
     private int deviceId;
 
-    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch= FetchType.EAGER)
+    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference
     @JsonIgnoreProperties("bin")
     private List<Humidity> humidity;
 
-    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch= FetchType.EAGER)
+    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference
     @JsonIgnoreProperties("bin")
     private List<Level> fillLevels;
 
-    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch= FetchType.EAGER)
+    @OneToMany(mappedBy = "bin", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference
     @JsonIgnoreProperties("bin")
     private List<Temperature> temperatures;
 
     public Bin() {}
 
+    /**
+     * A bin over its threshold is picked up 3 hours after the level was read,
+     * or the next day if the level was read after 14:00
+     *
+     * @param lastLevelTime when the fill level over the threshold was read
+     * @return the pick-up time
+     */
+    public static LocalDateTime calculatePickUpTime(LocalDateTime lastLevelTime) {
+        return (lastLevelTime.getHour() >= 14) ? lastLevelTime.plusDays(1) : lastLevelTime.plusHours(3);
+    }
+
     public Bin(Double longitude, Double latitude, Double capacity, Double fillThreshold, LocalDateTime emptiedLast, LocalDateTime pickUpTime) {
         this.longitude = longitude;
         this.latitude = latitude;
@@ -0,0 +1,54 @@
+package garbagegroup.cloud.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * How finely a sensor's history is returned: every raw reading, or one aggregate per hour or per day
+ * The hourly and daily aggregates are kept in the reading_rollup table, under the resolution's name
+ */
+public enum Resolution {
+    RAW("raw", null),
+    HOUR("hour", ChronoUnit.HOURS),
+    DAY("day", ChronoUnit.DAYS);
+
+    private final String name;
+    private final ChronoUnit unit;
+
+    Resolution(String name, ChronoUnit unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return length of one aggregate, null for raw readings
+     */
+    public Duration getBucketSize() {
+        return unit == null ? null : unit.getDuration();
+    }
+
+    /**
+     * @param dateTime
+     * @return start of the aggregate the time falls into, the time itself for raw readings
+     */
+    public LocalDateTime truncate(LocalDateTime dateTime) {
+        return unit == null ? dateTime : dateTime.truncatedTo(unit);
+    }
+
+    /**
+     * @param name raw, hour or day, in any case
+     * @return the resolution of that name
+     * @throws IllegalArgumentException if there is none
+     */
+    public static Resolution fromName(String name) {
+        for (Resolution resolution : values()) {
+            if (resolution.name.equalsIgnoreCase(name)) return resolution;
+        }
+        throw new IllegalArgumentException("Unknown resolution " + name + ", expected raw, hour or day");
+    }
+}
@@ -0,0 +1,37 @@
+package garbagegroup.cloud.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A single reading waiting to be written to the humidity, temperature or level table
+ * Only carries the bin's ID, so it can be stored without loading the bin
+ */
+public class SensorReading {
+    private final SensorType type;
+    private final long binId;
+    private final double value;
+    private final LocalDateTime dateTime;
+
+    public SensorReading(SensorType type, long binId, double value, LocalDateTime dateTime) {
+        this.type = type;
+        this.binId = binId;
+        this.value = value;
+        this.dateTime = dateTime;
+    }
+
+    public SensorType getType() {
+        return type;
+    }
+
+    public long getBinId() {
+        return binId;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+}
@@ -0,0 +1,38 @@
+package garbagegroup.cloud.model;
+
+/**
+ * The three kinds of readings an IoT device measures, with the table they are stored in
+ * and the prefix the device uses for them (for example "humid:25.0")
+ */
+public enum SensorType {
+    HUMIDITY("humidity", "humid"),
+    TEMPERATURE("temperature", "tempe"),
+    LEVEL("level", "level");
+
+    private final String table;
+    private final String prefix;
+
+    SensorType(String table, String prefix) {
+        this.table = table;
+        this.prefix = prefix;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     * @return the sensor type using this prefix, or null if there is none
+     */
+    public static SensorType fromPrefix(String prefix) {
+        for (SensorType type : values()) {
+            if (type.prefix.equals(prefix)) return type;
+        }
+        return null;
+    }
+}
@@ -1,14 +1,80 @@
 package garbagegroup.cloud.repository;
 
 import garbagegroup.cloud.model.Bin;
+import garbagegroup.cloud.model.Humidity;
+import garbagegroup.cloud.model.Level;
+import garbagegroup.cloud.model.Temperature;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface IBinRepository extends JpaRepository<Bin, Long> {
     @Query("SELECT b.pickUpTime FROM Bin b WHERE b.id = :binId ORDER BY b.pickUpTime DESC")
     LocalDateTime findLastPickupTime(Long binId);
+
+    // Bin ID and device ID of every bin, to build BinDeviceIndex without loading the bins themselves
+    @Query("SELECT b.id, b.deviceId FROM Bin b")
+    List<Object[]> findDeviceAssignments();
+
+    // Bin ID and fill threshold of every bin, to build FillLevelAlertEngine without loading the bins themselves
+    @Query("SELECT b.id, b.fillThreshold FROM Bin b")
+    List<Object[]> findFillThresholds();
+
+    // Bin ID, latitude and longitude of every bin, to filter BinEventStream by region without loading the bins themselves
+    @Query("SELECT b.id, b.latitude, b.longitude FROM Bin b")
+    List<Object[]> findLocations();
+
+    // Only the newest reading of a bin, found through the (bin_id, date_time) primary key instead of loading all of them
+
+    @Query("SELECT h FROM Humidity h WHERE h.bin.id = :binId AND h.dateTime = " +
+            "(SELECT MAX(h2.dateTime) FROM Humidity h2 WHERE h2.bin.id = :binId)")
+    Optional<Humidity> findLatestHumidityByBinId(Long binId);
+
+    @Query("SELECT t FROM Temperature t WHERE t.bin.id = :binId AND t.dateTime = " +
+            "(SELECT MAX(t2.dateTime) FROM Temperature t2 WHERE t2.bin.id = :binId)")
+    Optional<Temperature> findLatestTemperatureByBinId(Long binId);
+
+    @Query("SELECT l FROM Level l WHERE l.bin.id = :binId AND l.dateTime = " +
+            "(SELECT MAX(l2.dateTime) FROM Level l2 WHERE l2.bin.id = :binId)")
+    Optional<Level> findLatestFillLevelByBinId(Long binId);
+
+    // The newest reading since the given time, on the partitioned layout only the partitions from then on are scanned
+
+    @Query("SELECT h FROM Humidity h WHERE h.bin.id = :binId AND h.dateTime >= :since AND h.dateTime = " +
+            "(SELECT MAX(h2.dateTime) FROM Humidity h2 WHERE h2.bin.id = :binId AND h2.dateTime >= :since)")
+    Optional<Humidity> findLatestHumidityByBinIdSince(Long binId, LocalDateTime since);
+
+    @Query("SELECT t FROM Temperature t WHERE t.bin.id = :binId AND t.dateTime >= :since AND t.dateTime = " +
+            "(SELECT MAX(t2.dateTime) FROM Temperature t2 WHERE t2.bin.id = :binId AND t2.dateTime >= :since)")
+    Optional<Temperature> findLatestTemperatureByBinIdSince(Long binId, LocalDateTime since);
+
+    @Query("SELECT l FROM Level l WHERE l.bin.id = :binId AND l.dateTime >= :since AND l.dateTime = " +
+            "(SELECT MAX(l2.dateTime) FROM Level l2 WHERE l2.bin.id = :binId AND l2.dateTime >= :since)")
+    Optional<Level> findLatestFillLevelByBinIdSince(Long binId, LocalDateTime since);
+
+    // The newest fill level of every bin that has one, in a single round trip
+    @Query("SELECT l FROM Level l JOIN FETCH l.bin WHERE l.dateTime = " +
+            "(SELECT MAX(l2.dateTime) FROM Level l2 WHERE l2.bin = l.bin)")
+    List<Level> findLatestFillLevels();
+
+    // One page of a bin's readings in the time window [from, to)
+
+    @Query(value = "SELECT h FROM Humidity h WHERE h.bin.id = :binId AND h.dateTime >= :from AND h.dateTime < :to",
+            countQuery = "SELECT COUNT(h.dateTime) FROM Humidity h WHERE h.bin.id = :binId AND h.dateTime >= :from AND h.dateTime < :to")
+    Page<Humidity> findHumidityHistory(Long binId, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    @Query(value = "SELECT t FROM Temperature t WHERE t.bin.id = :binId AND t.dateTime >= :from AND t.dateTime < :to",
+            countQuery = "SELECT COUNT(t.dateTime) FROM Temperature t WHERE t.bin.id = :binId AND t.dateTime >= :from AND t.dateTime < :to")
+    Page<Temperature> findTemperatureHistory(Long binId, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    @Query(value = "SELECT l FROM Level l WHERE l.bin.id = :binId AND l.dateTime >= :from AND l.dateTime < :to",
+            countQuery = "SELECT COUNT(l.dateTime) FROM Level l WHERE l.bin.id = :binId AND l.dateTime >= :from AND l.dateTime < :to")
+    Page<Level> findFillLevelHistory(Long binId, LocalDateTime from, LocalDateTime to, Pageable pageable);
 }
@@ -0,0 +1,126 @@
+package garbagegroup.cloud.repository;
+
+import garbagegroup.cloud.model.SensorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages the monthly partitions of the humidity, temperature and level tables (see sql_scripts/create_db.sql)
+ * A reading table is either a plain table or partitioned by date_time, one partition per month. A month's partition
+ * has to exist before its readings arrive, otherwise they end up in the table's default partition.
+ */
+@Repository
+public class SensorPartitionRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SensorPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param type
+     * @return true if the type's table is partitioned, false if it is a plain table
+     */
+    public boolean isPartitioned(SensorType type) {
+        Boolean partitioned = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_partitioned_table p "
+                + "JOIN pg_class c ON c.oid = p.partrelid WHERE c.relname = ?)", Boolean.class, type.getTable());
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    /**
+     * Creates the partition holding the type's readings of the given month, unless it already exists
+     *
+     * @param type of a partitioned table
+     * @param month
+     * @return true if the partition was created
+     */
+    public boolean createPartition(SensorType type, YearMonth month) {
+        String partition = partitionName(type, month);
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+        if (Boolean.TRUE.equals(exists)) return false;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF \"" + type.getTable() + "\" "
+                + "FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        return true;
+    }
+
+    /**
+     * @param type
+     * @return the months that have their own partition, the default partition and partitions not named by partitionName are left out
+     */
+    public List<YearMonth> findPartitionMonths(SensorType type) {
+        List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?", String.class, type.getTable());
+        Pattern name = Pattern.compile(Pattern.quote(type.getTable()) + "_(\\d{4})_(\\d{2})");
+        List<YearMonth> months = new ArrayList<>();
+        for (String partition : partitions) {
+            Matcher matcher = name.matcher(partition);
+            if (matcher.matches()) months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+        }
+        Collections.sort(months);
+        return months;
+    }
+
+    /**
+     * @param type
+     * @param month
+     * @return true if the month's partition holds the newest reading of some bin, which must not be dropped
+     */
+    public boolean holdsNewestReading(SensorType type, YearMonth month) {
+        String partition = partitionName(type, month);
+        Boolean holds = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + " p WHERE NOT EXISTS "
+                + "(SELECT 1 FROM \"" + type.getTable() + "\" x WHERE x.bin_id = p.bin_id AND x.date_time > p.date_time))", Boolean.class);
+        return Boolean.TRUE.equals(holds);
+    }
+
+    /**
+     * Drops the month's partition with all of its readings, which is far cheaper than deleting them row by row
+     * The drop briefly locks the whole table, so it gives up (and throws) instead of queueing the inserts behind it
+     * if it does not get the lock within lockTimeoutMillis
+     *
+     * @param type
+     * @param month
+     * @param lockTimeoutMillis
+     * @return number of readings dropped
+     */
+    public long dropPartition(SensorType type, YearMonth month, long lockTimeoutMillis) {
+        String partition = partitionName(type, month);
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partition, Long.class);
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LOCAL lock_timeout = " + Math.max(1, lockTimeoutMillis));
+                statement.execute("DROP TABLE " + partition);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * @param type
+     * @param month
+     * @return name of the partition holding the type's readings of the month, for example level_2024_01
+     */
+    public static String partitionName(SensorType type, YearMonth month) {
+        return String.format("%s_%04d_%02d", type.getTable(), month.getYear(), month.getMonthValue());
+    }
+}
@@ -0,0 +1,101 @@
+package garbagegroup.cloud.repository;
+
+import garbagegroup.cloud.model.Bin;
+import garbagegroup.cloud.model.SensorReading;
+import garbagegroup.cloud.model.SensorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Inserts sensor readings straight into their tables with JDBC batches, without loading the bins they belong to
+ */
+@Repository
+public class SensorReadingBatchRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SensorReadingBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Readings of bins that no longer exist and readings that are already stored (same bin and time) are skipped,
+     * so one such reading can not make the whole batch fail
+     *
+     * @param type
+     * @param readings all of the given type
+     * @return number of rows inserted
+     */
+    public int insertAll(SensorType type, List<SensorReading> readings) {
+        if (readings.isEmpty()) return 0;
+        String sql = "INSERT INTO \"" + type.getTable() + "\" (value, date_time, bin_id) "
+                + "SELECT ?, ?, id FROM bin WHERE id = ? ON CONFLICT DO NOTHING";
+        int[][] counts = jdbcTemplate.batchUpdate(sql, readings, readings.size(), (statement, reading) -> {
+            statement.setDouble(1, reading.getValue());
+            statement.setTimestamp(2, Timestamp.valueOf(reading.getDateTime()));
+            statement.setLong(3, reading.getBinId());
+        });
+        return countRows(counts);
+    }
+
+    /**
+     * Schedules the pick-up of the bins whose newest fill level is over their threshold, as the levels are saved,
+     * so reading a bin never has to write it. The last emptied time follows the pick-up time.
+     * A level that is not the newest of its bin (an older reading saved late) changes nothing.
+     *
+     * @param levels fill level readings that were just inserted
+     * @return number of bins updated
+     */
+    public int updatePickUpTimes(List<SensorReading> levels) {
+        if (levels.isEmpty()) return 0;
+        String sql = "UPDATE bin SET pick_up_time = ?, emptied_last = ? WHERE id = ? AND fill_threshold < ? "
+                + "AND NOT EXISTS (SELECT 1 FROM \"level\" l WHERE l.bin_id = bin.id AND l.date_time > ?)";
+        int[][] counts = jdbcTemplate.batchUpdate(sql, levels, levels.size(), (statement, level) -> {
+            Timestamp pickUpTime = Timestamp.valueOf(Bin.calculatePickUpTime(level.getDateTime()));
+            statement.setTimestamp(1, pickUpTime);
+            statement.setTimestamp(2, pickUpTime);
+            statement.setLong(3, level.getBinId());
+            statement.setDouble(4, level.getValue());
+            statement.setTimestamp(5, Timestamp.valueOf(level.getDateTime()));
+        });
+        return countRows(counts);
+    }
+
+    /**
+     * Deletes at most limit of the type's readings taken before the given time, so that one call only holds a few row locks
+     * and does not get in the way of the inserts for long; the caller repeats it until fewer than limit rows are deleted
+     * A bin's newest reading is never deleted, however old it is: the current values, the pick-up time and the fill level
+     * alerts of a bin that stopped reporting are all read from it
+     *
+     * @param type
+     * @param before
+     * @param limit
+     * @return number of readings deleted
+     */
+    public int deleteOlderThan(SensorType type, LocalDateTime before, int limit) {
+        String table = "\"" + type.getTable() + "\"";
+        return jdbcTemplate.update("DELETE FROM " + table + " WHERE (bin_id, date_time) IN "
+                + "(SELECT bin_id, date_time FROM " + table + " t WHERE date_time < ? "
+                + "AND date_time < (SELECT MAX(date_time) FROM " + table + " x WHERE x.bin_id = t.bin_id) LIMIT ?)",
+                Timestamp.valueOf(before), limit);
+    }
+
+    /**
+     * @param counts update counts of a batch update
+     * @return number of rows changed, statements the driver could not count are left out
+     */
+    private static int countRows(int[][] counts) {
+        int rows = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count > 0) rows += count;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,131 @@
+package garbagegroup.cloud.repository;
+
+import garbagegroup.cloud.DTOs.SensorPointDto;
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads and maintains the hourly and daily aggregates of the readings in the reading_rollup table
+ * An aggregate keeps the sum and count instead of the average, so that days can be aggregated from their hours
+ */
+@Repository
+public class SensorRollupRepository {
+    private static final String UPSERT = "INSERT INTO reading_rollup "
+            + "(sensor, resolution, bin_id, bucket, min_value, max_value, sum_value, reading_count, last_value, last_at) ";
+    private static final String ON_CONFLICT = " ON CONFLICT (sensor, resolution, bin_id, bucket) DO UPDATE SET "
+            + "min_value = EXCLUDED.min_value, max_value = EXCLUDED.max_value, sum_value = EXCLUDED.sum_value, "
+            + "reading_count = EXCLUDED.reading_count, last_value = EXCLUDED.last_value, last_at = EXCLUDED.last_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SensorRollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * (Re)computes the hourly aggregates of the readings in [from, to) from the raw readings
+     *
+     * @param type
+     * @param from start of an hour
+     * @param to start of an hour
+     * @return number of aggregates written
+     */
+    public int rollUpHours(SensorType type, LocalDateTime from, LocalDateTime to) {
+        String sql = UPSERT + "SELECT ?, 'hour', bin_id, date_trunc('hour', date_time), MIN(value), MAX(value), SUM(value), COUNT(*), "
+                + "(array_agg(value ORDER BY date_time DESC))[1], MAX(date_time) FROM \"" + type.getTable() + "\" "
+                + "WHERE date_time >= ? AND date_time < ? AND value IS NOT NULL GROUP BY bin_id, date_trunc('hour', date_time)" + ON_CONFLICT;
+        return jdbcTemplate.update(sql, type.getTable(), Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * (Re)computes the daily aggregates of the hours in [from, to) from the hourly aggregates
+     *
+     * @param type
+     * @param from start of a day
+     * @param to start of a day
+     * @return number of aggregates written
+     */
+    public int rollUpDays(SensorType type, LocalDateTime from, LocalDateTime to) {
+        String sql = UPSERT + "SELECT sensor, 'day', bin_id, date_trunc('day', bucket), MIN(min_value), MAX(max_value), SUM(sum_value), "
+                + "SUM(reading_count), (array_agg(last_value ORDER BY last_at DESC))[1], MAX(last_at) FROM reading_rollup "
+                + "WHERE sensor = ? AND resolution = 'hour' AND bucket >= ? AND bucket < ? GROUP BY sensor, bin_id, date_trunc('day', bucket)" + ON_CONFLICT;
+        return jdbcTemplate.update(sql, type.getTable(), Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Deletes at most limit of the resolution's aggregates (of all sensors) that start before the given time,
+     * the caller repeats it until fewer than limit rows are deleted
+     *
+     * @param resolution hour or day
+     * @param before
+     * @param limit
+     * @return number of aggregates deleted
+     */
+    public int deleteOlderThan(Resolution resolution, LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM reading_rollup WHERE (sensor, resolution, bin_id, bucket) IN "
+                        + "(SELECT sensor, resolution, bin_id, bucket FROM reading_rollup WHERE resolution = ? AND bucket < ? LIMIT ?)",
+                resolution.getName(), Timestamp.valueOf(before), limit);
+    }
+
+    /**
+     * @param type
+     * @param resolution hour or day
+     * @return start of the newest aggregate of the type, empty if there is none
+     */
+    public Optional<LocalDateTime> findLastBucket(SensorType type, Resolution resolution) {
+        Timestamp bucket = jdbcTemplate.queryForObject("SELECT MAX(bucket) FROM reading_rollup WHERE sensor = ? AND resolution = ?",
+                Timestamp.class, type.getTable(), resolution.getName());
+        return Optional.ofNullable(bucket).map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Only needed once, before the first aggregates of the type exist, as it reads through all of its readings
+     *
+     * @param type
+     * @return time of the type's oldest reading, empty if there is none
+     */
+    public Optional<LocalDateTime> findFirstReading(SensorType type) {
+        Timestamp first = jdbcTemplate.queryForObject("SELECT MIN(date_time) FROM \"" + type.getTable() + "\"", Timestamp.class);
+        return Optional.ofNullable(first).map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * @param type
+     * @param resolution hour or day
+     * @param binId
+     * @param from start of the first aggregate
+     * @param to end of the window, exclusive
+     * @return the bin's aggregates in the window, oldest first
+     */
+    public List<SensorPointDto> findRollups(SensorType type, Resolution resolution, Long binId, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query("SELECT bucket, min_value, max_value, sum_value / reading_count, last_value, reading_count FROM reading_rollup "
+                        + "WHERE sensor = ? AND resolution = ? AND bin_id = ? AND bucket >= ? AND bucket < ? ORDER BY bucket",
+                (rs, row) -> new SensorPointDto(rs.getTimestamp(1).toLocalDateTime(), rs.getDouble(2), rs.getDouble(3),
+                        rs.getDouble(4), rs.getDouble(5), rs.getLong(6)),
+                type.getTable(), resolution.getName(), binId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * @param type
+     * @param binId
+     * @param from start of the window, inclusive
+     * @param to end of the window, exclusive
+     * @param limit most readings returned
+     * @return the bin's raw readings in the window, oldest first
+     */
+    public List<SensorPointDto> findReadings(SensorType type, Long binId, LocalDateTime from, LocalDateTime to, int limit) {
+        return jdbcTemplate.query("SELECT date_time, value FROM \"" + type.getTable() + "\" "
+                        + "WHERE bin_id = ? AND date_time >= ? AND date_time < ? AND value IS NOT NULL ORDER BY date_time LIMIT ?",
+                (rs, row) -> SensorPointDto.reading(rs.getTimestamp(1).toLocalDateTime(), rs.getDouble(2)),
+                binId, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+    }
+}
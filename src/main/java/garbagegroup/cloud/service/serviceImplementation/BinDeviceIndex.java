@@ -0,0 +1,101 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.repository.IBinRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which device is attached to which bin, in both directions
+ * Loaded from the DB once (one query over bin.device_id) and then kept up to date by BinService on create, update and delete,
+ * so finding the bins of a device or whether a device is assigned at all no longer needs a DB query or a scan over all bins.
+ * Whether a device is connected is kept by the TCP server's DeviceRegistry, together they answer both questions in O(1).
+ */
+@Service
+public class BinDeviceIndex {
+    private final IBinRepository binRepository;
+    private final Map<Long, Integer> deviceByBin = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Long>> binsByDevice = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public BinDeviceIndex(IBinRepository binRepository) {
+        this.binRepository = binRepository;
+    }
+
+    /**
+     * Loads the assignments of all bins on first use
+     */
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            for (Object[] assignment : binRepository.findDeviceAssignments()) {
+                index((Long) assignment[0], ((Number) assignment[1]).intValue());
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Records that the device is attached to the bin, replacing the bin's previous device
+     *
+     * @param binId
+     * @param deviceId
+     */
+    public synchronized void put(Long binId, int deviceId) {
+        ensureLoaded();
+        remove(binId);
+        index(binId, deviceId);
+    }
+
+    /**
+     * Forgets the bin, e.g. when it is deleted
+     *
+     * @param binId
+     */
+    public synchronized void remove(Long binId) {
+        ensureLoaded();
+        Integer deviceId = deviceByBin.remove(binId);
+        if (deviceId == null) return;
+        binsByDevice.computeIfPresent(deviceId, (id, binIds) -> {
+            binIds.remove(binId);
+            return binIds.isEmpty() ? null : binIds;
+        });
+    }
+
+    private void index(Long binId, int deviceId) {
+        deviceByBin.put(binId, deviceId);
+        binsByDevice.computeIfAbsent(deviceId, id -> ConcurrentHashMap.newKeySet()).add(binId);
+    }
+
+    /**
+     * @param deviceId
+     * @return IDs of the bins the device is attached to, empty if it is attached to none
+     */
+    public List<Long> getBinIds(int deviceId) {
+        ensureLoaded();
+        Set<Long> binIds = binsByDevice.get(deviceId);
+        return binIds == null ? Collections.emptyList() : new ArrayList<>(binIds);
+    }
+
+    /**
+     * @param binId
+     * @return ID of the device attached to the bin, empty if the bin is unknown
+     */
+    public Optional<Integer> getDeviceId(Long binId) {
+        ensureLoaded();
+        return Optional.ofNullable(deviceByBin.get(binId));
+    }
+
+    /**
+     * @param deviceId
+     * @return true if the device is attached to at least one bin
+     */
+    public boolean isAssigned(int deviceId) {
+        ensureLoaded();
+        return binsByDevice.containsKey(deviceId);
+    }
+}
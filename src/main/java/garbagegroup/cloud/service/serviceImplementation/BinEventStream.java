@@ -0,0 +1,287 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.DTOs.BinEventDto;
+import garbagegroup.cloud.repository.IBinRepository;
+import garbagegroup.cloud.tcpserver.VirtualThreads;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes new readings, threshold crossings and device status changes to dashboards over Server-Sent Events
+ * Every update is published once and handed to all subscribers whose region contains the bin, instead of every dashboard
+ * polling the bins. Updates are not written right away but collected per subscriber and sent every flush interval:
+ * a newer update of the same kind for the same bin replaces the one that is not sent yet, and a subscriber that is
+ * still busy receiving the previous batch simply gets the latest state with the next one, so a slow dashboard
+ * costs neither memory nor the other dashboards' time.
+ */
+@Service
+public class BinEventStream {
+    private static final int SENDER_QUEUE_CAPACITY = 1000;
+
+    private final IBinRepository binRepository;
+    private final long flushIntervalMillis;
+    private final long timeoutMillis;
+    private final Executor senders;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<Long, double[]> locations = new ConcurrentHashMap<>();
+    private volatile boolean locationsLoaded;
+    private ScheduledExecutorService flusher;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @Autowired
+    public BinEventStream(IBinRepository binRepository,
+                          @Value("${stream.flush-interval-ms:500}") long flushIntervalMillis,
+                          @Value("${stream.timeout-ms:1800000}") long timeoutMillis,
+                          @Value("${stream.sender-threads:16}") int senderThreads,
+                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.binRepository = binRepository;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.timeoutMillis = timeoutMillis;
+        // A send to a slow dashboard blocks its thread, but there is never more than one send per subscriber at a time
+        this.senders = virtualThreads && VirtualThreads.isSupported() ? VirtualThreads.perTaskExecutor("bin-event-sender")
+                : newSenderExecutor(senderThreads);
+    }
+
+    /**
+     * A send to a slow dashboard holds a platform thread until it is written, so the number of threads is capped
+     * Batches over the cap wait in the queue, it never holds more than one batch per subscriber
+     *
+     * @param senderThreads
+     * @return the executor batches are sent on when virtual threads are off
+     */
+    private static ThreadPoolExecutor newSenderExecutor(int senderThreads) {
+        int threads = Math.max(1, senderThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(SENDER_QUEUE_CAPACITY), VirtualThreads.factory("bin-event-sender", false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Opens a stream of updates, the client reconnects once it times out (EventSource does so on its own)
+     *
+     * @param region only bins within it are streamed, null for all bins
+     * @return the emitter the updates are sent through
+     */
+    public SseEmitter subscribe(Region region) {
+        return subscribe(new SseEmitter(timeoutMillis), region);
+    }
+
+    /**
+     * @param emitter the updates are sent through
+     * @param region only bins within it are streamed, null for all bins
+     * @return the emitter
+     */
+    public SseEmitter subscribe(SseEmitter emitter, Region region) {
+        Subscriber subscriber = new Subscriber(emitter, region);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        startFlushing();
+        return emitter;
+    }
+
+    private synchronized void startFlushing() {
+        if (flusher != null) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bin-event-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (flusher != null) flusher.shutdownNow();
+        flusher = null;
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    /**
+     * Hands the update to every subscriber whose region contains the bin, does not wait for any of them
+     *
+     * @param event
+     */
+    public void publish(BinEventDto event) {
+        if (subscribers.isEmpty()) return;
+        publishedCount.incrementAndGet();
+        double[] location = getLocation(event.getBinId());
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.region == null || subscriber.region.contains(location)) subscriber.offer(event);
+        }
+    }
+
+    /**
+     * Sends what each subscriber has collected, unless its previous batch is still being sent
+     */
+    void flush() {
+        for (Subscriber subscriber : subscribers) {
+            List<BinEventDto> batch = subscriber.takeBatch();
+            if (batch.isEmpty()) continue;
+            try {
+                senders.execute(() -> send(subscriber, batch));
+            } catch (RejectedExecutionException e) {
+                subscriber.requeue(batch);     // Sent with the next flush, unless a newer update has replaced it by then
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, List<BinEventDto> batch) {
+        try {
+            for (BinEventDto event : batch) {
+                subscriber.emitter.send(SseEmitter.event().name(event.getType()).data(event));
+                sentCount.incrementAndGet();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The dashboard is gone, it reconnects with a new subscription if it is still there
+            if (subscribers.remove(subscriber)) droppedCount.incrementAndGet();
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.sent();
+        }
+    }
+
+    /**
+     * Records where the bin is, so that its updates reach the subscribers of its region
+     *
+     * @param binId
+     * @param latitude
+     * @param longitude
+     */
+    public void putBin(Long binId, Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) locations.remove(binId);
+        else locations.put(binId, new double[]{latitude, longitude});
+    }
+
+    public void remove(Long binId) {
+        locations.remove(binId);
+    }
+
+    /**
+     * @return the bin's latitude and longitude, null if it has no location; all locations are loaded on first use
+     */
+    private double[] getLocation(Long binId) {
+        if (!locationsLoaded) {
+            synchronized (this) {
+                if (!locationsLoaded) {
+                    for (Object[] location : binRepository.findLocations()) {
+                        locations.putIfAbsent((Long) location[0], new double[]{(Double) location[1], (Double) location[2]});
+                    }
+                    locationsLoaded = true;
+                }
+            }
+        }
+        return locations.get(binId);
+    }
+
+    /**
+     * @return number of subscribers, of updates published and sent, of updates replaced by a newer one before they were sent,
+     * and of subscribers dropped because they could not be written to
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("subscribers", (long) subscribers.size());
+        statistics.put("published", publishedCount.get());
+        statistics.put("sent", sentCount.get());
+        statistics.put("coalesced", coalescedCount.get());
+        statistics.put("dropped", droppedCount.get());
+        return statistics;
+    }
+
+    /**
+     * Rectangle of latitudes and longitudes a dashboard is interested in, an open side is unbounded
+     */
+    public static class Region {
+        private final Double minLatitude;
+        private final Double maxLatitude;
+        private final Double minLongitude;
+        private final Double maxLongitude;
+
+        public Region(Double minLatitude, Double maxLatitude, Double minLongitude, Double maxLongitude) {
+            this.minLatitude = minLatitude;
+            this.maxLatitude = maxLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLongitude = maxLongitude;
+        }
+
+        /**
+         * @return null if no side is bounded, i.e. every bin is in the region
+         */
+        public static Region of(Double minLatitude, Double maxLatitude, Double minLongitude, Double maxLongitude) {
+            if (minLatitude == null && maxLatitude == null && minLongitude == null && maxLongitude == null) return null;
+            return new Region(minLatitude, maxLatitude, minLongitude, maxLongitude);
+        }
+
+        /**
+         * @param location latitude and longitude, null for a bin without a location, which is in no region
+         */
+        boolean contains(double[] location) {
+            if (location == null) return false;
+            return (minLatitude == null || location[0] >= minLatitude) && (maxLatitude == null || location[0] <= maxLatitude)
+                    && (minLongitude == null || location[1] >= minLongitude) && (maxLongitude == null || location[1] <= maxLongitude);
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Region region;
+        private final Map<String, BinEventDto> pending = new LinkedHashMap<>();
+        private boolean sending;
+
+        private Subscriber(SseEmitter emitter, Region region) {
+            this.emitter = emitter;
+            this.region = region;
+        }
+
+        private synchronized void offer(BinEventDto event) {
+            if (pending.remove(event.getKey()) != null) coalescedCount.incrementAndGet();
+            pending.put(event.getKey(), event);     // Moved to the end, updates are sent in the order of their latest change
+        }
+
+        /**
+         * @return the collected updates, empty if there are none or the previous batch is still being sent
+         */
+        private synchronized List<BinEventDto> takeBatch() {
+            if (sending || pending.isEmpty()) return List.of();
+            List<BinEventDto> batch = new ArrayList<>(pending.values());
+            pending.clear();
+            sending = true;
+            return batch;
+        }
+
+        private synchronized void sent() {
+            sending = false;
+        }
+
+        /**
+         * Puts back a batch that could not be handed to a sender, ahead of the updates collected since it was taken
+         *
+         * @param batch
+         */
+        private synchronized void requeue(List<BinEventDto> batch) {
+            Map<String, BinEventDto> restored = new LinkedHashMap<>();
+            for (BinEventDto event : batch) {
+                if (!pending.containsKey(event.getKey())) restored.put(event.getKey(), event);
+            }
+            restored.putAll(pending);
+            pending.clear();
+            pending.putAll(restored);
+            sending = false;
+        }
+    }
+}
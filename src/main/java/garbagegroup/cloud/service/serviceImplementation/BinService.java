@@ -6,25 +6,63 @@ import garbagegroup.cloud.repository.IBinRepository;
 import garbagegroup.cloud.service.serviceInterface.IBinService;
 import garbagegroup.cloud.tcpserver.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
-public class BinService implements IBinService {
+public class BinService implements IBinService, IConnectionListener {
+    private static final Duration DEVICE_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_HISTORY_WINDOW = Duration.ofDays(1);
+    public static final int MAX_HISTORY_PAGE_SIZE = 1000;
+    private static final int BACKGROUND_THREADS = 4;
+    private static final int BACKGROUND_QUEUE_CAPACITY = 10_000;
     ITCPServer tcpServer;
     private IBinRepository binRepository;
-    private ScheduledExecutorService executorService;
+    private SensorReadingWriteBuffer readingBuffer;
+    private SensorStateCache stateCache;
+    private LevelPollingScheduler pollingScheduler;
+    private BinDeviceIndex deviceIndex;
+    private FillLevelAlertEngine alertEngine;
+    private BinEventStream eventStream;
+    private SensorRollupService rollupService;
+    private SensorRetentionService retentionService;
+    // Fetches from a device keyed by bin and payload, so that concurrent readers of the same bin share one round trip and save
+    private final SingleFlight<String, String> deviceFetches = new SingleFlight<>();
+    // Saves the replies of background fetches and handles connection events; these block on the DB, so they get a pool
+    // of their own instead of the common pool, and a full queue rejects them instead of piling up
+    private final ExecutorService backgroundExecutor = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(BACKGROUND_QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "bin-background");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     @Autowired
-    public BinService(IBinRepository binRepository, ITCPServer tcpServer) {
+    public BinService(IBinRepository binRepository, ITCPServer tcpServer, SensorReadingWriteBuffer readingBuffer, SensorStateCache stateCache,
+                      LevelPollingScheduler pollingScheduler, BinDeviceIndex deviceIndex, FillLevelAlertEngine alertEngine,
+                      BinEventStream eventStream, SensorRollupService rollupService, SensorRetentionService retentionService) {
         this.binRepository = binRepository;
+        this.readingBuffer = readingBuffer;
+        this.stateCache = stateCache;
+        this.pollingScheduler = pollingScheduler;
+        this.deviceIndex = deviceIndex;
+        this.alertEngine = alertEngine;
+        this.eventStream = eventStream;
+        this.rollupService = rollupService;
+        this.retentionService = retentionService;
         // When creating the BinService, we also start the TCP Server to communicate with the IoT device
+        tcpServer.setConnectionListener(this);
         tcpServer.startServer();
         this.setTCPServer(tcpServer);
     }
@@ -32,33 +70,62 @@ public class BinService implements IBinService {
     public BinService() {}
 
     /**
-     * Fetches SensorData from the IoT device
-     * If the reading in DB is newer than 1 hour, it returns it
-     * If the reading in DB is older than 1 hour, it gets new data from the IoT device
+     * Fetches SensorData from the cache or the DB, never waiting for the IoT device
+     * If the cached reading is fresh (newer than the sensor type's reading TTL, 1 hour by default), it returns it without going to the DB
+     * If the reading in DB is fresh, it returns it
+     * If the reading in DB is stale, it asks the IoT device for a new one in the background and returns the stored one right away
+     * (stale-while-revalidate), the new reading is saved once the device answers (devices that push their readings keep the DB fresh on their own)
      * If the IoT device is offline, it fakes the data
      *
      * @param binId
      * @return Optional<Humidity>
      */
-    private <T extends SensorData> Optional<T> getCurrentSensorDataByBinId(Long binId, Function<Bin, List<T>> dataExtractor, String payload) {
+    @SuppressWarnings("unchecked")
+    private <T extends SensorData> Optional<T> getCurrentSensorDataByBinId(Long binId, SensorType type, Function<Long, Optional<T>> latestReadingLoader, String payload) {
+        Optional<T> cached = stateCache.getReading(binId, type).map(reading -> (T) reading);
+        if (cached.isPresent()) return cached;
+
         Optional<Bin> binOptional = binRepository.findById(binId);
         if (binOptional.isEmpty()) {
             return Optional.empty();
         }
 
         Bin bin = binOptional.get();
-        List<T> allData = dataExtractor.apply(bin);
-        allData.sort(Comparator.comparing(SensorData::getDateTime).reversed());
-
-        LocalDateTime measurementDateTime = (allData.isEmpty()) ? null : allData.get(0).getDateTime();
-        if (measurementDateTime == null || isMeasurementOld(measurementDateTime)) {
-            getIoTData(bin.getId().intValue(), bin.getDeviceId(), payload);
-            bin = binRepository.findById(binId).orElse(bin);
-            allData = dataExtractor.apply(bin);
-            allData.sort(Comparator.comparing(SensorData::getDateTime).reversed());
+        Optional<T> latest = latestReadingLoader.apply(binId);
+
+        LocalDateTime measurementDateTime = latest.map(SensorData::getDateTime).orElse(null);
+        if (measurementDateTime == null || isMeasurementOld(type, measurementDateTime)) {
+            if (hasActiveDevice(bin.getDeviceId())) {
+                refreshIoTDataInBackground(bin.getId().intValue(), bin.getDeviceId(), payload);
+                return latest;
+            }
+            loadFakeIoTDeviceData(bin.getId().intValue(), payload);
+            if (isWriteBehindEnabled()) readingBuffer.flush();     // The fake reading has to be in the DB before it is read back
+            latest = latestReadingLoader.apply(binId);
         }
 
-        return (allData.isEmpty()) ? Optional.empty() : Optional.of(allData.get(0));
+        latest.ifPresent(reading -> stateCache.putReading(binId, type, reading));
+        return latest;
+    }
+
+    /**
+     * Asks the IoT device for a new reading and saves it once it arrives
+     * The reply is saved on the background executor, not on the I/O thread that completed the request
+     * If the executor's queue is full the reply is not saved, the next read of the stale reading asks again
+     *
+     * @param binId
+     * @param deviceId
+     * @param payload
+     */
+    private void refreshIoTDataInBackground(int binId, int deviceId, String payload) {
+        deviceFetches.execute(fetchKey(binId, payload), () -> requestIoTDataAsync(deviceId, payload).thenApplyAsync(response -> {
+            handleIoTData(binId, response);
+            return response;
+        }, backgroundExecutor));
+    }
+
+    private static String fetchKey(int binId, String payload) {
+        return binId + "/" + payload;
     }
 
     /**
@@ -69,7 +136,8 @@ public class BinService implements IBinService {
      */
     @Override
     public Optional<Humidity> getCurrentHumidityByBinId(Long binId) {
-        return getCurrentSensorDataByBinId(binId, Bin::getHumidity, "getHumidity");
+        return getCurrentSensorDataByBinId(binId, SensorType.HUMIDITY,
+                latestReading(SensorType.HUMIDITY, binRepository::findLatestHumidityByBinIdSince, binRepository::findLatestHumidityByBinId), "getHumidity");
     }
 
     /**
@@ -80,7 +148,8 @@ public class BinService implements IBinService {
      */
     @Override
     public Optional<Temperature> getCurrentTemperatureByBinId(Long binId) {
-        return getCurrentSensorDataByBinId(binId, Bin::getTemperatures, "getTemperature");
+        return getCurrentSensorDataByBinId(binId, SensorType.TEMPERATURE,
+                latestReading(SensorType.TEMPERATURE, binRepository::findLatestTemperatureByBinIdSince, binRepository::findLatestTemperatureByBinId), "getTemperature");
     }
 
     /**
@@ -91,33 +160,78 @@ public class BinService implements IBinService {
      */
     @Override
     public Optional<Level> getCurrentFillLevelByBinId(Long binId) {
-        return getCurrentSensorDataByBinId(binId, Bin::getFillLevels, "getCurrentLevel");
+        return getCurrentSensorDataByBinId(binId, SensorType.LEVEL,
+                latestReading(SensorType.LEVEL, binRepository::findLatestFillLevelByBinIdSince, binRepository::findLatestFillLevelByBinId), "getCurrentLevel");
     }
 
     /**
-     * Checks whether the oldest humidity measurement from DB is older than 1 hour
+     * Looks for the bin's newest reading within the reading TTL first, which on the partitioned layout only touches the
+     * newest partitions, and only searches all of the bin's readings if there is none that recent
      *
+     * @param type
+     * @param recentLoader loads the newest reading since the given time
+     * @param anyLoader loads the newest reading
+     * @return loader of the bin's newest reading
+     */
+    private <T extends SensorData> Function<Long, Optional<T>> latestReading(SensorType type, BiFunction<Long, LocalDateTime, Optional<T>> recentLoader,
+                                                                             Function<Long, Optional<T>> anyLoader) {
+        return binId -> {
+            Optional<T> recent = recentLoader.apply(binId, LocalDateTime.now().minus(stateCache.getReadingTtl(type)));
+            return recent.isPresent() ? recent : anyLoader.apply(binId);
+        };
+    }
+
+    /**
+     * Checks whether the measurement is older than the reading TTL of its sensor type (1 hour unless configured otherwise)
+     *
+     * @param type
      * @param measurementDateTime
      * @return boolean
      */
-    private boolean isMeasurementOld(LocalDateTime measurementDateTime) {
-        return Duration.between(measurementDateTime, LocalDateTime.now()).getSeconds() > Duration.ofHours(1).getSeconds();
+    private boolean isMeasurementOld(SensorType type, LocalDateTime measurementDateTime) {
+        return Duration.between(measurementDateTime, LocalDateTime.now()).getSeconds() > stateCache.getReadingTtl(type).getSeconds();
     }
 
     /**
      * If the IoT device is active, it fetches it from it, if not, it fakes it
+     * Concurrent calls for the same bin and payload share one fetch from the device, and its response is saved once
      *
      * @param binId
      * @return
      */
     @Override
     public String getIoTData(int binId, int deviceId, String payload) {
-        String responseFromIoT = "";
-        if (hasActiveDevice(deviceId)) {    // Fetch real data from IoT device
-            responseFromIoT = tcpServer.getDataById(deviceId, payload);
-            handleIoTData(binId, responseFromIoT);
-        } else loadFakeIoTDeviceData(binId, payload);     // Or load some fake data
-        return responseFromIoT;
+        if (!hasActiveDevice(deviceId)) {
+            loadFakeIoTDeviceData(binId, payload);     // Or load some fake data
+            return "";
+        }
+        try {   // Fetch real data from IoT device, on this thread unless another request is already fetching it
+            return deviceFetches.execute(fetchKey(binId, payload), () -> {
+                String responseFromIoT = tcpServer.getDataById(deviceId, payload);
+                handleIoTData(binId, responseFromIoT);
+                return CompletableFuture.completedFuture(responseFromIoT);
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Asks the IoT device for data without blocking the calling thread, so that many devices can be asked at once
+     * The response is not saved here, the caller does that once it has collected the responses it waits for
+     *
+     * @param deviceId
+     * @param payload
+     * @return future response from the IoT device, "" if the device is offline or did not answer in time
+     */
+    public CompletableFuture<String> requestIoTDataAsync(int deviceId, String payload) {
+        if (!hasActiveDevice(deviceId)) return CompletableFuture.completedFuture("");
+        return tcpServer.requestAsync(deviceId, payload, DEVICE_REQUEST_TIMEOUT)
+                .exceptionally(e -> {
+                    System.out.println("Device with ID " + deviceId + " did not answer " + payload + ": " + e.getMessage());
+                    return "";
+                });
     }
 
     /**
@@ -130,28 +244,7 @@ public class BinService implements IBinService {
     @Override
     public boolean saveHumidityByBinId(int binId, double humidity, LocalDateTime dateTime) {
         System.out.println("About to save humidity: " + humidity + " with date and time: " + dateTime + " to bin with ID: " + binId);
-
-        try {
-            Optional<Bin> optionalBin = binRepository.findById((long) binId);
-            Bin bin = optionalBin.get();
-            Humidity newHumidity = new Humidity(bin, humidity, dateTime);
-            if (bin.getHumidity() == null) {
-                List<Humidity> humidityList = new ArrayList<>();
-                humidityList.add(newHumidity);
-                bin.setHumidity(humidityList);
-            } else bin.getHumidity().add(newHumidity);
-
-            try {
-                binRepository.save(bin);
-                return true;
-            } catch (Exception e) {
-                System.err.println("Error saving humidity with Bin Id: " + binId + ".\n" + e.getMessage());
-                return false;
-            }
-        } catch (Exception e) {
-            System.err.println("Error finding bin with Id: " + binId + ".\n" + e.getMessage());
-            return false;
-        }
+        return saveReading(new SensorReading(SensorType.HUMIDITY, binId, humidity, dateTime), new Humidity(null, humidity, dateTime));
     }
 
     /**
@@ -164,27 +257,9 @@ public class BinService implements IBinService {
     @Override
     public boolean saveFillLevelByBinId(int binId, double fillLevel, LocalDateTime dateTime) {
         System.out.println("About to save fill level: " + fillLevel + " with date and time: " + dateTime + " to bin with ID: " + binId);
-
-        try {
-            Optional<Bin> optionalBin = binRepository.findById((long) binId);
-            Bin bin = optionalBin.get();
-            Level newFillLevel = new Level(bin, fillLevel, dateTime);
-            if (bin.getFillLevels() == null) {
-                List<Level> fillLevelList = new ArrayList<>();
-                fillLevelList.add(newFillLevel);
-                bin.setFillLevels(fillLevelList);
-            } else bin.getFillLevels().add(newFillLevel);
-            try {
-                binRepository.save(bin);
-                return true;
-            } catch (Exception e) {
-                System.err.println("Error saving fill level with Bin Id: " + binId + ".\n" + e.getMessage());
-                return false;
-            }
-        } catch (Exception e) {
-            System.err.println("Error finding bin with Id: " + binId + ".\n" + e.getMessage());
-            return false;
-        }
+        boolean saved = saveReading(new SensorReading(SensorType.LEVEL, binId, fillLevel, dateTime), new Level(fillLevel, dateTime));
+        if (saved && alertEngine.onLevel((long) binId, fillLevel, dateTime)) publishAlert((long) binId);    // Checked against the threshold as it comes in
+        return saved;
     }
 
     /**
@@ -196,29 +271,92 @@ public class BinService implements IBinService {
      */
     public boolean saveTemperatureByBinId(int binId, double temperature, LocalDateTime dateTime) {
         System.out.println("About to save fill level: " + temperature + " with date and time: " + dateTime + " to bin with ID: " + binId);
+        return saveReading(new SensorReading(SensorType.TEMPERATURE, binId, temperature, dateTime), new Temperature(null, temperature, dateTime));
+    }
 
-        try {
-            Optional<Bin> optionalBin = binRepository.findById((long) binId);
-            Bin bin = optionalBin.get();
-            Temperature newTemperature = new Temperature(bin, temperature, dateTime);
-            if (bin.getTemperatures() == null) {
-                List<Temperature> temperatureList = new ArrayList<>();
-                temperatureList.add(newTemperature);
-                bin.setTemperatures(temperatureList);
-            } else bin.getTemperatures().add(newTemperature);
-            try {
-                binRepository.save(bin);
-                return true;
-            } catch (Exception e) {
-                System.err.println("Error saving temperature with Bin Id: " + binId + ".\n" + e.getMessage());
-                return false;
+    /**
+     * Saves the reading and makes it the bin's current one in the cache
+     *
+     * @param reading
+     * @param current the same reading as it is served by getCurrent...ByBinId
+     * @return false if the reading was not saved
+     */
+    private boolean saveReading(SensorReading reading, SensorData current) {
+        boolean saved = readingBuffer.save(reading);
+        if (saved) {
+            stateCache.putReading(reading.getBinId(), reading.getType(), current);
+            eventStream.publish(BinEventDto.reading(reading.getBinId(), reading.getType().getTable(), reading.getValue(), reading.getDateTime()));
+        }
+        return saved;
+    }
+
+    /**
+     * Tells the dashboards that the bin's fill level crossed its threshold, up or down
+     *
+     * @param binId
+     */
+    private void publishAlert(Long binId) {
+        eventStream.publish(BinEventDto.alert(binId, alertEngine.getAlert(binId).orElse(null)));
+    }
+
+    /**
+     * Caches the bin's device status and tells the dashboards if it changed
+     *
+     * @param binId
+     * @param status ACTIVE, ERROR or OFFLINE
+     */
+    private void recordStatus(Long binId, String status) {
+        if (!status.equals(stateCache.putStatus(binId, status))) eventStream.publish(BinEventDto.status(binId, status));
+    }
+
+    /**
+     * A device that (re)connects is asked for its status right away, so the dashboards see it come back
+     * Called on the connection's I/O thread, the request does not wait for the answer
+     *
+     * @param deviceId
+     */
+    @Override
+    public void onConnected(int deviceId) {
+        runInBackground(deviceId, () -> {
+            for (Long binId : deviceIndex.getBinIds(deviceId)) {
+                requestIoTDataAsync(deviceId, "getStatus").thenAccept(response -> recordStatus(binId, toDeviceStatus(response)));
             }
-        } catch (Exception e) {
-            System.err.println("Error finding bin with Id: " + binId + ".\n" + e.getMessage());
-            return false;
+        });
+    }
+
+    /**
+     * The bins of a device whose connection is gone are offline
+     *
+     * @param deviceId
+     */
+    @Override
+    public void onDisconnected(int deviceId) {
+        runInBackground(deviceId, () -> deviceIndex.getBinIds(deviceId).forEach(binId -> recordStatus(binId, "OFFLINE")));
+    }
+
+    /**
+     * Runs a connection event's work on the background executor, dropping it if the queue is full
+     *
+     * @param deviceId
+     * @param task
+     */
+    private void runInBackground(int deviceId, Runnable task) {
+        try {
+            backgroundExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Background queue is full, dropping the connection event of device with ID " + deviceId);
         }
     }
 
+    /**
+     * With write-behind enabled, readings are queued and inserted in batches, otherwise each one is inserted right away
+     *
+     * @return true if readings go through the write-behind queue
+     */
+    private boolean isWriteBehindEnabled() {
+        return readingBuffer != null && readingBuffer.isEnabled();
+    }
+
     /**
      * Sets the tcpServer
      *
@@ -237,6 +375,7 @@ public class BinService implements IBinService {
      */
     public void handleIoTData(int binId, String data) {
         System.out.println("The received stuff is: " + data);
+        if (data == null || data.length() < 6) return;
         String prefix = data.substring(0, Math.min(data.length(), 5));
         String res = data.substring(6);
 
@@ -261,6 +400,10 @@ public class BinService implements IBinService {
     public boolean deleteBinById(long binId) {
         if (binRepository.existsById(binId)) {
             binRepository.deleteById(binId);
+            stateCache.evict(binId);
+            deviceIndex.remove(binId);
+            alertEngine.remove(binId);
+            eventStream.remove(binId);
             return true;
         } else {
             throw new NoSuchElementException("Bin with id " + binId + " not found");
@@ -268,62 +411,105 @@ public class BinService implements IBinService {
     }
 
     public BinDto convertToBinDtoAndSetValues(Bin bin) {
-        BinDto dto = DTOConverter.convertToBinDto(bin);
-        // Set status
-        boolean deviceStatus = false;
-        try {
-            deviceStatus = getDeviceStatusByBinId(bin.getId());
-        } catch (NoSuchElementException e) {
-            dto.setStatus("OFFLINE");
+        String status = stateCache.getStatus(bin.getId());
+        if (status == null) {
+            try {
+                status = getDeviceStatusByBinId(bin.getId()) ? "ACTIVE" : "ERROR";
+            } catch (NoSuchElementException e) {
+                status = "OFFLINE";
+            }
+            recordStatus(bin.getId(), status);
         }
-        if (!dto.getStatus().equals("OFFLINE")) dto.setStatus(deviceStatus ? "ACTIVE" : "ERROR");
-
-        // Set pickup date
-        dto.setPickUpTime(setPickupDate(bin));
-
-        // Set last emptied time
-        dto.setEmptiedLast(setLastEmptiedTime(bin));
+        return convertToBinDtoAndSetValues(bin, status);
+    }
 
+    /**
+     * Converts the bin to a DTO with an already known device status
+     * Pick-up and emptied times are served as stored, they are kept up to date when fill levels are saved,
+     * so reading a bin never writes it
+     *
+     * @param bin
+     * @param status ACTIVE, ERROR or OFFLINE
+     * @return BinDto
+     */
+    public BinDto convertToBinDtoAndSetValues(Bin bin, String status) {
+        BinDto dto = DTOConverter.convertToBinDto(bin);
+        dto.setStatus(status);
         return dto;
     }
 
+    /**
+     * Asks all devices whose status is not cached for it at once, so the listing waits for the slowest device instead of for all of them in a row
+     * (every request has its own timeout, a device that does not answer in time is shown as OFFLINE)
+     * Nothing is written to the DB
+     *
+     * @return all bins with their device status
+     */
     @Override
     public List<BinDto> findAllBins() {
         List<Bin> bins = binRepository.findAll();
-        List<BinDto> binDtos = new ArrayList<>();
+        List<CompletableFuture<String>> statuses = new ArrayList<>();
         for (Bin bin : bins) {
-            BinDto dto = convertToBinDtoAndSetValues(bin);
+            String cachedStatus = stateCache.getStatus(bin.getId());
+            if (cachedStatus != null) {
+                statuses.add(CompletableFuture.completedFuture(cachedStatus));
+                continue;
+            }
+            statuses.add(requestIoTDataAsync(bin.getDeviceId(), "getStatus").thenApply(response -> {
+                String status = toDeviceStatus(response);
+                recordStatus(bin.getId(), status);
+                return status;
+            }));
+        }
 
-            binDtos.add(dto);
+        List<BinDto> binDtos = new ArrayList<>();
+        for (int i = 0; i < bins.size(); i++) {
+            binDtos.add(convertToBinDtoAndSetValues(bins.get(i), statuses.get(i).join()));
         }
         return binDtos;
     }
 
-    public LocalDateTime setPickupDate(Bin bin) {
-        //check the fill level of bin from the database and if it exceeds the threshold, set the pickup date to tomorrow
-        Level lastLevelWithTimestamp = getLastLevelReadingWithTimestamp(bin.getId());
+    /**
+     * Translates the device's answer to getStatus to the status shown in BinDto
+     *
+     * @param response
+     * @return ACTIVE, ERROR or OFFLINE
+     */
+    private String toDeviceStatus(String response) {
+        if (response.equals("statu:OK")) return "ACTIVE";
+        else if (response.equals("statu:NOT OK")) return "ERROR";
+        else return "OFFLINE";
+    }
+
+    /**
+     * Sets the bin's pick-up time from its last fill level, without saving the bin
+     *
+     * @param bin
+     * @param lastLevelWithTimestamp
+     * @return true if the pick-up time changed
+     */
+    private boolean updatePickupDate(Bin bin, Level lastLevelWithTimestamp) {
+        //check the last fill level of bin and if it exceeds the threshold, set the pickup date to tomorrow
         double currentFillLevel = lastLevelWithTimestamp.getValue();
-        if (currentFillLevel > bin.getFillThreshold()) {
-            LocalDateTime timestamp = lastLevelWithTimestamp.getDateTime();
-            //if the fill level time is after 14:00, set the pickup date to tomorrow otherwise set it after two hours
-            if (timestamp.getHour() >= 14) {
-                bin.setPickUpTime(timestamp.plusDays(1));
-            } else {
-                bin.setPickUpTime(timestamp.plusHours(3));
-            }
-            binRepository.save(bin);
-        }
-        return bin.getPickUpTime();
+        if (currentFillLevel <= bin.getFillThreshold()) return false;
+
+        LocalDateTime pickUpTime = Bin.calculatePickUpTime(lastLevelWithTimestamp.getDateTime());
+        if (pickUpTime.equals(bin.getPickUpTime())) return false;
+        bin.setPickUpTime(pickUpTime);
+        return true;
     }
 
-    public LocalDateTime setLastEmptiedTime(Bin bin) {
-        //check the last pickup date of bin and set the last emptied date to the same date
-        LocalDateTime lastPickupTime = binRepository.findLastPickupTime(bin.getId());
-        if (lastPickupTime != null) {
-            bin.setEmptiedLast(lastPickupTime);
-            binRepository.save(bin);
-        }
-        return bin.getEmptiedLast();
+    /**
+     * Sets the bin's last emptied time to its last pick-up time, without saving the bin
+     *
+     * @param bin
+     * @param lastPickupTime
+     * @return true if the emptied time changed
+     */
+    private boolean updateLastEmptiedTime(Bin bin, LocalDateTime lastPickupTime) {
+        if (lastPickupTime == null || lastPickupTime.equals(bin.getEmptiedLast())) return false;
+        bin.setEmptiedLast(lastPickupTime);
+        return true;
     }
 
     @Override
@@ -358,6 +544,8 @@ public class BinService implements IBinService {
             newBin.setDeviceId(randomDeviceId);
             createdBin = binRepository.save(newBin);
             createdBin.setDeviceId(randomDeviceId);
+            deviceIndex.put(createdBin.getId(), randomDeviceId);
+            trackBin(createdBin);
             loadFakeIoTDeviceData(createdBin.getId().intValue(), "getHumidity");
             loadFakeIoTDeviceData(createdBin.getId().intValue(), "getTemperature");
             loadFakeIoTDeviceData(createdBin.getId().intValue(), "getCurrentLevel");
@@ -365,6 +553,8 @@ public class BinService implements IBinService {
             newBin.setDeviceId(deviceId);
             createdBin = binRepository.save(newBin);
             createdBin.setDeviceId(deviceId);
+            deviceIndex.put(createdBin.getId(), deviceId);
+            trackBin(createdBin);
             if (!tcpServer.setIoTData(deviceId, "calibrateDevice")) {
                 // Try to calibrate the device and if it returns false, something went wrong - but we don't even throw exception because it is not so important
                 System.out.println("The device could not be calibrated");
@@ -373,6 +563,16 @@ public class BinService implements IBinService {
         return createdBin;
     }
 
+    /**
+     * Gives the alert engine and the event stream the bin's (new) threshold and location
+     *
+     * @param bin
+     */
+    private void trackBin(Bin bin) {
+        eventStream.putBin(bin.getId(), bin.getLatitude(), bin.getLongitude());
+        if (alertEngine.putBin(bin.getId(), bin.getFillThreshold())) publishAlert(bin.getId());
+    }
+
     /**
      * This function returns an online IoT device that does not belong to any bin
      *
@@ -380,18 +580,15 @@ public class BinService implements IBinService {
      */
     @Override
     public int getAvailableDevice() {
-        List<ServerSocketHandler> IoTDevices = tcpServer.getIoTDevices();   // Get all online devices
+        List<ServerSocketHandler> IoTDevices = tcpServer.getIoTDevices();   // Snapshot of all online devices
         if (IoTDevices == null) return 0;
         if (IoTDevices.isEmpty()) return 0;
         else {
-            List<Bin> bins = binRepository.findAll();   // Fetch all bins
-            for (Bin bin : bins) {      // Check if there is an online device that has not been assigned to a bin
-                // Remove a device from list IoTDevices if the device belongs to a bin already
-                IoTDevices.removeIf(device -> bin.getDeviceId() == device.getDeviceId());
+            // Return the device ID of the first online device that has not been assigned to a bin, else return 0
+            for (ServerSocketHandler device : IoTDevices) {
+                if (!deviceIndex.isAssigned(device.getDeviceId())) return device.getDeviceId();
             }
-            if (!IoTDevices.isEmpty()) { // If there is a device left, return the device ID of the first device
-                return IoTDevices.get(0).getDeviceId();
-            } else return 0;  // Else return 0
+            return 0;
         }
     }
 
@@ -415,13 +612,7 @@ public class BinService implements IBinService {
      * @return true/false
      */
     public boolean hasActiveDevice(int deviceId) {
-        List<ServerSocketHandler> IoTDevices = tcpServer.getIoTDevices();   // Get all online devices
-        if (IoTDevices == null) return false;
-        if (IoTDevices.isEmpty()) return false;
-        for (ServerSocketHandler IoTDevice : IoTDevices) {
-            if (IoTDevice.getDeviceId() == deviceId) return true;
-        }
-        return false;
+        return tcpServer.isDeviceConnected(deviceId);
     }
 
     /**
@@ -438,9 +629,16 @@ public class BinService implements IBinService {
         if (binOptional.isPresent()) {
             Bin bin = binOptional.get();
             try {
+                int deviceId = bin.getDeviceId();
                 bin = updateBinFields(updatedBinDto);
                 bin.setId(updatedBinDto.getId());
+                bin.setDeviceId(deviceId);      // The device stays attached, the DTO does not carry it
+                // A new threshold can change the pick-up time, it is saved with the bin instead of on the next read
+                updatePickupDate(bin, getLastLevelReadingWithTimestamp(bin.getId()));
+                updateLastEmptiedTime(bin, bin.getPickUpTime());
                 binRepository.save(bin);
+                deviceIndex.put(bin.getId(), deviceId);
+                trackBin(bin);
                 return true;
             } catch (Exception e) {
                 System.err.println("Error while updating bin with id " + bin.getId() + e.getMessage());
@@ -494,61 +692,85 @@ public class BinService implements IBinService {
      * @return The value of the last recorded level reading or 0 if no readings are available
      */
     public Level getLastLevelReadingWithTimestamp(Long binId) {
-        Optional<Bin> binOptional = binRepository.findById(binId);
-        if (binOptional.isPresent()) {
-            List<Level> allLevels = binOptional.get().getFillLevels();
-            if (!allLevels.isEmpty()) {
-                allLevels.sort(Comparator.comparing(Level::getDateTime).reversed());
-                return allLevels.get(0); // Return the level object with the latest timestamp
-            }
-        }
-        return new Level(); // Return an empty Level object if not found
+        return binRepository.findLatestFillLevelByBinId(binId)
+                .orElseGet(Level::new); // Return an empty Level object if not found
+    }
+
+    @Override
+    public Page<Humidity> getHumidityHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size) {
+        return getSensorHistory(binId, from, to, page, size, binRepository::findHumidityHistory);
+    }
+
+    @Override
+    public Page<Temperature> getTemperatureHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size) {
+        return getSensorHistory(binId, from, to, page, size, binRepository::findTemperatureHistory);
     }
 
+    @Override
+    public Page<Level> getFillLevelHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size) {
+        return getSensorHistory(binId, from, to, page, size, binRepository::findFillLevelHistory);
+    }
 
     /**
-     * Retrieves a list of bins where the current fill level exceeds the set threshold
+     * Loads one page of the bin's readings in the window [from, to), newest first
+     * Without a window the last day is returned
      *
-     * @return List of NotificationBinDto objects representing bins with fill levels
-     * surpassing their threshold.
+     * @param binId
+     * @param from start of the window, inclusive, defaults to one day before to
+     * @param to end of the window, exclusive, defaults to now
+     * @param page zero based page number
+     * @param size readings per page, at most MAX_HISTORY_PAGE_SIZE
+     * @param historyLoader repository query for the sensor
+     * @return the page of readings
      */
-    @Override
-    public List<NotificationBinDto> getBinsWithThresholdLessThanFillLevel() {
-        List<Bin> bins = binRepository.findAll();
+    private <T extends SensorData> Page<T> getSensorHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size,
+                                                           HistoryLoader<T> historyLoader) {
+        if (to == null) to = LocalDateTime.now();
+        if (from == null) from = to.minus(DEFAULT_HISTORY_WINDOW);
+        if (!from.isBefore(to)) throw new IllegalArgumentException("The start of the window must be before its end");
+        if (page < 0) throw new IllegalArgumentException("Page must not be negative");
+        if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) throw new IllegalArgumentException("Page size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        if (!binRepository.existsById(binId)) throw new NoSuchElementException("Bin with id " + binId + " not found");
 
-        return bins.stream()
-                .map(this::verifyBinsFillLevel)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return historyLoader.load(binId, from, to, PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "dateTime")));
     }
 
     /**
-     * Helped method to getBinsWithThresholdLessThanFillLevel
-     * If the bin has an active device, it requests fill level data from it and if the data is over the threshold of the bin, it returns the Level
-     * If the bin has inactive device, it fetches the last data from DB, and if it is above the threshold, it returns the Level
-     * Else returns null, so it is not saved as an alarming value in the stream in getBinsWithThresholdLessThanFillLevel
-     **
-     * @param bin
-     * @return NotificationBinDto
+     * A bin's history as one point per reading, hour or day, whichever fits the window, so that charts over months stay fast
+     *
+     * @param binId
+     * @param type
+     * @param from start of the window, inclusive, defaults to one day before to
+     * @param to end of the window, exclusive, defaults to now
+     * @param resolution raw, hourly or daily points, null to pick the finest one that fits the window
+     * @return the bin's history over the window, oldest point first
      */
-    public NotificationBinDto verifyBinsFillLevel(Bin bin) {
-        boolean isActiveDevice = hasActiveDevice(bin.getDeviceId());
+    @Override
+    public SensorSeriesDto getSensorSeries(Long binId, SensorType type, LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        if (to == null) to = LocalDateTime.now();
+        if (from == null) from = to.minus(DEFAULT_HISTORY_WINDOW);
+        if (!from.isBefore(to)) throw new IllegalArgumentException("The start of the window must be before its end");
+        if (!binRepository.existsById(binId)) throw new NoSuchElementException("Bin with id " + binId + " not found");
 
-        if (isActiveDevice) {
-            Level currentLevelFromDevice = getCurrentFillLevelByBinId(bin.getId()).orElse(null);
-            if (currentLevelFromDevice != null && currentLevelFromDevice.getValue() > bin.getFillThreshold()) {
-                return DTOConverter.binToNotificationBinDto(bin, currentLevelFromDevice);
-            }
-        } else {
-            Level lastLevelWithTimestamp = getLastLevelReadingWithTimestamp(bin.getId());
-            double currentFillLevel = lastLevelWithTimestamp.getValue();
+        return rollupService.getSeries(type, binId, from, to, resolution);
+    }
 
-            if (currentFillLevel > bin.getFillThreshold()) {
-                LocalDateTime timestamp = lastLevelWithTimestamp.getDateTime();
-                return DTOConverter.binToNotificationBinDto(bin, new Level(currentFillLevel, timestamp));
-            }
-        }
-        return null;
+    @FunctionalInterface
+    private interface HistoryLoader<T> {
+        Page<T> load(Long binId, LocalDateTime from, LocalDateTime to, Pageable pageable);
+    }
+
+
+    /**
+     * Retrieves a list of bins where the current fill level exceeds the set threshold
+     * Levels are checked against the thresholds as they are saved, so this only reads the bins that are currently over it
+     *
+     * @return List of NotificationBinDto objects representing bins with fill levels
+     * surpassing their threshold, by bin ID
+     */
+    @Override
+    public List<NotificationBinDto> getBinsWithThresholdLessThanFillLevel() {
+        return alertEngine.getAlerts();
     }
 
     /**
@@ -573,55 +795,106 @@ public class BinService implements IBinService {
 
     /**
      * Starts a service that requests current level of connected devices
+     * The devices are spread across the interval and polled concurrently, see LevelPollingScheduler,
+     * bins with a fill level newer than the interval minus a slot (for example one the device pushed itself) are skipped
      * @param intervalSeconds interval in which the data is requested in seconds
      */
     public void startPeriodicLevelRequest(int intervalSeconds) {
-        if (executorService == null || executorService.isShutdown()) {
-            executorService = Executors.newSingleThreadScheduledExecutor();
-            executorService.scheduleAtFixedRate(this::requestCurrentLevels, 0, intervalSeconds, TimeUnit.SECONDS);
-        }
+        Duration interval = Duration.ofSeconds(intervalSeconds);
+        pollingScheduler.start(interval, this::findBinsToPoll, this::hasFreshLevel, this::pollCurrentLevel);
     }
 
     /**
      * Stops a service that requests current level of connected devices
      */
     public void stopPeriodicLevelRequest() {
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-        }
+        pollingScheduler.stop();
     }
 
     /**
      * Iterates through a list of connected devices and requests the current fill levels
      * based on a matching binID and saves them to database.
+     * All devices are asked at once, every response is saved as soon as it arrives.
      */
     public void requestCurrentLevels() {
         try {
-            List<BinDto> bins = findAllBins();
-            List<ServerSocketHandler> devices = tcpServer.getIoTDevices();
-
-            for (ServerSocketHandler device : devices) {
-                System.out.println("Requesting current level from device " + device.getDeviceId());
-
-                // Find the bin that matches the device ID
-                BinDto matchingBin = bins.stream()
-                        .filter(bin -> bin.getDeviceId() == device.getDeviceId())
-                        .findFirst()
-                        .orElse(null);
-
-                if (matchingBin != null) {
-                    String response = device.sendMessage("getCurrentLevel");
-                    handleIoTData(matchingBin.getId().intValue(), response);
-                } else {
-                    System.out.println("No matching bin found for device ID " + device.getDeviceId());
-                }
-            }
+            List<CompletableFuture<Boolean>> levelRequests = new ArrayList<>();
+            findBinsToPoll().forEach((binId, deviceId) -> levelRequests.add(pollCurrentLevel(binId, deviceId)));
+            CompletableFuture.allOf(levelRequests.toArray(new CompletableFuture[0])).join();
         }
         catch (Exception e) {
             System.out.println("Error while trying periodical level retrieval of connected devices.");
         }
     }
 
+    /**
+     * @return bin ID to device ID of every bin whose device is connected
+     */
+    private Map<Long, Integer> findBinsToPoll() {
+        Map<Long, Integer> binsToPoll = new LinkedHashMap<>();
+        for (ServerSocketHandler device : tcpServer.getIoTDevices()) {
+            for (Long binId : deviceIndex.getBinIds(device.getDeviceId())) binsToPoll.put(binId, device.getDeviceId());
+        }
+        return binsToPoll;
+    }
+
+    /**
+     * @param binId
+     * @param maxAge
+     * @return true if the cached fill level of the bin is newer than maxAge
+     */
+    private boolean hasFreshLevel(Long binId, Duration maxAge) {
+        return stateCache.peekReading(binId, SensorType.LEVEL)
+                .map(level -> level.getDateTime().isAfter(LocalDateTime.now().minus(maxAge)))
+                .orElse(false);
+    }
+
+    /**
+     * Asks the device for the bin's current fill level and saves the answer
+     *
+     * @param binId
+     * @param deviceId
+     * @return future that completes with false if the device did not answer
+     */
+    private CompletableFuture<Boolean> pollCurrentLevel(Long binId, Integer deviceId) {
+        return requestIoTDataAsync(deviceId, "getCurrentLevel").thenApply(response -> {
+            handleIoTData(binId.intValue(), response);
+            return !response.isEmpty();
+        });
+    }
+
+    @Override
+    public Map<String, Long> getPollingStatistics() {
+        return pollingScheduler.getStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getCircuitStatistics() {
+        return tcpServer.getCircuitStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getRollupStatistics() {
+        return rollupService.getStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getRetentionStatistics() {
+        return retentionService.getStatistics();
+    }
+
+    @Override
+    public Map<Integer, DeviceCallGuard.State> getUnhealthyDevices() {
+        return tcpServer.getUnhealthyDevices();
+    }
+
+    @Override
+    public Map<String, Long> getSensorCacheStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>(stateCache.getStatistics());
+        deviceFetches.getStatistics().forEach((key, value) -> statistics.put("deviceFetches." + key, value));
+        return statistics;
+    }
+
     @Override
     public boolean sendBuzzerActivationToIoT(Long binId) {
         if (binId == null) {
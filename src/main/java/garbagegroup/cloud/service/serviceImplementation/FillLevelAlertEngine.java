@@ -0,0 +1,148 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.DTOs.NotificationBinDto;
+import garbagegroup.cloud.model.Level;
+import garbagegroup.cloud.repository.IBinRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the set of bins whose fill level is over their fill threshold
+ * Loaded from the DB once (the threshold of every bin and its newest level, two queries) and then kept up to date by BinService:
+ * every level is checked against the bin's threshold as it is saved, and the bin is checked again when its threshold changes.
+ * Listing the bins that need to be emptied is then a read of the alerts, instead of a scan over all bins and their levels.
+ */
+@Service
+public class FillLevelAlertEngine {
+    private final IBinRepository binRepository;
+    private final Map<Long, BinLevel> bins = new ConcurrentHashMap<>();
+    private final Map<Long, NotificationBinDto> alerts = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public FillLevelAlertEngine(IBinRepository binRepository) {
+        this.binRepository = binRepository;
+    }
+
+    /**
+     * Loads the thresholds and newest levels of all bins on first use
+     */
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            for (Object[] threshold : binRepository.findFillThresholds()) {
+                bins.put((Long) threshold[0], new BinLevel((Double) threshold[1]));
+            }
+            for (Level level : binRepository.findLatestFillLevels()) {
+                update(level.getBin().getId(), state -> state.level(level.getValue(), level.getDateTime()));
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Checks a new fill level against the bin's threshold
+     * A level older than the one already known is ignored, levels of unknown bins as well
+     *
+     * @param binId
+     * @param value
+     * @param dateTime
+     * @return true if the level crossed the threshold, in either direction
+     */
+    public boolean onLevel(Long binId, double value, LocalDateTime dateTime) {
+        ensureLoaded();
+        return update(binId, state -> state.level(value, dateTime));
+    }
+
+    /**
+     * Records the bin's (new) threshold and checks its last level against it
+     *
+     * @param binId
+     * @param fillThreshold
+     * @return true if the new threshold raised or cleared the bin's alert
+     */
+    public boolean putBin(Long binId, Double fillThreshold) {
+        ensureLoaded();
+        bins.putIfAbsent(binId, new BinLevel(fillThreshold));
+        return update(binId, state -> state.fillThreshold = fillThreshold);
+    }
+
+    /**
+     * Forgets the bin, e.g. when it is deleted
+     *
+     * @param binId
+     */
+    public void remove(Long binId) {
+        ensureLoaded();
+        bins.computeIfPresent(binId, (id, state) -> {
+            alerts.remove(id);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the change and adds the bin to or removes it from the alerts, atomically per bin
+     *
+     * @return true if the bin was added to or removed from the alerts
+     */
+    private boolean update(Long binId, Consumer<BinLevel> change) {
+        boolean[] crossed = {false};
+        bins.computeIfPresent(binId, (id, state) -> {
+            change.accept(state);
+            if (state.isOverThreshold()) {
+                crossed[0] = alerts.put(id, new NotificationBinDto(state.fillThreshold, id, state.levelValue, state.levelAt)) == null;
+            } else {
+                crossed[0] = alerts.remove(id) != null;
+            }
+            return state;
+        });
+        return crossed[0];
+    }
+
+    /**
+     * @return the bins whose last fill level is over their threshold, by bin ID
+     */
+    public List<NotificationBinDto> getAlerts() {
+        ensureLoaded();
+        return new ArrayList<>(alerts.values());
+    }
+
+    /**
+     * @param binId
+     * @return the bin's alert, or empty if its level is not over its threshold
+     */
+    public Optional<NotificationBinDto> getAlert(Long binId) {
+        ensureLoaded();
+        return Optional.ofNullable(alerts.get(binId));
+    }
+
+    private static class BinLevel {
+        private Double fillThreshold;
+        private double levelValue;
+        private LocalDateTime levelAt;
+
+        private BinLevel(Double fillThreshold) {
+            this.fillThreshold = fillThreshold;
+        }
+
+        private void level(double value, LocalDateTime dateTime) {
+            if (dateTime == null || (levelAt != null && dateTime.isBefore(levelAt))) return;
+            levelValue = value;
+            levelAt = dateTime;
+        }
+
+        private boolean isOverThreshold() {
+            return levelAt != null && fillThreshold != null && levelValue > fillThreshold;
+        }
+    }
+}
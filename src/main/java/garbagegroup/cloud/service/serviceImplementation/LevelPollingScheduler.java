@@ -0,0 +1,267 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Polls devices for their fill level once per interval
+ * Devices are spread across the interval instead of all being asked at its start: every device has a fixed slot
+ * (its ID modulo the number of slots) and is polled at a random point within that slot, so the load on the devices,
+ * the DB and the request threads is even. At most maxConcurrentPolls requests are outstanding at once, the others wait
+ * for a free permit, and a slow device only holds up its own permit instead of the whole cycle.
+ * Bins whose fill level is still fresh are skipped. A level counts as fresh for the interval minus the slot width: two
+ * polls of the same bin can be as little as that apart (the first late in its slot, the next early), so the level the
+ * previous poll read is never taken for fresh, only one pushed or read since.
+ */
+@Service
+public class LevelPollingScheduler {
+    private final int maxConcurrentPolls;
+    private final int slots;
+    private final Semaphore permits;
+    private final Queue<Poll> waiting = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService scheduler;
+    private long intervalNanos;
+    private long firstCycleStart;
+    private volatile Cycle currentCycle;
+
+    private final AtomicLong cycleCount = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private volatile Map<String, Long> lastCycle = Map.of();
+
+    @Autowired
+    public LevelPollingScheduler(@Value("${polling.max-concurrent-polls:64}") int maxConcurrentPolls,
+                                 @Value("${polling.slots:10}") int slots) {
+        this.maxConcurrentPolls = Math.max(1, maxConcurrentPolls);
+        this.slots = Math.max(1, slots);
+        this.permits = new Semaphore(this.maxConcurrentPolls);
+    }
+
+    /**
+     * Starts polling, does nothing if it is already running
+     *
+     * @param interval how often every bin is polled
+     * @param targets supplies the bins to poll in a cycle, bin ID to device ID
+     * @param isFresh tells whether a bin's fill level is newer than the given age, it is then not polled in this cycle
+     * @param poll polls the device of a bin, the future completes with false if the device did not answer
+     */
+    public synchronized void start(Duration interval, Supplier<Map<Long, Integer>> targets, BiPredicate<Long, Duration> isFresh,
+                                   BiFunction<Long, Integer, CompletableFuture<Boolean>> poll) {
+        if (isRunning()) return;
+        intervalNanos = Math.max(1, interval.toNanos());
+        firstCycleStart = System.nanoTime();
+        cycleCount.set(0);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-polling");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> startCycle(targets, isFresh, poll), 0, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops polling, polls that are already running still finish
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        waiting.clear();
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null && !scheduler.isShutdown();
+    }
+
+    /**
+     * Plans a poll for every target at the start of its slot plus a random jitter within the slot
+     */
+    private void startCycle(Supplier<Map<Long, Integer>> targets, BiPredicate<Long, Duration> isFresh,
+                            BiFunction<Long, Integer, CompletableFuture<Boolean>> poll) {
+        long start = System.nanoTime();
+        long plannedStart = firstCycleStart + cycleCount.getAndIncrement() * intervalNanos;
+        Cycle previous = currentCycle;
+        if (previous != null && !previous.isFinished()) {
+            overrunCount.incrementAndGet();
+            System.out.println("Level polling cycle " + previous.number + " has not finished when the next one starts");
+        }
+
+        Map<Long, Integer> binsToPoll;
+        try {
+            binsToPoll = targets.get();
+        } catch (RuntimeException e) {
+            System.out.println("Could not load the bins to poll: " + e.getMessage());
+            return;
+        }
+        Cycle cycle = new Cycle(cycleCount.get(), start, Math.max(0, start - plannedStart), binsToPoll.size());
+        currentCycle = cycle;
+        if (binsToPoll.isEmpty()) {
+            finish(cycle);
+            return;
+        }
+
+        long slotNanos = Math.max(1, intervalNanos / slots);
+        Duration freshFor = Duration.ofNanos(intervalNanos - slotNanos);
+        binsToPoll.forEach((binId, deviceId) -> {
+            long delay = Math.floorMod(deviceId, slots) * slotNanos + jitter(slotNanos);
+            Poll planned = new Poll(cycle, binId, deviceId, start + delay, binToPoll -> isFresh.test(binToPoll, freshFor), poll);
+            try {
+                scheduler.schedule(() -> dispatch(planned), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                cycle.done();   // Stopped while planning
+            }
+        });
+    }
+
+    /**
+     * @param slotNanos
+     * @return random delay of a poll within its slot, between 0 and slotNanos (exclusive)
+     */
+    protected long jitter(long slotNanos) {
+        return ThreadLocalRandom.current().nextLong(slotNanos);
+    }
+
+    private void dispatch(Poll planned) {
+        if (planned.isFresh.test(planned.binId)) {
+            planned.cycle.skippedCount.incrementAndGet();
+            complete(planned.cycle);
+            return;
+        }
+        waiting.add(planned);
+        drain();
+    }
+
+    /**
+     * Starts waiting polls for as long as there are free permits
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Poll planned = waiting.poll();
+            if (planned == null) {
+                permits.release();
+                return;
+            }
+            run(planned);
+        }
+    }
+
+    private void run(Poll planned) {
+        Cycle cycle = planned.cycle;
+        cycle.recordLag(System.nanoTime() - planned.plannedAt);
+        cycle.polledCount.incrementAndGet();
+        inFlightCount.incrementAndGet();
+        CompletableFuture<Boolean> reply;
+        try {
+            reply = planned.poll.apply(planned.binId, planned.deviceId);
+        } catch (RuntimeException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        reply.whenComplete((answered, e) -> {
+            if (e != null || !Boolean.TRUE.equals(answered)) cycle.failedCount.incrementAndGet();
+            inFlightCount.decrementAndGet();
+            permits.release();
+            complete(cycle);
+            drain();
+        });
+    }
+
+    private void complete(Cycle cycle) {
+        if (cycle.done()) finish(cycle);
+    }
+
+    private void finish(Cycle cycle) {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("cycle", cycle.number);
+        statistics.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycle.start));
+        statistics.put("startLagMs", TimeUnit.NANOSECONDS.toMillis(cycle.startLag));
+        statistics.put("maxPollLagMs", TimeUnit.NANOSECONDS.toMillis(cycle.maxPollLag.get()));
+        statistics.put("bins", (long) cycle.size);
+        statistics.put("polled", (long) cycle.polledCount.get());
+        statistics.put("skippedFresh", (long) cycle.skippedCount.get());
+        statistics.put("failed", (long) cycle.failedCount.get());
+        lastCycle = statistics;
+        System.out.println("Level polling cycle " + cycle.number + " finished: " + statistics);
+    }
+
+    /**
+     * @return number of cycles, overruns and polls in flight, and the figures of the last finished cycle
+     * (its duration, how late it started, how late its polls started at most, and how many bins were polled, skipped or failed)
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("cycles", cycleCount.get());
+        statistics.put("overruns", overrunCount.get());
+        statistics.put("inFlight", (long) inFlightCount.get());
+        statistics.put("waiting", (long) waiting.size());
+        statistics.put("maxConcurrentPolls", (long) maxConcurrentPolls);
+        lastCycle.forEach((key, value) -> statistics.put("lastCycle." + key, value));
+        return statistics;
+    }
+
+    private static class Cycle {
+        private final long number;
+        private final long start;
+        private final long startLag;
+        private final int size;
+        private final AtomicInteger remaining;
+        private final AtomicLong maxPollLag = new AtomicLong();
+        private final AtomicInteger polledCount = new AtomicInteger();
+        private final AtomicInteger skippedCount = new AtomicInteger();
+        private final AtomicInteger failedCount = new AtomicInteger();
+
+        private Cycle(long number, long start, long startLag, int size) {
+            this.number = number;
+            this.start = start;
+            this.startLag = startLag;
+            this.size = size;
+            this.remaining = new AtomicInteger(size);
+        }
+
+        private void recordLag(long lag) {
+            maxPollLag.accumulateAndGet(lag, Math::max);
+        }
+
+        /**
+         * @return true if this was the last bin of the cycle
+         */
+        private boolean done() {
+            return remaining.decrementAndGet() == 0;
+        }
+
+        private boolean isFinished() {
+            return remaining.get() <= 0;
+        }
+    }
+
+    private static class Poll {
+        private final Cycle cycle;
+        private final Long binId;
+        private final int deviceId;
+        private final long plannedAt;
+        private final Predicate<Long> isFresh;
+        private final BiFunction<Long, Integer, CompletableFuture<Boolean>> poll;
+
+        private Poll(Cycle cycle, Long binId, int deviceId, long plannedAt, Predicate<Long> isFresh,
+                     BiFunction<Long, Integer, CompletableFuture<Boolean>> poll) {
+            this.cycle = cycle;
+            this.binId = binId;
+            this.deviceId = deviceId;
+            this.plannedAt = plannedAt;
+            this.isFresh = isFresh;
+            this.poll = poll;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorPartitionRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the monthly partitions of the reading tables ahead of time
+ * Checked at startup and then every check interval (0 turns the check off): the partitions of the current month and
+ * of the next partitionsAhead months are created if they are missing. Plain (not partitioned) reading tables are left
+ * alone, so the same build works with both storage layouts.
+ */
+@Service
+public class SensorPartitionMaintainer {
+    private final SensorPartitionRepository partitionRepository;
+    private final int partitionsAhead;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SensorPartitionMaintainer(SensorPartitionRepository partitionRepository,
+                                     @Value("${sensor.storage.partitions-ahead:2}") int partitionsAhead,
+                                     @Value("${sensor.storage.partition-check-interval-ms:21600000}") long checkIntervalMillis) {
+        this.partitionRepository = partitionRepository;
+        this.partitionsAhead = Math.max(1, partitionsAhead);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sensor-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Not done on the startup thread, a DB that is not reachable yet must not keep the application from starting
+        if (checkIntervalMillis > 0) {
+            scheduler.scheduleAtFixedRate(() -> ensurePartitions(YearMonth.now()), 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Creates the missing partitions of the given month and the months after it, a failure is logged and retried with the next check
+     *
+     * @param month usually the current one
+     * @return number of partitions created
+     */
+    public int ensurePartitions(YearMonth month) {
+        int created = 0;
+        for (SensorType type : SensorType.values()) {
+            try {
+                if (!partitionRepository.isPartitioned(type)) continue;
+                for (int i = 0; i <= partitionsAhead; i++) {
+                    if (partitionRepository.createPartition(type, month.plusMonths(i))) {
+                        System.out.println("Created partition " + SensorPartitionRepository.partitionName(type, month.plusMonths(i)));
+                        created++;
+                    }
+                }
+            } catch (DataAccessException e) {
+                System.err.println("Could not create the partitions of " + type.getTable() + ": " + e.getMessage());
+            }
+        }
+        return created;
+    }
+}
@@ -0,0 +1,249 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.model.SensorReading;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorReadingBatchRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for sensor readings
+ * Readings are queued and written by a background thread in JDBC batches, a batch is written as soon as it is full
+ * or when the flush interval has passed since its first reading, whichever comes first.
+ * The queue is bounded: when the DB falls behind, add() makes the caller wait for free space (up to the offer timeout)
+ * instead of letting the backlog grow without limit.
+ * Enabled with sensor.write-behind.enabled=true, otherwise save() inserts every reading right away
+ */
+@Service
+public class SensorReadingWriteBuffer {
+    private final SensorReadingBatchRepository batchRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final BlockingQueue<SensorReading> queue;
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Autowired
+    public SensorReadingWriteBuffer(SensorReadingBatchRepository batchRepository,
+                                    @Value("${sensor.write-behind.enabled:false}") boolean enabled,
+                                    @Value("${sensor.write-behind.batch-size:500}") int batchSize,
+                                    @Value("${sensor.write-behind.flush-interval-ms:1000}") long flushIntervalMillis,
+                                    @Value("${sensor.write-behind.queue-capacity:10000}") int queueCapacity,
+                                    @Value("${sensor.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+        this.batchRepository = batchRepository;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (enabled) start();
+    }
+
+    private void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "sensor-reading-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Saves the reading: queued when write-behind is enabled, inserted right away otherwise
+     * Either way only the reading's row is written, the bin is never loaded for it
+     *
+     * @param reading
+     * @return false if the reading could not be queued, or was not inserted (for example because its bin does not exist)
+     */
+    public boolean save(SensorReading reading) {
+        if (enabled) return add(reading);
+        try {
+            List<SensorReading> readings = List.of(reading);
+            boolean inserted = batchRepository.insertAll(reading.getType(), readings) > 0;
+            if (inserted && reading.getType() == SensorType.LEVEL) batchRepository.updatePickUpTimes(readings);
+            return inserted;
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            System.err.println("Error saving " + reading.getType() + " with Bin Id: " + reading.getBinId() + ".\n" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Queues the reading, waiting for free space if the queue is full
+     *
+     * @param reading
+     * @return false if the queue stayed full for the whole offer timeout, the reading is then not saved
+     */
+    public boolean add(SensorReading reading) {
+        try {
+            if (queue.offer(reading, offerTimeoutMillis, TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCount.incrementAndGet();
+        System.err.println("Sensor reading queue is full, could not save " + reading.getType() + " of bin with Id: " + reading.getBinId());
+        return false;
+    }
+
+    private void runFlusher() {
+        List<SensorReading> batch = new ArrayList<>(batchSize);
+        while (running) {
+            FlushBarrier barrier;
+            try {
+                barrier = collectBatch(batch);
+            } catch (InterruptedException e) {
+                write(batch);   // shutdown() writes whatever is still queued
+                return;
+            }
+            write(batch);
+            batch.clear();
+            if (barrier != null) barrier.written.countDown();
+        }
+    }
+
+    /**
+     * Waits for the first reading, then keeps taking readings until the batch is full
+     * or the flush interval has passed since the first one arrived
+     * Stops early at a flush barrier, everything queued before it is then in the batch
+     *
+     * @param batch
+     * @return the flush barrier that ended the batch, null if it ended because it was full or its time was up
+     * @throws InterruptedException
+     */
+    private FlushBarrier collectBatch(List<SensorReading> batch) throws InterruptedException {
+        SensorReading next = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (next != null) {
+            if (next instanceof FlushBarrier barrier) return barrier;
+            batch.add(next);
+            if (batch.size() >= batchSize) return null;
+            next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return null;
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes everything that has been queued up to now and returns once it is in the DB
+     * While the background thread runs, a flush barrier is queued behind the readings: the thread writes the batch it is
+     * collecting right away, including the readings it has already taken off the queue, and then lets the caller go.
+     * Otherwise (or if the background thread is gone) the queue is written on the calling thread.
+     */
+    public void flush() {
+        Thread backgroundThread = flusher;
+        if (running && backgroundThread != null) {
+            FlushBarrier barrier = new FlushBarrier();
+            try {
+                if (queue.offer(barrier, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    while (!barrier.written.await(100, TimeUnit.MILLISECONDS)) {
+                        if (!backgroundThread.isAlive()) break;
+                    }
+                    if (barrier.written.getCount() == 0) return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        List<SensorReading> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        List<SensorReading> readings = new ArrayList<>(queued.size());
+        List<FlushBarrier> barriers = new ArrayList<>();
+        for (SensorReading reading : queued) {
+            if (reading instanceof FlushBarrier barrier) barriers.add(barrier);
+            else readings.add(reading);
+        }
+        for (int from = 0; from < readings.size(); from += batchSize) {
+            write(readings.subList(from, Math.min(readings.size(), from + batchSize)));
+        }
+        barriers.forEach(barrier -> barrier.written.countDown());
+    }
+
+    /**
+     * Writes the readings with one batch insert per table, fill levels also update the pick-up times of their bins
+     *
+     * @param readings
+     */
+    private synchronized void write(List<SensorReading> readings) {
+        if (readings.isEmpty()) return;
+        Map<SensorType, List<SensorReading>> byType = new EnumMap<>(SensorType.class);
+        for (SensorReading reading : readings) {
+            byType.computeIfAbsent(reading.getType(), type -> new ArrayList<>()).add(reading);
+        }
+        byType.forEach((type, batch) -> {
+            try {
+                batchRepository.insertAll(type, batch);
+                if (type == SensorType.LEVEL) batchRepository.updatePickUpTimes(batch);
+                writtenCount.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                failedCount.addAndGet(batch.size());
+                System.err.println("Error saving " + batch.size() + " " + type + " readings.\n" + e.getMessage());
+            }
+        });
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Queued by flush() behind the readings it has to wait for, never written itself
+     */
+    private static class FlushBarrier extends SensorReading {
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private FlushBarrier() {
+            super(SensorType.LEVEL, 0, 0, null);
+        }
+    }
+
+    /**
+     * Stops the background thread and writes the readings that are still queued
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
@@ -0,0 +1,190 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorPartitionRepository;
+import garbagegroup.cloud.repository.SensorReadingBatchRepository;
+import garbagegroup.cloud.repository.SensorRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Purges raw readings and aggregates that are older than their retention, once per interval
+ * Raw readings are kept per sensor type (30 days unless configured otherwise), hourly aggregates for a year and daily
+ * ones for ten years; 0 keeps them forever. Raw readings are only purged once they are in the aggregates.
+ * On the partitioned layout the months that are entirely past the retention are dropped as a whole, the rest is deleted
+ * in small batches with a pause between them, so the purge never holds many locks and the inserts keep flowing.
+ * A bin's newest reading is always kept, so a bin that stopped reporting still has its current values: a month holding
+ * one is not dropped but deleted in batches like the rest.
+ */
+@Service
+public class SensorRetentionService {
+    private final SensorPartitionRepository partitionRepository;
+    private final SensorReadingBatchRepository batchRepository;
+    private final SensorRollupRepository rollupRepository;
+    private final SensorRollupService rollupService;
+    private final Map<SensorType, Duration> rawRetention = new EnumMap<>(SensorType.class);
+    private final Map<Resolution, Duration> rollupRetention = new EnumMap<>(Resolution.class);
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final long lockTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rawPurgedCount = new AtomicLong();
+    private final AtomicLong rollupsPurgedCount = new AtomicLong();
+    private final AtomicLong partitionsDroppedCount = new AtomicLong();
+    private volatile Map<String, Long> lastRun = Map.of();
+
+    @Autowired
+    public SensorRetentionService(SensorPartitionRepository partitionRepository, SensorReadingBatchRepository batchRepository,
+                                  SensorRollupRepository rollupRepository, SensorRollupService rollupService,
+                                  @Value("${retention.humidity-days:30}") int humidityDays,
+                                  @Value("${retention.temperature-days:30}") int temperatureDays,
+                                  @Value("${retention.level-days:30}") int levelDays,
+                                  @Value("${retention.hourly-rollup-days:365}") int hourlyRollupDays,
+                                  @Value("${retention.daily-rollup-days:3650}") int dailyRollupDays,
+                                  @Value("${retention.batch-size:5000}") int batchSize,
+                                  @Value("${retention.batch-pause-ms:100}") long batchPauseMillis,
+                                  @Value("${retention.lock-timeout-ms:5000}") long lockTimeoutMillis,
+                                  @Value("${retention.initial-delay-ms:600000}") long initialDelayMillis,
+                                  @Value("${retention.interval-ms:86400000}") long intervalMillis) {
+        this.partitionRepository = partitionRepository;
+        this.batchRepository = batchRepository;
+        this.rollupRepository = rollupRepository;
+        this.rollupService = rollupService;
+        putRetention(rawRetention, SensorType.HUMIDITY, humidityDays);
+        putRetention(rawRetention, SensorType.TEMPERATURE, temperatureDays);
+        putRetention(rawRetention, SensorType.LEVEL, levelDays);
+        putRetention(rollupRetention, Resolution.HOUR, hourlyRollupDays);
+        putRetention(rollupRetention, Resolution.DAY, dailyRollupDays);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMillis = Math.max(0, batchPauseMillis);
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sensor-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Started a while after startup, so that the readings have been rolled up before any of them are purged
+        if (intervalMillis > 0) scheduler.scheduleWithFixedDelay(this::purge, Math.max(0, initialDelayMillis), intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static <K> void putRetention(Map<K, Duration> retention, K key, int days) {
+        if (days > 0) retention.put(key, Duration.ofDays(days));
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Purges everything past its retention, a sensor type or resolution that fails is purged with the next run
+     *
+     * @return what the run purged and how long it took, also kept for getStatistics
+     */
+    public synchronized Map<String, Long> purge() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        long rawRows = 0;
+        long rollupRows = 0;
+        long partitions = 0;
+        for (Map.Entry<SensorType, Duration> retention : rawRetention.entrySet()) {
+            SensorType type = retention.getKey();
+            try {
+                Optional<LocalDateTime> rolledUpUntil = rollupService.getRolledUpUntil(type);
+                if (rolledUpUntil.isEmpty()) continue;      // Not in the aggregates yet, purged with a later run
+                LocalDateTime cutoff = min(now.minus(retention.getValue()), rolledUpUntil.get());
+                if (partitionRepository.isPartitioned(type)) {
+                    for (YearMonth month : partitionRepository.findPartitionMonths(type)) {
+                        if (month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)) break;
+                        if (partitionRepository.holdsNewestReading(type, month)) continue;      // Left to the batches below
+                        rawRows += partitionRepository.dropPartition(type, month, lockTimeoutMillis);
+                        partitions++;
+                    }
+                }
+                // The month the cutoff falls into, months holding a bin's newest reading, the default partition, or the whole plain table
+                rawRows += deleteInBatches(() -> batchRepository.deleteOlderThan(type, cutoff, batchSize));
+            } catch (DataAccessException e) {
+                failedCount.incrementAndGet();
+                System.err.println("Could not purge the " + type.getTable() + " readings: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<Resolution, Duration> retention : rollupRetention.entrySet()) {
+            LocalDateTime cutoff = now.minus(retention.getValue());
+            try {
+                rollupRows += deleteInBatches(() -> rollupRepository.deleteOlderThan(retention.getKey(), cutoff, batchSize));
+            } catch (DataAccessException e) {
+                failedCount.incrementAndGet();
+                System.err.println("Could not purge the " + retention.getKey().getName() + " aggregates: " + e.getMessage());
+            }
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        runCount.incrementAndGet();
+        rawPurgedCount.addAndGet(rawRows);
+        rollupsPurgedCount.addAndGet(rollupRows);
+        partitionsDroppedCount.addAndGet(partitions);
+        Map<String, Long> run = new LinkedHashMap<>();
+        run.put("rawPurged", rawRows);
+        run.put("rollupsPurged", rollupRows);
+        run.put("partitionsDropped", partitions);
+        run.put("millis", millis);
+        lastRun = run;
+        System.out.println("Purged " + rawRows + " readings (" + partitions + " partitions) and " + rollupRows + " aggregates in " + millis + " ms");
+        return run;
+    }
+
+    /**
+     * Repeats the delete until a batch comes back short, pausing between batches so the inserts get their turn
+     *
+     * @return number of rows deleted
+     */
+    private long deleteInBatches(IntSupplier deleteBatch) {
+        long deleted = 0;
+        while (true) {
+            int rows = deleteBatch.getAsInt();
+            deleted += rows;
+            if (rows < batchSize) return deleted;
+            try {
+                Thread.sleep(batchPauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return deleted;
+            }
+        }
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * @return number of runs and failures, rows and partitions purged in total, and what the last run purged and how long it took
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("runs", runCount.get());
+        statistics.put("failures", failedCount.get());
+        statistics.put("rawPurged", rawPurgedCount.get());
+        statistics.put("rollupsPurged", rollupsPurgedCount.get());
+        statistics.put("partitionsDropped", partitionsDroppedCount.get());
+        lastRun.forEach((name, value) -> statistics.put("lastRun." + name, value));
+        return statistics;
+    }
+}
@@ -0,0 +1,177 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.DTOs.SensorPointDto;
+import garbagegroup.cloud.DTOs.SensorSeriesDto;
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps hourly and daily aggregates (min, max, avg, last and count) of every bin's readings and serves a bin's history
+ * at the resolution that fits the requested window
+ * A background job rolls the readings up every interval: the hours since its previous run (minus the allowed lateness,
+ * so readings saved late are counted too) are aggregated from the raw readings, and their days from the hours.
+ * A chart over months then reads one aggregate per day instead of every reading.
+ */
+@Service
+public class SensorRollupService {
+    private final SensorRollupRepository rollupRepository;
+    private final Duration lateness;
+    private final int maxPoints;
+    private final Duration rawMaxRange;
+    private final ScheduledExecutorService scheduler;
+    private final Map<SensorType, LocalDateTime> rolledUpUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong hourlyCount = new AtomicLong();
+    private final AtomicLong dailyCount = new AtomicLong();
+    private volatile long lastRunMillis;
+
+    @Autowired
+    public SensorRollupService(SensorRollupRepository rollupRepository,
+                               @Value("${rollup.interval-ms:300000}") long intervalMillis,
+                               @Value("${rollup.lateness-ms:3600000}") long latenessMillis,
+                               @Value("${rollup.max-points:1000}") int maxPoints,
+                               @Value("${rollup.raw-max-range-ms:86400000}") long rawMaxRangeMillis) {
+        this.rollupRepository = rollupRepository;
+        this.lateness = Duration.ofMillis(Math.max(0, latenessMillis));
+        this.maxPoints = Math.max(1, maxPoints);
+        this.rawMaxRange = Duration.ofMillis(Math.max(0, rawMaxRangeMillis));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sensor-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (intervalMillis > 0) scheduler.scheduleWithFixedDelay(this::rollUp, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Aggregates the readings saved since the previous run, a sensor type that fails is retried from the same point next time
+     * The first run continues from the newest hourly aggregate, or starts at the oldest reading if there are no aggregates yet
+     *
+     * @return number of aggregates written
+     */
+    public synchronized int rollUp() {
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime end = Resolution.HOUR.truncate(now).plusHours(1);
+        int written = 0;
+        for (SensorType type : SensorType.values()) {
+            try {
+                Optional<LocalDateTime> since = rolledUpUntil.containsKey(type) ? Optional.of(rolledUpUntil.get(type).minus(lateness))
+                        : rollupRepository.findLastBucket(type, Resolution.HOUR).or(() -> rollupRepository.findFirstReading(type));
+                if (since.isEmpty()) continue;      // No readings yet
+                LocalDateTime from = Resolution.HOUR.truncate(since.get());
+                // A day at a time, so that catching up on a long history is not one huge statement
+                for (LocalDateTime chunk = from; chunk.isBefore(end); chunk = chunk.plusDays(1)) {
+                    int hours = rollupRepository.rollUpHours(type, chunk, chunk.plusDays(1).isBefore(end) ? chunk.plusDays(1) : end);
+                    hourlyCount.addAndGet(hours);
+                    written += hours;
+                }
+                int days = rollupRepository.rollUpDays(type, Resolution.DAY.truncate(from), Resolution.DAY.truncate(now).plusDays(1));
+                dailyCount.addAndGet(days);
+                written += days;
+                rolledUpUntil.put(type, now);
+            } catch (DataAccessException e) {
+                failedCount.incrementAndGet();
+                System.err.println("Could not roll up the " + type.getTable() + " readings: " + e.getMessage());
+            }
+        }
+        runCount.incrementAndGet();
+        lastRunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return written;
+    }
+
+    /**
+     * Readings before this time are in the aggregates, even those saved up to the allowed lateness after they were taken
+     *
+     * @param type
+     * @return empty if the type has not been rolled up since the application started
+     */
+    public Optional<LocalDateTime> getRolledUpUntil(SensorType type) {
+        return Optional.ofNullable(rolledUpUntil.get(type)).map(until -> Resolution.HOUR.truncate(until.minus(lateness)));
+    }
+
+    /**
+     * Picks the finest resolution whose points over the window still fit in maxPoints
+     * Raw readings are only considered for windows up to rawMaxRange, as their number is not known in advance
+     *
+     * @param from
+     * @param to
+     * @return RAW, HOUR or DAY
+     */
+    public Resolution chooseResolution(LocalDateTime from, LocalDateTime to) {
+        if (Duration.between(from, to).compareTo(rawMaxRange) <= 0) return Resolution.RAW;
+        return chooseRollupResolution(from, to);
+    }
+
+    private Resolution chooseRollupResolution(LocalDateTime from, LocalDateTime to) {
+        return countBuckets(Resolution.HOUR, from, to) <= maxPoints ? Resolution.HOUR : Resolution.DAY;
+    }
+
+    /**
+     * @return number of aggregates of the resolution that overlap the window
+     */
+    private static long countBuckets(Resolution resolution, LocalDateTime from, LocalDateTime to) {
+        Duration covered = Duration.between(resolution.truncate(from), to);
+        long buckets = covered.dividedBy(resolution.getBucketSize());
+        return covered.equals(resolution.getBucketSize().multipliedBy(buckets)) ? buckets : buckets + 1;
+    }
+
+    /**
+     * @param type
+     * @param binId
+     * @param from start of the window, inclusive
+     * @param to end of the window, exclusive
+     * @param resolution null to choose it from the length of the window
+     * @return the bin's history over the window, oldest point first
+     * @throws IllegalArgumentException if the window holds more than maxPoints points at the requested resolution
+     */
+    public SensorSeriesDto getSeries(SensorType type, Long binId, LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        Resolution chosen = resolution == null ? chooseResolution(from, to) : resolution;
+        List<SensorPointDto> points = null;
+        if (chosen == Resolution.RAW) {
+            List<SensorPointDto> readings = rollupRepository.findReadings(type, binId, from, to, maxPoints + 1);
+            if (readings.size() <= maxPoints) points = readings;
+            else if (resolution == null) chosen = chooseRollupResolution(from, to);     // More readings than expected
+            else throw new IllegalArgumentException("More than " + maxPoints + " readings in the window, use a coarser resolution");
+        } else if (resolution != null && countBuckets(chosen, from, to) > maxPoints) {
+            throw new IllegalArgumentException("More than " + maxPoints + " points in the window, use a coarser resolution");
+        }
+        if (points == null) points = rollupRepository.findRollups(type, chosen, binId, chosen.truncate(from), to);
+        return new SensorSeriesDto(binId, type.getTable(), chosen.getName(), from, to, points);
+    }
+
+    /**
+     * @return number of job runs and failed sensor types, of hourly and daily aggregates written, and how long the last run took
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("runs", runCount.get());
+        statistics.put("failures", failedCount.get());
+        statistics.put("hourly", hourlyCount.get());
+        statistics.put("daily", dailyCount.get());
+        statistics.put("lastRunMillis", lastRunMillis);
+        return statistics;
+    }
+}
@@ -0,0 +1,189 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.model.SensorData;
+import garbagegroup.cloud.model.SensorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the current state of every bin: its latest humidity, temperature and fill level, and its device status
+ * A reading is served from here for as long as it is fresh (the reading TTL of its sensor type, the same rule BinService
+ * uses to decide whether to ask the device), so repeated requests for the same bin skip both the DB and the device.
+ * The number of bins kept is bounded, the least recently used bin is evicted first.
+ */
+@Service
+public class SensorStateCache {
+    public static final Duration READING_TTL = Duration.ofHours(1);
+    private final int maxEntries;
+    private final Duration statusTtl;
+    private final Map<SensorType, Duration> readingTtls = new EnumMap<>(SensorType.class);
+    private final Map<Long, BinState> states;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public SensorStateCache(int maxEntries, long statusTtlMillis) {
+        this(maxEntries, statusTtlMillis, READING_TTL.toMillis(), READING_TTL.toMillis(), READING_TTL.toMillis());
+    }
+
+    /**
+     * @param maxEntries
+     * @param statusTtlMillis
+     * @param humidityTtlMillis how long a humidity reading counts as fresh, an older one is refreshed from the device
+     * @param temperatureTtlMillis the same for temperature
+     * @param levelTtlMillis the same for the fill level
+     */
+    @Autowired
+    public SensorStateCache(@Value("${sensor.cache.max-entries:10000}") int maxEntries,
+                            @Value("${sensor.cache.status-ttl-ms:30000}") long statusTtlMillis,
+                            @Value("${sensor.freshness.humidity-ms:3600000}") long humidityTtlMillis,
+                            @Value("${sensor.freshness.temperature-ms:3600000}") long temperatureTtlMillis,
+                            @Value("${sensor.freshness.level-ms:3600000}") long levelTtlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.statusTtl = Duration.ofMillis(statusTtlMillis);
+        readingTtls.put(SensorType.HUMIDITY, Duration.ofMillis(humidityTtlMillis));
+        readingTtls.put(SensorType.TEMPERATURE, Duration.ofMillis(temperatureTtlMillis));
+        readingTtls.put(SensorType.LEVEL, Duration.ofMillis(levelTtlMillis));
+        this.states = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BinState> eldest) {
+                if (size() <= SensorStateCache.this.maxEntries) return false;
+                evictionCount.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param binId
+     * @param type
+     * @return the bin's latest reading of the type, or empty if it is not cached or older than the type's reading TTL
+     */
+    public synchronized Optional<SensorData> getReading(Long binId, SensorType type) {
+        BinState state = states.get(binId);
+        SensorData reading = (state == null) ? null : state.readings.get(type);
+        if (reading == null || isOlderThan(reading.getDateTime(), getReadingTtl(type))) {
+            missCount.incrementAndGet();
+            return Optional.empty();
+        }
+        hitCount.incrementAndGet();
+        return Optional.of(reading);
+    }
+
+    /**
+     * @param type
+     * @return how long a reading of the type counts as fresh
+     */
+    public Duration getReadingTtl(SensorType type) {
+        return readingTtls.get(type);
+    }
+
+    /**
+     * Like getReading, but without counting a hit or miss and regardless of the reading's age
+     *
+     * @param binId
+     * @param type
+     * @return the bin's latest cached reading of the type, or empty if there is none
+     */
+    public synchronized Optional<SensorData> peekReading(Long binId, SensorType type) {
+        BinState state = states.get(binId);
+        return Optional.ofNullable(state == null ? null : state.readings.get(type));
+    }
+
+    /**
+     * Stores the reading, unless a newer one of the same type is already cached
+     *
+     * @param binId
+     * @param type
+     * @param reading
+     */
+    public synchronized void putReading(Long binId, SensorType type, SensorData reading) {
+        if (binId == null || reading == null || reading.getDateTime() == null) return;
+        BinState state = states.computeIfAbsent(binId, id -> new BinState());
+        SensorData cached = state.readings.get(type);
+        if (cached == null || !cached.getDateTime().isAfter(reading.getDateTime())) {
+            state.readings.put(type, reading);
+        }
+    }
+
+    /**
+     * @param binId
+     * @return the bin's device status (ACTIVE, ERROR or OFFLINE), or null if it is not cached or older than the status TTL
+     */
+    public synchronized String getStatus(Long binId) {
+        BinState state = states.get(binId);
+        if (state == null || state.status == null || isOlderThan(state.statusAt, statusTtl)) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return state.status;
+    }
+
+    /**
+     * @param binId
+     * @param status
+     * @return the status cached before, regardless of its age, or null if there was none
+     */
+    public synchronized String putStatus(Long binId, String status) {
+        if (binId == null || status == null) return null;
+        BinState state = states.computeIfAbsent(binId, id -> new BinState());
+        String previous = state.status;
+        state.status = status;
+        state.statusAt = LocalDateTime.now();
+        return previous;
+    }
+
+    /**
+     * Forgets everything cached for the bin, e.g. when it is deleted
+     *
+     * @param binId
+     */
+    public synchronized void evict(Long binId) {
+        states.remove(binId);
+    }
+
+    public synchronized int size() {
+        return states.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return hits, misses, evictions and the number of cached bins
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("hits", getHitCount());
+        statistics.put("misses", getMissCount());
+        statistics.put("evictions", getEvictionCount());
+        statistics.put("size", (long) size());
+        return statistics;
+    }
+
+    private boolean isOlderThan(LocalDateTime dateTime, Duration maxAge) {
+        return Duration.between(dateTime, LocalDateTime.now()).compareTo(maxAge) > 0;
+    }
+
+    private static class BinState {
+        private final Map<SensorType, SensorData> readings = new EnumMap<>(SensorType.class);
+        private String status;
+        private LocalDateTime statusAt;
+    }
+}
@@ -0,0 +1,63 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key into one
+ * The first caller for a key runs the call, everyone who asks for the same key while it is running gets the same future
+ * instead of starting a call of their own. Once the call has completed, the next caller for the key starts a new one,
+ * so results are shared only between callers that overlap, never cached.
+ *
+ * @param <K> key that identifies the call
+ * @param <V> result of the call
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Runs the call, or joins the one that is already running for the key
+     * A call that returns an already completed future (a blocking call) runs on the first caller's thread, the others wait for it
+     *
+     * @param key
+     * @param call
+     * @return future result of the call, shared by all callers that asked while it was running
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalescedCount.incrementAndGet();
+            return running;
+        }
+        callCount.incrementAndGet();
+        try {
+            call.get().whenComplete((result, error) -> {
+                inFlight.remove(key, flight);   // Before completing, so that a caller woken up by the result starts a new call
+                if (error != null) flight.completeExceptionally(error);
+                else flight.complete(result);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight;
+    }
+
+    /**
+     * @return number of calls started, of callers that joined a running call instead, and of calls running now
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("calls", callCount.get());
+        statistics.put("coalesced", coalescedCount.get());
+        statistics.put("inFlight", (long) inFlight.size());
+        return statistics;
+    }
+}
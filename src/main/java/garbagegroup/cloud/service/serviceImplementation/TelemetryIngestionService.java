@@ -0,0 +1,97 @@
+package garbagegroup.cloud.service.serviceImplementation;
+
+import garbagegroup.cloud.service.serviceInterface.IBinService;
+import garbagegroup.cloud.service.serviceInterface.ITelemetryIngestionService;
+import garbagegroup.cloud.tcpserver.ITCPServer;
+import garbagegroup.cloud.tcpserver.Telemetry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the readings devices push on their own
+ * The I/O thread only queues the reading, it is written to the DB by a separate worker thread,
+ * so neither a slow DB nor a slow device ever holds up the other.
+ */
+@Service
+public class TelemetryIngestionService implements ITelemetryIngestionService {
+    private static final int QUEUE_CAPACITY = 10_000;
+    private final IBinService binService;
+    private final BinDeviceIndex deviceIndex;
+    private final ExecutorService ingestionExecutor;
+    private final AtomicLong ingestedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @Autowired
+    public TelemetryIngestionService(IBinService binService, BinDeviceIndex deviceIndex, ITCPServer tcpServer) {
+        this.binService = binService;
+        this.deviceIndex = deviceIndex;
+        this.ingestionExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "telemetry-ingestion");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        tcpServer.setTelemetryListener(this);
+    }
+
+    /**
+     * Queues the reading for saving, called on the I/O thread that received it
+     * If the queue is full the reading is dropped, the device will push a newer one anyway
+     *
+     * @param telemetry
+     */
+    @Override
+    public void onTelemetry(Telemetry telemetry) {
+        try {
+            ingestionExecutor.execute(() -> save(telemetry));
+        } catch (RejectedExecutionException e) {
+            droppedCount.incrementAndGet();
+            System.out.println("Telemetry queue is full, dropping " + telemetry + " from device with ID " + telemetry.getDeviceId());
+        }
+    }
+
+    /**
+     * Saves the reading for every bin the device is attached to
+     *
+     * @param telemetry
+     */
+    public void save(Telemetry telemetry) {
+        try {
+            List<Long> binIds = deviceIndex.getBinIds(telemetry.getDeviceId());
+            if (binIds.isEmpty()) {
+                System.out.println("Device with ID " + telemetry.getDeviceId() + " is not attached to a bin, ignoring " + telemetry);
+                return;
+            }
+            for (Long binId : binIds) {
+                String sensor = telemetry.getSensor();
+                if (sensor.equals("humid")) binService.saveHumidityByBinId(binId.intValue(), telemetry.getValue(), telemetry.getReceivedAt());
+                if (sensor.equals("tempe")) binService.saveTemperatureByBinId(binId.intValue(), telemetry.getValue(), telemetry.getReceivedAt());
+                if (sensor.equals("level")) binService.saveFillLevelByBinId(binId.intValue(), telemetry.getValue(), telemetry.getReceivedAt());
+            }
+            ingestedCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            droppedCount.incrementAndGet();
+            System.out.println("Could not save " + telemetry + " from device with ID " + telemetry.getDeviceId() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getIngestedCount() {
+        return ingestedCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestionExecutor.shutdown();
+    }
+}
@@ -2,12 +2,15 @@ package garbagegroup.cloud.service.serviceInterface;
 
 import garbagegroup.cloud.DTOs.*;
 import garbagegroup.cloud.model.*;
+import garbagegroup.cloud.tcpserver.DeviceCallGuard;
 import garbagegroup.cloud.tcpserver.ITCPServer;
 
+import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -18,6 +21,10 @@ public interface IBinService {
     Optional<Level> getCurrentFillLevelByBinId(Long binId);
     boolean saveFillLevelByBinId(int binId, double fillLevel, LocalDateTime dateTime);     // Save to DB
     boolean saveTemperatureByBinId(int binId, double fillLevel, LocalDateTime dateTime);     // Save to DB
+    Page<Humidity> getHumidityHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size);
+    Page<Temperature> getTemperatureHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size);
+    Page<Level> getFillLevelHistory(Long binId, LocalDateTime from, LocalDateTime to, int page, int size);
+    SensorSeriesDto getSensorSeries(Long binId, SensorType type, LocalDateTime from, LocalDateTime to, Resolution resolution);
     void setTCPServer(ITCPServer tcpServer);
     boolean updateBin(UpdateBinDto updatedBinDto);
     void handleIoTData(int deviceId, String data);
@@ -33,4 +40,10 @@ public interface IBinService {
     void stopPeriodicLevelRequest();
     void requestCurrentLevels();
     boolean sendBuzzerActivationToIoT(Long binId);
+    Map<String, Long> getSensorCacheStatistics();
+    Map<String, Long> getPollingStatistics();
+    Map<String, Long> getCircuitStatistics();
+    Map<String, Long> getRollupStatistics();
+    Map<String, Long> getRetentionStatistics();
+    Map<Integer, DeviceCallGuard.State> getUnhealthyDevices();
 }
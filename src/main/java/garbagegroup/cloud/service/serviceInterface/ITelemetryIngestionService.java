@@ -0,0 +1,8 @@
+package garbagegroup.cloud.service.serviceInterface;
+
+import garbagegroup.cloud.tcpserver.ITelemetryListener;
+
+public interface ITelemetryIngestionService extends ITelemetryListener {
+    long getIngestedCount();
+    long getDroppedCount();
+}
@@ -1,5 +1,8 @@
 package garbagegroup.cloud.tcpclient;
 
+import garbagegroup.cloud.tcpserver.DeviceProtocol;
+import garbagegroup.cloud.tcpserver.Frame;
+import garbagegroup.cloud.tcpserver.FrameCodec;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
@@ -11,6 +14,16 @@ public class Client {
     private OutputStream outToServer;
     private InputStream inFromServer;
     private final Random random = new Random();
+    private final DeviceProtocol protocol;
+    private int lastRequestId;
+
+    public Client() {
+        this(DeviceProtocol.FRAMED);
+    }
+
+    public Client(DeviceProtocol protocol) {
+        this.protocol = protocol;
+    }
 
     public void startClient() {
         try{
@@ -34,46 +47,16 @@ public class Client {
     public void listenToMessages() {
         while (true) {
             try {
-                // Read response
-                byte[] buffer = new byte[1024];
-                int bytesRead = inFromServer.read(buffer);
-                String result = new String(buffer, 0, bytesRead);
+                String result = readCommand();
                 System.out.println("Client received: " + result);
 
-                if (result.equals("getHumidity")) {
-                    outToServer.write(("humid:25.0").getBytes());
-                    outToServer.flush();
-                }
-                else if (result.startsWith("setFillThreshold")) {
-                    outToServer.write("Threshold set".getBytes());
-                    outToServer.flush();
-                }
-                else if (result.equals("getSerialNumber")) {
-                    outToServer.write("3456".getBytes());
-                    outToServer.flush();
-                }
-                else if (result.equals("getTemperature")) {
-                    outToServer.write("tempe:21.0".getBytes());
-                    outToServer.flush();
-                }
-                else if (result.equals("getCurrentLevel")) {
-                    float value = random.nextFloat() * 100;
-                    // Round to 1 decimal place
-                    value = Math.round(value * 10) / 10f;
-                    outToServer.write(("level:" + value).getBytes());
-                    outToServer.flush();
-                }
-                else if (result.equals("getStatus")) {
-                    outToServer.write("statu:OK".getBytes());
-                    outToServer.flush();
-                }
-                else if (result.equals("calibrateDevice")) {
-                    outToServer.write("OK".getBytes());
-                    outToServer.flush();
-                } else if (result.equals("activateBuzzer")) {
-                    outToServer.write("OK".getBytes());
-                    outToServer.flush();
-                }
+                String reply = replyTo(result);
+                if (reply != null) sendReply(reply);
+            }
+            catch (EOFException e)
+            {
+                System.out.println("Server closed the connection");
+                return;
             }
             catch (IOException e)
             {
@@ -81,4 +64,47 @@ public class Client {
             }
         }
     }
+
+    private String readCommand() throws IOException {
+        if (protocol == DeviceProtocol.FRAMED) {
+            Frame command = FrameCodec.read(inFromServer);
+            lastRequestId = command.getRequestId();
+            return command.toText();
+        }
+
+        // Read response
+        byte[] buffer = new byte[1024];
+        int bytesRead = inFromServer.read(buffer);
+        if (bytesRead == -1) throw new EOFException();
+        return new String(buffer, 0, bytesRead);
+    }
+
+    /**
+     * Replies are written in the text protocol's form, in the framed protocol they are sent in their compact binary form
+     * together with the request ID of the command they answer
+     *
+     * @param reply
+     */
+    private void sendReply(String reply) throws IOException {
+        if (protocol == DeviceProtocol.FRAMED) outToServer.write(FrameCodec.encode(Frame.fromText(reply).withRequestId(lastRequestId)));
+        else outToServer.write(reply.getBytes());
+        outToServer.flush();
+    }
+
+    private String replyTo(String command) {
+        if (command.equals("getHumidity")) return "humid:25.0";
+        else if (command.startsWith("setFillThreshold")) return "Threshold set";
+        else if (command.equals("getSerialNumber")) return "3456";
+        else if (command.equals("getTemperature")) return "tempe:21.0";
+        else if (command.equals("getCurrentLevel")) {
+            float value = random.nextFloat() * 100;
+            // Round to 1 decimal place
+            value = Math.round(value * 10) / 10f;
+            return "level:" + value;
+        }
+        else if (command.equals("getStatus")) return "statu:OK";
+        else if (command.equals("calibrateDevice")) return "OK";
+        else if (command.equals("activateBuzzer")) return "OK";
+        return null;
+    }
 }
@@ -1,8 +1,14 @@
 package garbagegroup.cloud.tcpclient;
 
+import garbagegroup.cloud.tcpserver.DeviceProtocol;
+
 public class StartClient {
+    /**
+     * @param args optionally "text" to simulate a device that still speaks the old text protocol
+     */
     public static void main(String[] args) {
-        Client ec = new Client();
+        DeviceProtocol protocol = args.length > 0 ? DeviceProtocol.fromProperty(args[0]) : DeviceProtocol.FRAMED;
+        Client ec = new Client(protocol);
         ec.startClient();
     }
 }
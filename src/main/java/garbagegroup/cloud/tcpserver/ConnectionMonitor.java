@@ -0,0 +1,109 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Finds dead device connections and removes them from the registry
+ * A device that has not sent anything for the heartbeat interval is sent a heartbeat (getStatus), any reply shows
+ * that it is alive. A device whose heartbeat fails, or that stays silent for the idle timeout, is disconnected,
+ * so that it is no longer reported as connected and requests to it fail right away instead of after a failed write and read.
+ */
+public class ConnectionMonitor {
+    static final String HEARTBEAT = "getStatus";
+    private final DeviceRegistry deviceRegistry;
+    private final Duration heartbeatInterval;
+    private final Duration idleTimeout;
+    private final Function<ServerSocketHandler, CompletableFuture<String>> heartbeat;
+    private final Set<ServerSocketHandler> awaitingHeartbeat = ConcurrentHashMap.newKeySet();
+    private final AtomicLong heartbeatCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param deviceRegistry
+     * @param heartbeatInterval how long a device may be silent before it is sent a heartbeat
+     * @param idleTimeout how long a device may be silent before it is disconnected
+     * @param heartbeat sends the heartbeat to the device, the future fails if the device does not answer in time
+     */
+    public ConnectionMonitor(DeviceRegistry deviceRegistry, Duration heartbeatInterval, Duration idleTimeout,
+                             Function<ServerSocketHandler, CompletableFuture<String>> heartbeat) {
+        this.deviceRegistry = deviceRegistry;
+        this.heartbeatInterval = heartbeatInterval;
+        this.idleTimeout = idleTimeout;
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Checks all connections twice per heartbeat interval
+     */
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "iot-connection-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, heartbeatInterval.toMillis() / 2);
+        scheduler.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Evicts connections that are closed or silent for longer than the idle timeout, and sends a heartbeat
+     * to the ones that are silent for longer than the heartbeat interval
+     */
+    public void check() {
+        for (ServerSocketHandler device : deviceRegistry.snapshot()) {
+            Duration idleTime = device.getIdleTime();
+            if (device.isClosed()) {
+                evict(device, "its connection is closed");
+            } else if (idleTime.compareTo(idleTimeout) >= 0) {
+                evict(device, "it has not sent anything for " + idleTime.toSeconds() + " s");
+            } else if (idleTime.compareTo(heartbeatInterval) >= 0 && awaitingHeartbeat.add(device)) {
+                sendHeartbeat(device);
+            }
+        }
+    }
+
+    private void sendHeartbeat(ServerSocketHandler device) {
+        heartbeatCount.incrementAndGet();
+        CompletableFuture<String> reply;
+        try {
+            reply = heartbeat.apply(device);
+        } catch (RuntimeException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        reply.whenComplete((response, error) -> {
+            awaitingHeartbeat.remove(device);
+            if (error != null || device.isClosed()) evict(device, "it did not answer the heartbeat");
+        });
+    }
+
+    private void evict(ServerSocketHandler device, String reason) {
+        if (!deviceRegistry.unregister(device)) return;     // Already gone, or replaced by a newer connection
+        evictionCount.incrementAndGet();
+        System.out.println("Disconnecting device with ID " + device.getDeviceId() + " because " + reason);
+        device.close();
+    }
+
+    /**
+     * @return number of heartbeats sent and of dead connections evicted
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("heartbeats", heartbeatCount.get());
+        statistics.put("evictions", evictionCount.get());
+        statistics.put("connected", (long) deviceRegistry.size());
+        return statistics;
+    }
+}
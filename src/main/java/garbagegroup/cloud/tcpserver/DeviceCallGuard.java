@@ -0,0 +1,247 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and bulkhead for every device, around each request the TCP server sends
+ * After failureThreshold failed requests in a row the device's circuit opens: requests to it fail right away (with "",
+ * the same answer as for a device that is not connected) instead of waiting for it again, so callers fall back to cached
+ * or stored data at once. After the open duration a single trial request is let through (half-open), its outcome closes
+ * or reopens the circuit. The bulkhead caps the requests in flight per device, requests over the cap also fail right away,
+ * so one slow device cannot take up all request threads.
+ */
+@Component
+public class DeviceCallGuard {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int maxConcurrentCalls;
+    private final Map<Integer, DeviceCircuit> circuits = new ConcurrentHashMap<>();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong rejectedOpenCount = new AtomicLong();
+    private final AtomicLong rejectedBulkheadCount = new AtomicLong();
+    private final AtomicLong rejectedQueuedCount = new AtomicLong();
+    private final AtomicLong openedCount = new AtomicLong();
+
+    public DeviceCallGuard() {
+        this(5, 30000, 4);
+    }
+
+    @Autowired
+    public DeviceCallGuard(@Value("${tcp.server.breaker.failure-threshold:5}") int failureThreshold,
+                           @Value("${tcp.server.breaker.open-ms:30000}") long openMillis,
+                           @Value("${tcp.server.bulkhead.max-concurrent-calls:4}") int maxConcurrentCalls) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = Duration.ofMillis(openMillis).toNanos();
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+    }
+
+    /**
+     * Sends a blocking request through the device's breaker and bulkhead
+     *
+     * @param deviceId
+     * @param call sends the request and waits for the reply
+     * @return the reply, or "" if the request was not sent because the circuit is open or the bulkhead is full
+     */
+    public String call(int deviceId, Supplier<String> call) {
+        DeviceCircuit circuit = circuit(deviceId);
+        if (!circuit.tryAcquire()) return "";
+        String response = null;
+        try {
+            response = call.get();
+            return response;
+        } finally {
+            circuit.release(!isFailure(response));
+        }
+    }
+
+    /**
+     * Sends an asynchronous request through the device's breaker and bulkhead
+     * The permit is held until the future completes, so the future should carry its own timeout
+     *
+     * @param deviceId
+     * @param call sends the request
+     * @return future reply, completed with "" right away if the circuit is open or the bulkhead is full
+     * If the future fails with a NotSentException the request is counted as rejected, not as a failure of the device
+     */
+    public CompletableFuture<String> callAsync(int deviceId, Supplier<CompletableFuture<String>> call) {
+        DeviceCircuit circuit = circuit(deviceId);
+        if (!circuit.tryAcquire()) return CompletableFuture.completedFuture("");
+        CompletableFuture<String> reply;
+        try {
+            reply = call.get();
+        } catch (RuntimeException e) {
+            circuit.release(false);
+            throw e;
+        }
+        return reply.whenComplete((response, error) -> {
+            if (isNotSent(error)) circuit.releaseNotSent();
+            else circuit.release(error == null && !isFailure(response));
+        });
+    }
+
+    private static boolean isNotSent(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        return error instanceof NotSentException;
+    }
+
+    /**
+     * A reply is a failure if there is none, or if it is the handler's "disconnected" message
+     */
+    private static boolean isFailure(String response) {
+        return response == null || response.isEmpty() || ServerSocketHandler.isDisconnectedReply(response);
+    }
+
+    private DeviceCircuit circuit(int deviceId) {
+        return circuits.computeIfAbsent(deviceId, id -> new DeviceCircuit(id));
+    }
+
+    /**
+     * @param deviceId
+     * @return the state of the device's circuit, CLOSED for devices that were never called
+     */
+    public State getState(int deviceId) {
+        DeviceCircuit circuit = circuits.get(deviceId);
+        return circuit == null ? State.CLOSED : circuit.currentState();
+    }
+
+    /**
+     * @return every device whose circuit is not closed, with its state
+     */
+    public Map<Integer, State> getUnhealthyDevices() {
+        Map<Integer, State> unhealthy = new TreeMap<>();
+        circuits.forEach((deviceId, circuit) -> {
+            State state = circuit.currentState();
+            if (state != State.CLOSED) unhealthy.put(deviceId, state);
+        });
+        return unhealthy;
+    }
+
+    /**
+     * @return how many circuits are open or half-open, how often circuits opened, and how many requests failed or were rejected
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        long open = 0;
+        long halfOpen = 0;
+        for (DeviceCircuit circuit : circuits.values()) {
+            State state = circuit.currentState();
+            if (state == State.OPEN) open++;
+            if (state == State.HALF_OPEN) halfOpen++;
+        }
+        statistics.put("open", open);
+        statistics.put("halfOpen", halfOpen);
+        statistics.put("opened", openedCount.get());
+        statistics.put("failures", failureCount.get());
+        statistics.put("rejectedOpen", rejectedOpenCount.get());
+        statistics.put("rejectedBulkhead", rejectedBulkheadCount.get());
+        statistics.put("rejectedQueued", rejectedQueuedCount.get());
+        return statistics;
+    }
+
+    /**
+     * The request timed out before it was sent, for example while it waited for a free request thread
+     * A TimeoutException to the caller, a rejection (like a full bulkhead) to the circuit
+     */
+    public static class NotSentException extends TimeoutException {
+        public NotSentException(String message) {
+            super(message);
+        }
+    }
+
+    private class DeviceCircuit {
+        private final int deviceId;
+        private final Semaphore bulkhead = new Semaphore(maxConcurrentCalls);
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        private DeviceCircuit(int deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        /**
+         * @return true if the request may be sent, it must then be followed by release()
+         */
+        private boolean tryAcquire() {
+            synchronized (this) {
+                if (currentState() == State.OPEN) {
+                    rejectedOpenCount.incrementAndGet();
+                    return false;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialInFlight) {
+                        rejectedOpenCount.incrementAndGet();
+                        return false;
+                    }
+                    trialInFlight = true;
+                }
+            }
+            if (bulkhead.tryAcquire()) return true;
+            synchronized (this) {
+                trialInFlight = false;
+            }
+            rejectedBulkheadCount.incrementAndGet();
+            System.out.println("Too many requests in flight to device with ID " + deviceId + ", rejecting");
+            return false;
+        }
+
+        private void release(boolean success) {
+            bulkhead.release();
+            synchronized (this) {
+                trialInFlight = false;
+                if (success) {
+                    if (state != State.CLOSED) System.out.println("Device with ID " + deviceId + " answers again, closing its circuit");
+                    state = State.CLOSED;
+                    consecutiveFailures = 0;
+                    return;
+                }
+                failureCount.incrementAndGet();
+                consecutiveFailures++;
+                if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                    state = State.OPEN;
+                    openedAt = System.nanoTime();
+                    openedCount.incrementAndGet();
+                    System.out.println("Device with ID " + deviceId + " failed " + consecutiveFailures + " requests in a row, opening its circuit");
+                }
+            }
+        }
+
+        /**
+         * Gives the permit back without recording an outcome, the request never reached the device
+         * A trial request that was not sent leaves the circuit half-open, the next request becomes the trial
+         */
+        private void releaseNotSent() {
+            bulkhead.release();
+            synchronized (this) {
+                trialInFlight = false;
+            }
+            rejectedQueuedCount.incrementAndGet();
+            System.out.println("Request to device with ID " + deviceId + " timed out while it was queued, rejecting");
+        }
+
+        /**
+         * An open circuit becomes half-open once the open duration has passed
+         */
+        private synchronized State currentState() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) state = State.HALF_OPEN;
+            return state;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package garbagegroup.cloud.tcpserver;
+
+/**
+ * Wire protocol spoken with the IoT devices
+ * TEXT - the original protocol, plain strings without any message boundaries
+ * FRAMED - length prefixed frames, see FrameCodec
+ */
+public enum DeviceProtocol {
+    TEXT,
+    FRAMED;
+
+    /**
+     * @param value value of tcp.server.protocol, for example "framed"
+     * @return the matching protocol, TEXT if the value is unknown
+     */
+    public static DeviceProtocol fromProperty(String value) {
+        for (DeviceProtocol protocol : values()) {
+            if (protocol.name().equalsIgnoreCase(value.trim())) return protocol;
+        }
+        return TEXT;
+    }
+}
@@ -0,0 +1,78 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Connected IoT devices, indexed by their device ID (serial number)
+ * Safe to use from the accept thread and from request threads at the same time, lookups are O(1)
+ */
+public class DeviceRegistry {
+    private final ConcurrentMap<Integer, ServerSocketHandler> devices = new ConcurrentHashMap<>();
+    private volatile IConnectionListener connectionListener;
+
+    /**
+     * Registers the handler under its device ID
+     * A device that reconnects replaces its old connection, which is closed so that it does not linger half-open
+     *
+     * @param handler
+     * @return the handler previously registered under the same device ID, or null
+     */
+    public ServerSocketHandler register(ServerSocketHandler handler) {
+        ServerSocketHandler previous = devices.put(handler.getDeviceId(), handler);
+        if (previous != null && previous != handler) {
+            System.out.println("Device with ID " + handler.getDeviceId() + " reconnected, closing its old connection");
+            previous.close();
+        }
+        if (previous != handler && connectionListener != null) connectionListener.onConnected(handler.getDeviceId());
+        return previous;
+    }
+
+    /**
+     * Removes the handler, but only if it is still the one registered under its device ID
+     * so that a stale connection can never unregister the device's newer connection
+     *
+     * @param handler
+     * @return true if the handler was removed
+     */
+    public boolean unregister(ServerSocketHandler handler) {
+        boolean removed = devices.remove(handler.getDeviceId(), handler);
+        if (removed && connectionListener != null) connectionListener.onDisconnected(handler.getDeviceId());
+        return removed;
+    }
+
+    /**
+     * @param connectionListener told about every device that is registered or unregistered from now on
+     */
+    public void setConnectionListener(IConnectionListener connectionListener) {
+        this.connectionListener = connectionListener;
+    }
+
+    /**
+     * @param deviceId
+     * @return the device's handler, or null if the device is not connected
+     */
+    public ServerSocketHandler get(int deviceId) {
+        return devices.get(deviceId);
+    }
+
+    public boolean contains(int deviceId) {
+        return devices.containsKey(deviceId);
+    }
+
+    /**
+     * @return an unmodifiable copy of the currently connected devices, later connects and disconnects do not change it
+     */
+    public List<ServerSocketHandler> snapshot() {
+        return List.copyOf(devices.values());
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public void clear() {
+        devices.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single message of the framed device protocol: a type byte, a request ID and the payload
+ * A reply carries the request ID of the command it answers, so several commands can be outstanding on one connection.
+ * Request ID 0 is never used for commands, it marks messages the device sends on its own.
+ * Readings, serial numbers and statuses are sent in a compact binary form,
+ * toText() turns them back into the strings the rest of the cloud already understands (for example "humid:25.0")
+ */
+public class Frame {
+    public static final byte COMMAND = 0x01;    // UTF-8 command, for example "getHumidity"
+    public static final byte TEXT = 0x02;       // UTF-8 reply that has no compact form
+    public static final byte OK = 0x03;         // no payload
+    public static final byte SERIAL = 0x04;     // int32 serial number
+    public static final byte READING = 0x05;    // sensor code (1 byte) + float32 value
+    public static final byte STATUS = 0x06;     // 1 = OK, 0 = NOT OK
+
+    public static final byte HUMIDITY = 1;
+    public static final byte TEMPERATURE = 2;
+    public static final byte LEVEL = 3;
+
+    public static final int UNSOLICITED = 0;
+
+    private final byte type;
+    private final int requestId;
+    private final byte[] payload;
+
+    public Frame(byte type, byte[] payload) {
+        this(type, UNSOLICITED, payload);
+    }
+
+    public Frame(byte type, int requestId, byte[] payload) {
+        this.type = type;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+
+    public static Frame command(int requestId, String command) {
+        return new Frame(COMMAND, requestId, command.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param requestId
+     * @return the same frame, answering the request with the given ID
+     */
+    public Frame withRequestId(int requestId) {
+        return new Frame(type, requestId, payload);
+    }
+
+    public static Frame reading(byte sensor, float value) {
+        return new Frame(READING, ByteBuffer.allocate(5).put(sensor).putFloat(value).array());
+    }
+
+    /**
+     * Encodes a reply of the text protocol in its most compact frame
+     *
+     * @param reply for example "OK", "3456", "level:42.0", "statu:OK"
+     * @return frame carrying the same information
+     */
+    public static Frame fromText(String reply) {
+        if (reply.equals("OK")) return new Frame(OK, new byte[0]);
+        if (reply.equals("statu:OK")) return new Frame(STATUS, new byte[]{1});
+        if (reply.equals("statu:NOT OK")) return new Frame(STATUS, new byte[]{0});
+        try {
+            if (reply.matches("\\d+")) {
+                return new Frame(SERIAL, ByteBuffer.allocate(4).putInt(Integer.parseInt(reply)).array());
+            }
+            if (reply.length() > 6 && reply.charAt(5) == ':') {
+                float value = Float.parseFloat(reply.substring(6));
+                switch (reply.substring(0, 5)) {
+                    case "humid": return reading(HUMIDITY, value);
+                    case "tempe": return reading(TEMPERATURE, value);
+                    case "level": return reading(LEVEL, value);
+                }
+            }
+        } catch (NumberFormatException ignored) {
+            // Falls through to a plain text frame
+        }
+        return new Frame(TEXT, reply.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the frame in the text protocol's representation
+     */
+    public String toText() {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        switch (type) {
+            case OK:
+                return "OK";
+            case SERIAL:
+                return String.valueOf(buffer.getInt());
+            case STATUS:
+                return buffer.get() == 1 ? "statu:OK" : "statu:NOT OK";
+            case READING:
+                byte sensor = buffer.get();
+                float value = buffer.getFloat();
+                return sensorPrefix(sensor) + ":" + value;
+            default:
+                return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String sensorPrefix(byte sensor) {
+        switch (sensor) {
+            case HUMIDITY: return "humid";
+            case TEMPERATURE: return "tempe";
+            case LEVEL: return "level";
+            default: return "unkno";
+        }
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
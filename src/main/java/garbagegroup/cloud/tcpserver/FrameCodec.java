@@ -0,0 +1,75 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes frames of the framed device protocol
+ *
+ * Wire format (big-endian):
+ * | length (uint16) | type (1 byte) | request ID (uint16) | payload (length - 3 bytes) |
+ * The length covers everything after the length field, so a frame is never cut or glued together with the next one,
+ * no matter how TCP splits the stream.
+ */
+public class FrameCodec {
+    public static final int HEADER_LENGTH = 2;
+    public static final int MIN_FRAME_LENGTH = 3;
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+    public static final int MAX_REQUEST_ID = 0xFFFF;
+
+    private FrameCodec() {}
+
+    public static byte[] encode(Frame frame) {
+        int length = MIN_FRAME_LENGTH + frame.getPayload().length;
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes is too long");
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH + length)
+                .putShort((short) length)
+                .put(frame.getType())
+                .putShort((short) frame.getRequestId())
+                .put(frame.getPayload())
+                .array();
+    }
+
+    /**
+     * Blocks until a whole frame has been read from the stream
+     *
+     * @param in
+     * @return the next frame
+     * @throws IOException if the stream ends in the middle of a frame
+     */
+    public static Frame read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int length = data.readUnsignedShort();
+        if (length < MIN_FRAME_LENGTH) throw new IOException("Received a frame of only " + length + " bytes");
+        byte type = data.readByte();
+        int requestId = data.readUnsignedShort();
+        byte[] payload = new byte[length - MIN_FRAME_LENGTH];
+        data.readFully(payload);
+        return new Frame(type, requestId, payload);
+    }
+
+    /**
+     * Takes the next frame out of a buffer that is being filled by non-blocking reads
+     *
+     * @param buffer in read mode, its position is moved past the frame if there is a whole one
+     * @return the next frame, or null if the buffer does not contain a whole frame yet
+     * @throws IOException if the frame is malformed
+     */
+    public static Frame decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) return null;
+        int length = Short.toUnsignedInt(buffer.getShort(buffer.position()));
+        if (length < MIN_FRAME_LENGTH) throw new IOException("Received a frame of only " + length + " bytes");
+        if (buffer.remaining() < HEADER_LENGTH + length) return null;
+
+        buffer.position(buffer.position() + HEADER_LENGTH);
+        byte type = buffer.get();
+        int requestId = Short.toUnsignedInt(buffer.getShort());
+        byte[] payload = new byte[length - MIN_FRAME_LENGTH];
+        buffer.get(payload);
+        return new Frame(type, requestId, payload);
+    }
+}
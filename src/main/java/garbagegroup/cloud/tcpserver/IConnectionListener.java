@@ -0,0 +1,10 @@
+package garbagegroup.cloud.tcpserver;
+
+/**
+ * Is told when a device connects (has identified itself) and when its connection is gone
+ * Called on the connection's I/O thread, so implementations must hand the event off instead of doing slow work here
+ */
+public interface IConnectionListener {
+    void onConnected(int deviceId);
+    void onDisconnected(int deviceId);
+}
@@ -1,10 +1,22 @@
 package garbagegroup.cloud.tcpserver;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface ITCPServer {
     boolean setIoTData(int deviceId, String payload);
     String getDataById(int deviceId, String payload);
+    CompletableFuture<String> requestAsync(int deviceId, String payload, Duration timeout);
+    default CompletableFuture<Boolean> setIoTDataAsync(int deviceId, String payload, Duration timeout) {
+        return requestAsync(deviceId, payload, timeout).thenApply("OK"::equals);
+    }
     void startServer();
     List<ServerSocketHandler> getIoTDevices();
+    boolean isDeviceConnected(int deviceId);
+    void setTelemetryListener(ITelemetryListener telemetryListener);
+    void setConnectionListener(IConnectionListener connectionListener);
+    Map<String, Long> getCircuitStatistics();
+    Map<Integer, DeviceCallGuard.State> getUnhealthyDevices();
 }
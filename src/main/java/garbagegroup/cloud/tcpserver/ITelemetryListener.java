@@ -0,0 +1,9 @@
+package garbagegroup.cloud.tcpserver;
+
+/**
+ * Receives the readings devices push without being asked
+ * Called on the connection's I/O thread, so implementations must hand the reading off instead of doing slow work here
+ */
+public interface ITelemetryListener {
+    void onTelemetry(Telemetry telemetry);
+}
@@ -0,0 +1,129 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread that multiplexes many device channels
+ * Everything touching the selector or the selection keys runs on this thread, other threads hand work over with execute()
+ */
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running;
+
+    public NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Runs the task on the event loop thread, waking up the selector if it is currently blocked
+     *
+     * @param task
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers the channel with this loop's selector
+     *
+     * @param channel non-blocking channel
+     * @param ops interest set
+     * @param handler called every time the key gets selected
+     * @return the selection key, once the registration has happened on the loop thread
+     */
+    public CompletableFuture<SelectionKey> register(SelectableChannel channel, int ops, NioSelectionHandler handler) {
+        CompletableFuture<SelectionKey> registration = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                registration.complete(channel.register(selector, ops, handler));
+            } catch (IOException e) {
+                registration.completeExceptionally(e);
+            }
+        });
+        return registration;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    dispatch(key);
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                System.out.println("Selector failure in " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(SelectionKey key) {
+        NioSelectionHandler handler = (NioSelectionHandler) key.attachment();
+        if (!key.isValid()) return;
+        try {
+            handler.onSelected(key);
+        } catch (IOException e) {
+            key.cancel();
+            handler.onFailure(e);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Task failed in " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the loop and closes the selector together with every channel still registered with it
+     */
+    public void shutdown() {
+        running = false;
+        execute(() -> {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        });
+    }
+}
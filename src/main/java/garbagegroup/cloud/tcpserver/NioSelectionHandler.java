@@ -0,0 +1,14 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Attachment of a SelectionKey registered with a NioEventLoop.
+ * The event loop calls it whenever the key is ready, so it must never block.
+ */
+interface NioSelectionHandler {
+    void onSelected(SelectionKey key) throws IOException;
+
+    void onFailure(IOException e);
+}
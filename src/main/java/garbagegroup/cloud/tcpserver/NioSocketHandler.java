@@ -0,0 +1,210 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Device connection served by a NioEventLoop instead of a blocked thread
+ * Writes are queued and flushed by the event loop
+ * With the framed protocol, bytes are accumulated until a whole frame has arrived and the reply completes the request with the same request ID
+ * With the text protocol, a reply completes the oldest outstanding request
+ * Readings that arrive while no request is waiting for them are handed to the telemetry listener
+ */
+public class NioSocketHandler extends ServerSocketHandler implements NioSelectionHandler {
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final long replyTimeoutMillis;
+    private final Consumer<NioSocketHandler> onClose;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<String>> pendingTextReplies = new ConcurrentLinkedQueue<>();
+    private volatile SelectionKey selectionKey;
+    private volatile boolean closed;    // Separate from the base class's flag, close() here does not go through super.close()
+
+    public NioSocketHandler(SocketChannel channel, NioEventLoop eventLoop, DeviceProtocol protocol, long replyTimeoutMillis, Consumer<NioSocketHandler> onClose) {
+        super(protocol);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.replyTimeoutMillis = replyTimeoutMillis;
+        this.onClose = onClose;
+    }
+
+    void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /**
+     * Same contract as the blocking handler: waits for the reply, but only on the calling thread, never on the event loop
+     *
+     * @param message
+     * @return the device's reply or a "disconnected" message if it did not answer in time
+     */
+    @Override
+    public String sendMessage(String message) {
+        try {
+            // The reply itself times out after replyTimeoutMillis, which closes the connection (see sendMessageAsync)
+            return sendMessageAsync(message).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Error sending/receiving message with device ID: " + getDeviceId());
+        }
+        return disconnectedReply(getDeviceId());
+    }
+
+    /**
+     * Queues the message for writing and returns a future that completes with the device's reply
+     * The future fails with a TimeoutException after replyTimeoutMillis, or earlier if the caller sets a shorter orTimeout on it.
+     * A request that times out closes the connection, like in the blocking handler: a text reply that arrives late would
+     * otherwise be taken as the reply to the next request, and the request would never leave the pending requests.
+     *
+     * @param message
+     * @return future reply
+     */
+    public CompletableFuture<String> sendMessageAsync(String message) {
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        if (closed) {
+            reply.completeExceptionally(new IOException("Connection to device " + getDeviceId() + " is closed"));
+            return reply;
+        }
+        System.out.println("Sending " + message + " to device with ID: " + getDeviceId());
+        if (getProtocol() == DeviceProtocol.FRAMED) {
+            int requestId = pendingRequests.register(reply);
+            writeQueue.add(ByteBuffer.wrap(FrameCodec.encode(Frame.command(requestId, message))));
+        } else {
+            // Text replies come back in the order the requests were written, so both queues have to be filled in the same order
+            synchronized (this) {
+                pendingTextReplies.add(reply);
+                writeQueue.add(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        eventLoop.execute(this::enableWrite);
+        reply.orTimeout(replyTimeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error instanceof TimeoutException) {
+                System.out.println("Device with ID " + getDeviceId() + " did not reply in time, closing the connection");
+                close();
+            }
+        });
+        return reply;
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) throws IOException {
+        if (key.isReadable()) read();
+        if (key.isValid() && key.isWritable()) write();
+    }
+
+    @Override
+    public void onFailure(IOException e) {
+        System.out.println("Error sending/receiving message with device ID: " + getDeviceId());
+        close();
+    }
+
+    private void read() throws IOException {
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            System.out.println("Client with ID " + getDeviceId() + " disconnected");
+            close();
+            return;
+        }
+        if (bytesRead == 0) return;
+        markActive();
+
+        readBuffer.flip();
+        if (getProtocol() == DeviceProtocol.FRAMED) {
+            Frame frame;
+            while ((frame = FrameCodec.decode(readBuffer)) != null) {
+                onFrame(frame);
+            }
+            readBuffer.compact();
+            ensureCapacityForNextFrame();
+        } else {
+            String response = StandardCharsets.UTF_8.decode(readBuffer).toString();
+            readBuffer.clear();
+            onTextMessage(response);
+        }
+    }
+
+    /**
+     * Grows the read buffer if the frame that has started arriving does not fit into it
+     */
+    private void ensureCapacityForNextFrame() {
+        if (readBuffer.position() < FrameCodec.HEADER_LENGTH) return;
+        int frameLength = FrameCodec.HEADER_LENGTH + Short.toUnsignedInt(readBuffer.getShort(0));
+        if (frameLength > readBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(frameLength);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    private void onFrame(Frame frame) {
+        String response = frame.toText();
+        if (!pendingRequests.complete(frame.getRequestId(), response)) {
+            if (publishTelemetry(response)) return;
+            System.out.println("Unsolicited message from device with ID " + getDeviceId() + ": " + response);
+            return;
+        }
+        System.out.println("Received response from device with ID " + getDeviceId() + ": " + response);
+    }
+
+    private void onTextMessage(String response) {
+        CompletableFuture<String> reply = pendingTextReplies.poll();
+        if (reply == null) {
+            if (publishTelemetry(response)) return;
+            System.out.println("Unsolicited message from device with ID " + getDeviceId() + ": " + response);
+            return;
+        }
+        System.out.println("Received response from device with ID " + getDeviceId() + ": " + response);
+        reply.complete(response);
+    }
+
+    private void write() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return;     // Socket send buffer is full, wait for the next OP_WRITE
+            writeQueue.poll();
+        }
+        selectionKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void enableWrite() {
+        if (selectionKey != null && selectionKey.isValid()) {
+            selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the channel and fails every request that is still waiting for a reply
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (selectionKey != null) selectionKey.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        IOException cause = new IOException("Client with an ID: " + getDeviceId() + " disconnected");
+        CompletableFuture<String> reply;
+        while ((reply = pendingTextReplies.poll()) != null) {
+            reply.completeExceptionally(cause);
+        }
+        pendingRequests.failAll(cause);
+        if (onClose != null) onClose.accept(this);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+}
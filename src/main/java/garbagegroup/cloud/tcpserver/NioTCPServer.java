@@ -0,0 +1,261 @@
+package garbagegroup.cloud.tcpserver;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector based implementation of the IoT server
+ * All device sockets are multiplexed over a small, fixed number of event loop threads,
+ * so a waiting device round trip no longer occupies a thread of its own.
+ * Since no thread waits for a device here, spring.threads.virtual.enabled has no effect on this engine.
+ * Enabled with tcp.server.engine=nio
+ */
+@Component
+@ConditionalOnProperty(name = "tcp.server.engine", havingValue = "nio")
+public class NioTCPServer implements ITCPServer, NioSelectionHandler {
+    private final int port;
+    private final int acceptBacklog;
+    private final int eventLoopCount;
+    private final long replyTimeoutMillis;
+    private final DeviceProtocol protocol;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
+    DeviceRegistry deviceRegistry = new DeviceRegistry();
+    private volatile ITelemetryListener telemetryListener;
+    private final ConnectionMonitor connectionMonitor;
+    private final DeviceCallGuard callGuard;
+
+    public NioTCPServer(int port, int eventLoopCount, long replyTimeoutMillis, String protocol) {
+        this(port, eventLoopCount, replyTimeoutMillis, protocol, 30000, 90000, 1024, new DeviceCallGuard());
+    }
+
+    @Autowired
+    public NioTCPServer(@Value("${tcp.server.port:2910}") int port,
+                        @Value("${tcp.server.event-loops:2}") int eventLoopCount,
+                        @Value("${tcp.server.reply-timeout-ms:5000}") long replyTimeoutMillis,
+                        @Value("${tcp.server.protocol:text}") String protocol,
+                        @Value("${tcp.server.heartbeat-interval-ms:30000}") long heartbeatIntervalMillis,
+                        @Value("${tcp.server.idle-timeout-ms:90000}") long idleTimeoutMillis,
+                        @Value("${tcp.server.accept-backlog:1024}") int acceptBacklog,
+                        DeviceCallGuard callGuard) {
+        this.port = port;
+        this.callGuard = callGuard;
+        this.acceptBacklog = acceptBacklog;
+        this.eventLoopCount = Math.max(1, eventLoopCount);
+        this.replyTimeoutMillis = replyTimeoutMillis;
+        this.protocol = DeviceProtocol.fromProperty(protocol);
+        this.connectionMonitor = new ConnectionMonitor(deviceRegistry, Duration.ofMillis(heartbeatIntervalMillis), Duration.ofMillis(idleTimeoutMillis),
+                device -> ((NioSocketHandler) device).sendMessageAsync(ConnectionMonitor.HEARTBEAT)
+                        .orTimeout(replyTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Binds the server channel and starts the event loops
+     * The first event loop also accepts new connections
+     */
+    @Override
+    public synchronized void startServer() {
+        if (serverChannel != null) return;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), acceptBacklog);     // Room for a reconnect storm while connections wait to be accepted
+            serverChannel.configureBlocking(false);
+
+            eventLoops = new NioEventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops[i] = new NioEventLoop("iot-event-loop-" + i);
+                eventLoops[i].start();
+            }
+            eventLoops[0].register(serverChannel, SelectionKey.OP_ACCEPT, this);
+            connectionMonitor.start();
+            System.out.println("Server started. Waiting for connections...");
+        } catch (IOException e) {
+            System.out.println("Problems connecting to the server");
+        }
+    }
+
+    /**
+     * Accepts every pending connection and spreads them over the event loops in round-robin order
+     */
+    @Override
+    public void onSelected(SelectionKey key) throws IOException {
+        SocketChannel clientChannel;
+        while ((clientChannel = serverChannel.accept()) != null) {
+            clientChannel.configureBlocking(false);
+            clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            NioEventLoop eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+            NioSocketHandler handler = new NioSocketHandler(clientChannel, eventLoop, protocol, replyTimeoutMillis, deviceRegistry::unregister);
+            eventLoop.register(clientChannel, SelectionKey.OP_READ, handler)
+                    .thenAccept(selectionKey -> {
+                        handler.setSelectionKey(selectionKey);
+                        requestSerialNumber(handler);
+                    });
+        }
+    }
+
+    @Override
+    public void onFailure(IOException e) {
+        System.out.println("Error while accepting connections: " + e.getMessage());
+    }
+
+    /**
+     * Asks a freshly connected device for its serial number without blocking the event loop
+     * The device only becomes visible in the registry once it has identified itself
+     *
+     * @param handler
+     */
+    private void requestSerialNumber(NioSocketHandler handler) {
+        handler.sendMessageAsync("getSerialNumber")
+                .orTimeout(replyTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    try {
+                        if (error != null) throw new IOException(error);
+                        handler.setDeviceId(Integer.parseInt(response.trim()));
+                        handler.setTelemetryListener(telemetryListener);
+                        deviceRegistry.register(handler);     // Replaces and closes a stale connection of the same device
+                        System.out.println("Client connected. Giving it ID: " + handler.getDeviceId());
+                    } catch (IOException | NumberFormatException e) {
+                        System.out.println("Client did not send a valid serial number, closing the connection");
+                        handler.close();
+                    }
+                });
+    }
+
+    /**
+     * Method that requests data from the IoT device and returns it to the BinService
+     *
+     * @param deviceId
+     * @param payload
+     * @return data from the IoT device, if available, otherwise String that indicates that the device is not available
+     */
+    @Override
+    public String getDataById(int deviceId, String payload) {
+        ServerSocketHandler ssh = deviceRegistry.get(deviceId);
+        return ssh == null ? "" : callGuard.call(deviceId, () -> ssh.sendMessage(payload));
+    }
+
+    /**
+     * Sends the payload without waiting for the reply, so many devices can be asked at once
+     *
+     * @param deviceId
+     * @param payload
+     * @param timeout how long to wait for the device before the future fails with a TimeoutException
+     * @return future reply, "" if the device is not connected or its circuit is open
+     */
+    @Override
+    public CompletableFuture<String> requestAsync(int deviceId, String payload, Duration timeout) {
+        if (deviceRegistry.get(deviceId) instanceof NioSocketHandler handler) {
+            return callGuard.callAsync(deviceId, () -> handler.sendMessageAsync(payload).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        return CompletableFuture.completedFuture("");
+    }
+
+    /**
+     * Sends data to the IoT device through their respective socket handlers
+     *
+     * @param payload - for example - "setFillThreshold(25.0)", "calibrateDevice", "activateBuzzer"
+     * @return true if the device answered with "OK"
+     */
+    @Override
+    public boolean setIoTData(int deviceId, String payload) {
+        return getDataById(deviceId, payload).equals("OK");
+    }
+
+    /**
+     * @return Snapshot of all currently connected IoT devices
+     */
+    @Override
+    public List<ServerSocketHandler> getIoTDevices() {
+        return deviceRegistry.snapshot();
+    }
+
+    /**
+     * @param deviceId
+     * @return true if the device is currently connected
+     */
+    @Override
+    public boolean isDeviceConnected(int deviceId) {
+        return deviceRegistry.contains(deviceId);
+    }
+
+    /**
+     * Readings pushed by devices are handed to this listener, on the event loop thread that received them
+     * Applies to devices that connect afterwards as well as the ones already connected
+     *
+     * @param telemetryListener
+     */
+    @Override
+    public void setTelemetryListener(ITelemetryListener telemetryListener) {
+        this.telemetryListener = telemetryListener;
+        deviceRegistry.snapshot().forEach(device -> device.setTelemetryListener(telemetryListener));
+    }
+
+    /**
+     * Devices that connect or disconnect are reported to this listener, on the thread that registered or unregistered them
+     *
+     * @param connectionListener
+     */
+    @Override
+    public void setConnectionListener(IConnectionListener connectionListener) {
+        deviceRegistry.setConnectionListener(connectionListener);
+    }
+
+    /**
+     * @return how many device circuits are open, and how many requests failed or were rejected by the circuit breakers and bulkheads
+     */
+    @Override
+    public Map<String, Long> getCircuitStatistics() {
+        return callGuard.getStatistics();
+    }
+
+    /**
+     * @return the devices whose circuit is open or half-open
+     */
+    @Override
+    public Map<Integer, DeviceCallGuard.State> getUnhealthyDevices() {
+        return callGuard.getUnhealthyDevices();
+    }
+
+    /**
+     * @return the port the server is bound to, useful when it was started on port 0
+     */
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stopServer() {
+        if (serverChannel == null) return;
+        connectionMonitor.stop();
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        serverChannel = null;
+    }
+}
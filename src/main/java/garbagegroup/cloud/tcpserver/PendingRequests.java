@@ -0,0 +1,79 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests of one device connection that are still waiting for their reply, keyed by request ID
+ * A reply completes exactly the request it answers, so concurrent callers can never read each other's replies
+ */
+public class PendingRequests {
+    private final Map<Integer, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger lastRequestId = new AtomicInteger();
+
+    /**
+     * Assigns a free request ID to the reply future
+     * The entry is removed again as soon as the future completes, including when it times out
+     *
+     * @param reply
+     * @return request ID to send with the command, between 1 and FrameCodec.MAX_REQUEST_ID
+     * @throws IllegalStateException if all request IDs are in use
+     */
+    public int register(CompletableFuture<String> reply) {
+        for (int attempt = 0; attempt < FrameCodec.MAX_REQUEST_ID; attempt++) {
+            int requestId = nextRequestId();
+            if (pending.putIfAbsent(requestId, reply) == null) {
+                reply.whenComplete((response, error) -> pending.remove(requestId, reply));
+                return requestId;
+            }
+        }
+        throw new IllegalStateException("Too many outstanding requests on one connection");
+    }
+
+    private int nextRequestId() {
+        return lastRequestId.updateAndGet(id -> id >= FrameCodec.MAX_REQUEST_ID ? 1 : id + 1);
+    }
+
+    /**
+     * @param requestId
+     * @param response
+     * @return false if no request with this ID is waiting (it already timed out, or the device sent it on its own)
+     */
+    public boolean complete(int requestId, String response) {
+        CompletableFuture<String> reply = pending.remove(requestId);
+        if (reply == null) return false;
+        reply.complete(response);
+        return true;
+    }
+
+    /**
+     * Deregisters a request its caller has given up on, a reply that still arrives for it is then treated as unsolicited
+     *
+     * @param requestId
+     * @return false if no request with this ID is waiting (its reply has just arrived)
+     */
+    public boolean remove(int requestId) {
+        CompletableFuture<String> reply = pending.remove(requestId);
+        if (reply == null) return false;
+        reply.cancel(false);
+        return true;
+    }
+
+    /**
+     * Fails every waiting request, used when the connection is lost
+     *
+     * @param cause
+     */
+    public void failAll(Throwable cause) {
+        for (Integer requestId : pending.keySet()) {
+            CompletableFuture<String> reply = pending.remove(requestId);
+            if (reply != null) reply.completeExceptionally(cause);
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
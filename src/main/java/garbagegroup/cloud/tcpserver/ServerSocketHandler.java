@@ -2,13 +2,38 @@ package garbagegroup.cloud.tcpserver;
 
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class ServerSocketHandler{
+    private static final long DEFAULT_REPLY_TIMEOUT_MILLIS = 5000;
     private int deviceId;
+    private Socket socket;
     private InputStream inFromClient;
     private OutputStream outToClient;
+    private DeviceProtocol protocol = DeviceProtocol.TEXT;
+    protected final PendingRequests pendingRequests = new PendingRequests();
+    // Locks instead of synchronized blocks: a virtual thread blocked on the socket inside synchronized would pin its carrier thread
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock readLock = new ReentrantLock();
+    private volatile ITelemetryListener telemetryListener;
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile boolean closed;
+    private volatile long replyTimeoutMillis = DEFAULT_REPLY_TIMEOUT_MILLIS;
+    private volatile Consumer<ServerSocketHandler> onClose;
+
+    protected ServerSocketHandler(DeviceProtocol protocol) {
+        this.protocol = protocol;
+    }
 
     public ServerSocketHandler(Socket socket) {
+        this.socket = socket;
         try {
             outToClient = socket.getOutputStream();
             inFromClient = socket.getInputStream();
@@ -17,28 +42,208 @@ public class ServerSocketHandler{
         }
     }
 
+    public ServerSocketHandler(Socket socket, DeviceProtocol protocol) {
+        this(socket);
+        this.protocol = protocol;
+    }
+
     public String sendMessage(String message) {
         try {
             System.out.println("Sending " + message + " to device with ID: " + deviceId);
+            String response = protocol == DeviceProtocol.FRAMED ? exchangeFrame(message) : exchangeText(message);
+
+            System.out.println("Received response from device with ID " + deviceId + ": " + response);
+            return response;
+        } catch (IOException e) {
+            // A failed or timed out exchange leaves the connection in an unknown state (a late reply would be taken
+            // as the answer to the next command), so the connection is dropped and the device has to reconnect
+            System.out.println("Error sending/receiving message with device ID: " + deviceId);
+            close();
+            return disconnectedReply(deviceId);
+        } catch (NullPointerException e) {
+            System.out.println("Output stream not initialized for device ID: " + deviceId);
+            return disconnectedReply(deviceId);
+        }
+    }
+
+    /**
+     * @param deviceId
+     * @return what sendMessage returns when the device did not answer
+     */
+    static String disconnectedReply(int deviceId) {
+        return "Client with an ID: " + deviceId + " disconnected";
+    }
+
+    /**
+     * @param response
+     * @return true if the response is not the device's answer but the message sendMessage returns when it did not answer
+     */
+    static boolean isDisconnectedReply(String response) {
+        return response.startsWith("Client with an ID: ") && response.endsWith(" disconnected");
+    }
+
+    /**
+     * Text protocol: whatever a single read returns is taken as the whole reply
+     * Replies carry no request ID, so only one command at a time may be outstanding on the connection
+     */
+    private String exchangeText(String message) throws IOException {
+        writeLock.lock();
+        try {
             outToClient.write(message.getBytes());
             outToClient.flush();
 
             // Read response
             byte[] buffer = new byte[1024];
             int bytesRead = inFromClient.read(buffer);
-            String response = new String(buffer, 0, bytesRead);
+            if (bytesRead == -1) throw new EOFException("Device with ID " + deviceId + " closed the connection");
+            markActive();
+            return new String(buffer, 0, bytesRead);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            System.out.println("Received response from device with ID " + deviceId + ": " + response);
-            return response;
+    /**
+     * Framed protocol: commands are pipelined, each one with its own request ID
+     * Whichever caller gets the read lock reads frames for everybody and hands each reply to the request it belongs to,
+     * until its own reply has arrived. The other callers just wait for theirs.
+     * Either way a caller gives up once the reply timeout has passed, even if the device keeps sending other frames
+     * or the connection's reader (which holds the read lock for good and reads without a socket timeout) never gets a reply.
+     *
+     * @throws SocketTimeoutException if the reply did not arrive within the reply timeout, the request is deregistered by then
+     */
+    private String exchangeFrame(String message) throws IOException {
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        int requestId = pendingRequests.register(reply);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replyTimeoutMillis);
+        try {
+            writeLock.lock();
+            try {
+                outToClient.write(FrameCodec.encode(Frame.command(requestId, message)));
+                outToClient.flush();
+            } finally {
+                writeLock.unlock();
+            }
+
+            while (!reply.isDone()) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    if (pendingRequests.remove(requestId)) {
+                        throw new SocketTimeoutException("Device with ID " + deviceId + " did not reply within " + replyTimeoutMillis + " ms");
+                    }
+                    break;      // The reply arrived just now
+                }
+                if (readLock.tryLock()) {
+                    try {
+                        // A single read is bounded by the socket timeout, the deadline is checked between frames
+                        while (!reply.isDone() && System.nanoTime() < deadline) dispatch(FrameCodec.read(inFromClient));
+                    } finally {
+                        readLock.unlock();
+                    }
+                } else {
+                    try {
+                        return reply.get(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(10)), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException ignored) {
+                        // Whoever is reading now might give up the read lock before our reply arrives, so check again
+                    }
+                }
+            }
+            return reply.get();
         } catch (IOException e) {
-            System.out.println("Error sending/receiving message with device ID: " + deviceId);
-            return "Client with an ID: " + deviceId + " disconnected";
-        } catch (NullPointerException e) {
-            System.out.println("Output stream not initialized for device ID: " + deviceId);
-            return "Client with an ID: " + deviceId + " disconnected";
+            pendingRequests.failAll(e);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
         }
     }
 
+    private void dispatch(Frame frame) {
+        markActive();
+        if (!pendingRequests.complete(frame.getRequestId(), frame.toText()) && !publishTelemetry(frame.toText())) {
+            System.out.println("Unsolicited message from device with ID " + deviceId + ": " + frame.toText());
+        }
+    }
+
+    /**
+     * Framed protocol only: keeps reading frames until the connection is lost, so readings the device pushes on its own
+     * are picked up as soon as they arrive instead of waiting for the next request.
+     * Holds the read lock the whole time, callers of sendMessage then just wait for their replies to be dispatched.
+     *
+     * @throws IOException once the connection is lost, every request still waiting has failed by then
+     */
+    public void listen() throws IOException {
+        readLock.lock();
+        try {
+            while (true) dispatch(FrameCodec.read(inFromClient));
+        } catch (IOException e) {
+            pendingRequests.failAll(e);
+            throw e;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Hands a message nobody asked for to the telemetry listener, if it is a reading of an identified device
+     *
+     * @param message
+     * @return true if the message was a reading and has been handed over
+     */
+    protected boolean publishTelemetry(String message) {
+        ITelemetryListener listener = telemetryListener;
+        if (listener == null || deviceId == 0) return false;
+        Telemetry telemetry = Telemetry.parse(deviceId, message);
+        if (telemetry == null) return false;
+        listener.onTelemetry(telemetry);
+        return true;
+    }
+
+    /**
+     * Records that the device has just sent something, so it is known to be alive
+     */
+    protected void markActive() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * @return time since the device last sent anything (a reply or a reading), or since it connected
+     */
+    public Duration getIdleTime() {
+        return Duration.ofNanos(System.nanoTime() - lastActivityNanos);
+    }
+
+    /**
+     * Closes the connection and fails every request that is still waiting for a reply, then calls the close callback
+     * Safe to call more than once, only the first call has an effect
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignored) {
+        }
+        pendingRequests.failAll(new IOException("Client with an ID: " + deviceId + " disconnected"));
+        Consumer<ServerSocketHandler> callback = onClose;
+        if (callback != null) callback.accept(this);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @param onClose called once the connection has been closed, for example to remove the device from the registry
+     */
+    public void setOnClose(Consumer<ServerSocketHandler> onClose) {
+        this.onClose = onClose;
+    }
+
     public int getDeviceId() {
       return deviceId;
     }
@@ -46,4 +251,19 @@ public class ServerSocketHandler{
     public void setDeviceId(int deviceId) {
     this.deviceId = deviceId;
   }
+
+    /**
+     * @param replyTimeoutMillis how long a framed request waits for its reply before it gives up
+     */
+    public void setReplyTimeoutMillis(long replyTimeoutMillis) {
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    public void setTelemetryListener(ITelemetryListener telemetryListener) {
+        this.telemetryListener = telemetryListener;
+    }
+
+    public DeviceProtocol getProtocol() {
+        return protocol;
+    }
 }
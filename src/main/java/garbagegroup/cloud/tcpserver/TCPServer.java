@@ -1,27 +1,132 @@
 package garbagegroup.cloud.tcpserver;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
+@ConditionalOnProperty(name = "tcp.server.engine", havingValue = "blocking", matchIfMissing = true)
 public class TCPServer implements ITCPServer, Runnable {
+    private static final int DEFAULT_REQUEST_THREADS = 32;
+    private static final int DEFAULT_HANDSHAKE_THREADS = 16;
+    private static final int DEFAULT_ACCEPT_BACKLOG = 1024;
+    private static final long DEFAULT_REPLY_TIMEOUT_MILLIS = 5000;
+    private static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(90);
     ServerSocket serverSocket;
     ServerSocketHandler socketHandler;
-    List<ServerSocketHandler> IoTDevices = new ArrayList<>();
+    DeviceRegistry deviceRegistry = new DeviceRegistry();
+    private Executor requestExecutor = newRequestExecutor(DEFAULT_REQUEST_THREADS);
+    private ThreadFactory readerThreads = VirtualThreads.factory("iot-reader", false);
+    private Executor handshakeExecutor = newHandshakeExecutor(DEFAULT_HANDSHAKE_THREADS);
+    private long replyTimeoutMillis = DEFAULT_REPLY_TIMEOUT_MILLIS;
+    private ConnectionMonitor connectionMonitor = newConnectionMonitor(DEFAULT_HEARTBEAT_INTERVAL, DEFAULT_IDLE_TIMEOUT);
+    private DeviceCallGuard callGuard = new DeviceCallGuard();
+
+    private DeviceProtocol protocol = DeviceProtocol.TEXT;
+    private volatile ITelemetryListener telemetryListener;
 
     public TCPServer() {
+        this(DEFAULT_ACCEPT_BACKLOG);
+    }
+
+    /**
+     * @param acceptBacklog how many connections the OS queues while they wait to be accepted, so that a reconnect storm
+     *                      (every device reconnecting at once after a network outage) is not refused
+     */
+    private TCPServer(int acceptBacklog) {
         try {
-            serverSocket = new ServerSocket(2910);
+            serverSocket = new ServerSocket(2910, acceptBacklog);
         } catch (IOException e) {
             System.out.println("Problems connecting to the server");
         }
     }
 
+    @Autowired
+    public TCPServer(@Value("${tcp.server.protocol:text}") String protocol,
+                     @Value("${tcp.server.request-threads:32}") int requestThreads,
+                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                     @Value("${tcp.server.reply-timeout-ms:5000}") long replyTimeoutMillis,
+                     @Value("${tcp.server.heartbeat-interval-ms:30000}") long heartbeatIntervalMillis,
+                     @Value("${tcp.server.idle-timeout-ms:90000}") long idleTimeoutMillis,
+                     @Value("${tcp.server.accept-backlog:1024}") int acceptBacklog,
+                     @Value("${tcp.server.handshake-threads:16}") int handshakeThreads,
+                     DeviceCallGuard callGuard) {
+        this(acceptBacklog);
+        this.callGuard = callGuard;
+        this.protocol = DeviceProtocol.fromProperty(protocol);
+        this.replyTimeoutMillis = replyTimeoutMillis;
+        this.connectionMonitor = newConnectionMonitor(Duration.ofMillis(heartbeatIntervalMillis), Duration.ofMillis(idleTimeoutMillis));
+        this.handshakeExecutor = newHandshakeExecutor(handshakeThreads);
+        useVirtualThreads(virtualThreads && VirtualThreads.isSupported(), requestThreads);
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            System.out.println("Virtual threads need Java 21, device connections keep using platform threads");
+        }
+    }
+
+    /**
+     * With virtual threads every connection reader and every blocking request gets a virtual thread of its own,
+     * so the number of connected devices and outstanding requests is no longer limited by the number of platform threads.
+     * Without them, requests share the bounded pool of request threads.
+     *
+     * @param virtualThreads
+     * @param requestThreads size of the request pool, not used with virtual threads
+     */
+    void useVirtualThreads(boolean virtualThreads, int requestThreads) {
+        this.readerThreads = VirtualThreads.factory("iot-reader", virtualThreads);
+        this.requestExecutor = virtualThreads ? VirtualThreads.perTaskExecutor("iot-request") : newRequestExecutor(requestThreads);
+        if (virtualThreads) this.handshakeExecutor = VirtualThreads.perTaskExecutor("iot-handshake");
+    }
+
+    /**
+     * Every blocking request holds a thread until its device answers, so the number of threads is capped
+     * Requests over the cap wait in the queue, their timeout keeps running while they wait
+     *
+     * @param requestThreads
+     * @return the executor requestAsync runs blocking requests on
+     */
+    private static ThreadPoolExecutor newRequestExecutor(int requestThreads) {
+        int threads = Math.max(1, requestThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                VirtualThreads.factory("iot-request", false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Handshakes run on their own pool, so slow devices only hold up each other's handshakes and never the accept loop
+     * or the requests to devices that are already connected. Connections over the cap wait in the queue.
+     *
+     * @param handshakeThreads
+     * @return the executor new connections are identified on
+     */
+    private static ThreadPoolExecutor newHandshakeExecutor(int handshakeThreads) {
+        int threads = Math.max(1, handshakeThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                VirtualThreads.factory("iot-handshake", false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The heartbeat is sent like any other request, on the request executor
+     */
+    private ConnectionMonitor newConnectionMonitor(Duration heartbeatInterval, Duration idleTimeout) {
+        return new ConnectionMonitor(deviceRegistry, heartbeatInterval, idleTimeout,
+                device -> CompletableFuture.supplyAsync(() -> device.sendMessage(ConnectionMonitor.HEARTBEAT), requestExecutor)
+                        .orTimeout(replyTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
     @Override
     public void run() {
         System.out.println("Server started. Waiting for connections...");
@@ -29,22 +134,68 @@ public class TCPServer implements ITCPServer, Runnable {
         while (true) {
             try {
                 Socket clientSocket = serverSocket.accept();
-
-                // Create a new thread to handle the client connection
-                socketHandler = new ServerSocketHandler(clientSocket);
-                IoTDevices.add(socketHandler);
-                int serialNumber = getIoTSerialNumber();
-                socketHandler.setDeviceId(serialNumber);    // Setting the actual serial number
-                System.out.println("Client connected. Giving it ID: " + socketHandler.getDeviceId());
+                // The accept loop only hands the connection over, so the next device can be accepted right away
+                handshakeExecutor.execute(() -> handshake(clientSocket));
             } catch (IOException e) {
-                System.out.println("Client with ID " + socketHandler.getDeviceId() + " disconnected");
+                if (serverSocket.isClosed()) {
+                    System.out.println("Server socket closed, no longer accepting connections");
+                    return;
+                }
+                System.out.println("Error while accepting a connection: " + e.getMessage());
             }
         }
     }
 
+    /**
+     * Asks the new connection for its serial number and registers it under that ID
+     * The device has the reply timeout to answer, otherwise (or if the answer is not a number) the connection is closed
+     *
+     * @param clientSocket
+     */
+    private void handshake(Socket clientSocket) {
+        ServerSocketHandler handler = new ServerSocketHandler(clientSocket, protocol);
+        handler.setReplyTimeoutMillis(replyTimeoutMillis);
+        try {
+            // A device that stops answering must not block its caller forever, a read that times out closes the connection
+            clientSocket.setSoTimeout((int) replyTimeoutMillis);
+            handler.setDeviceId(requestSerialNumber(handler));      // Setting the actual serial number
+            handler.setTelemetryListener(telemetryListener);
+            handler.setOnClose(deviceRegistry::unregister);
+            deviceRegistry.register(handler);     // Only registered once it is known under which ID, replaces a stale connection of the same device
+            System.out.println("Client connected. Giving it ID: " + handler.getDeviceId());
+            if (protocol == DeviceProtocol.FRAMED) {
+                clientSocket.setSoTimeout(0);   // The reader waits for pushed readings indefinitely, silent devices are found by the connection monitor
+                listen(handler);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Client did not send a valid serial number, closing the connection");
+            handler.close();
+        }
+    }
+
     @Override
     public void startServer() {
         new Thread(this).start();
+        connectionMonitor.start();
+    }
+
+    /**
+     * Gives a framed device connection a reader thread of its own (a virtual one, if enabled), so that readings the device pushes are received right away
+     * The text protocol cannot tell a pushed reading from a reply, so text devices are still only read when asked
+     *
+     * @param handler
+     */
+    private void listen(ServerSocketHandler handler) {
+        Thread reader = readerThreads.newThread(() -> {
+            try {
+                handler.listen();
+            } catch (IOException e) {
+                System.out.println("Client with ID " + handler.getDeviceId() + " disconnected");
+                handler.close();
+            }
+        });
+        reader.setName("iot-reader-" + handler.getDeviceId());
+        reader.start();
     }
 
     /**
@@ -55,13 +206,44 @@ public class TCPServer implements ITCPServer, Runnable {
      */
     @Override
     public String getDataById(int deviceId, String payload) {
-        String response = "";
-        for (ServerSocketHandler ssh : IoTDevices) {
-            if (ssh.getDeviceId() == deviceId) {
-                response = ssh.sendMessage(payload);
-            }
-        }
-        return response;
+        ServerSocketHandler ssh = deviceRegistry.get(deviceId);
+        return ssh == null ? "" : callGuard.call(deviceId, () -> ssh.sendMessage(payload));
+    }
+
+    /**
+     * Asynchronous variant of getDataById
+     * The blocking socket handlers still need a thread per round trip, so the request runs on a separate pool instead of the caller's thread,
+     * or on a virtual thread of its own if virtual threads are enabled
+     * A request that times out (or is cancelled) while it is still queued is never sent, so a command the caller has given up on,
+     * such as activateBuzzer, does not reach the device later anyway. It fails with a DeviceCallGuard.NotSentException,
+     * a TimeoutException that the device's circuit records as a rejection instead of a failure.
+     *
+     * @param deviceId
+     * @param payload
+     * @param timeout how long to wait for the device before the future fails with a TimeoutException
+     * @return future reply, "" if the device is not connected or its circuit is open
+     */
+    @Override
+    public CompletableFuture<String> requestAsync(int deviceId, String payload, Duration timeout) {
+        ServerSocketHandler ssh = deviceRegistry.get(deviceId);
+        if (ssh == null) return CompletableFuture.completedFuture("");
+        // Checked before the request is queued, so a request to an unhealthy device does not wait for a thread first
+        return callGuard.callAsync(deviceId, () -> {
+            CompletableFuture<String> reply = new CompletableFuture<String>().orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            AtomicBoolean started = new AtomicBoolean();
+            requestExecutor.execute(() -> {
+                if (!started.compareAndSet(false, true)) return;     // The caller has given up while the request was queued
+                try {
+                    reply.complete(ssh.sendMessage(payload));
+                } catch (RuntimeException e) {
+                    reply.completeExceptionally(e);
+                }
+            });
+            // A request that never left the queue says nothing about the device, the breaker must not count it as a failure
+            return reply.exceptionallyCompose(error -> error instanceof TimeoutException && started.compareAndSet(false, true)
+                    ? CompletableFuture.failedFuture(new DeviceCallGuard.NotSentException("Request to device " + deviceId + " timed out before a thread was free"))
+                    : reply);
+        });
     }
 
     /**
@@ -72,30 +254,71 @@ public class TCPServer implements ITCPServer, Runnable {
      */
     @Override
     public boolean setIoTData(int deviceId, String payload) {
-        String response = "";
-        for (ServerSocketHandler ssh : IoTDevices) {
-            if (ssh.getDeviceId() == deviceId) {
-                response = ssh.sendMessage(payload);
-            }
-        }
-        return response.equals("OK");
+        return getDataById(deviceId, payload).equals("OK");
     }
 
     /**
-     * @return All currently connected IoT devices
+     * @return Snapshot of all currently connected IoT devices
      */
     @Override
     public List<ServerSocketHandler> getIoTDevices() {
-        return IoTDevices;
+        return deviceRegistry.snapshot();
+    }
+
+    /**
+     * @param deviceId
+     * @return true if the device is currently connected
+     */
+    @Override
+    public boolean isDeviceConnected(int deviceId) {
+        return deviceRegistry.contains(deviceId);
+    }
+
+    /**
+     * Readings pushed by framed devices are handed to this listener, on the device's reader thread
+     *
+     * @param telemetryListener
+     */
+    @Override
+    public void setTelemetryListener(ITelemetryListener telemetryListener) {
+        this.telemetryListener = telemetryListener;
+        deviceRegistry.snapshot().forEach(device -> device.setTelemetryListener(telemetryListener));
     }
 
     /**
-     * Sets IoT Devices
+     * Devices that connect or disconnect are reported to this listener, on the thread that registered or unregistered them
+     *
+     * @param connectionListener
+     */
+    @Override
+    public void setConnectionListener(IConnectionListener connectionListener) {
+        deviceRegistry.setConnectionListener(connectionListener);
+    }
+
+    /**
+     * @return how many device circuits are open, and how many requests failed or were rejected by the circuit breakers and bulkheads
+     */
+    @Override
+    public Map<String, Long> getCircuitStatistics() {
+        return callGuard.getStatistics();
+    }
+
+    /**
+     * @return the devices whose circuit is open or half-open
+     */
+    @Override
+    public Map<Integer, DeviceCallGuard.State> getUnhealthyDevices() {
+        return callGuard.getUnhealthyDevices();
+    }
+
+    /**
+     * Replaces the connected IoT Devices
      *
      * @param IoTDevices
      */
     public void setIoTDevices(List<ServerSocketHandler> IoTDevices) {
-        this.IoTDevices = IoTDevices;
+        deviceRegistry.clear();
+        IoTDevices.forEach(deviceRegistry::register);
     }
 
     /**
@@ -104,7 +327,11 @@ public class TCPServer implements ITCPServer, Runnable {
      * @return device's serial number
      */
     public int getIoTSerialNumber() {
-        String response = socketHandler.sendMessage("getSerialNumber");     // This will return the serial number of the IoT device (if ok), which we need to find out which bin it is attached to
-        return Integer.parseInt(response);
+        return requestSerialNumber(socketHandler);
+    }
+
+    private static int requestSerialNumber(ServerSocketHandler handler) {
+        String response = handler.sendMessage("getSerialNumber");     // This will return the serial number of the IoT device (if ok), which we need to find out which bin it is attached to
+        return Integer.parseInt(response.trim());
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.time.LocalDateTime;
+
+/**
+ * A sensor reading a device sent on its own, already parsed on the I/O thread that received it
+ */
+public class Telemetry {
+    private final int deviceId;
+    private final String sensor;
+    private final double value;
+    private final LocalDateTime receivedAt;
+
+    public Telemetry(int deviceId, String sensor, double value, LocalDateTime receivedAt) {
+        this.deviceId = deviceId;
+        this.sensor = sensor;
+        this.value = value;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * Parses a reading in the text protocol's representation
+     *
+     * @param deviceId
+     * @param message for example "humid:25.0", "tempe:21.0", "level:42.5"
+     * @return the reading, or null if the message is not a humidity, temperature or fill level reading
+     */
+    public static Telemetry parse(int deviceId, String message) {
+        if (message == null || message.length() < 7 || message.charAt(5) != ':') return null;
+        String sensor = message.substring(0, 5);
+        if (!sensor.equals("humid") && !sensor.equals("tempe") && !sensor.equals("level")) return null;
+        try {
+            return new Telemetry(deviceId, sensor, Double.parseDouble(message.substring(6)), LocalDateTime.now());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * @return "humid", "tempe" or "level"
+     */
+    public String getSensor() {
+        return sensor;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public LocalDateTime getReceivedAt() {
+        return receivedAt;
+    }
+
+    @Override
+    public String toString() {
+        return sensor + ":" + value;
+    }
+}
@@ -0,0 +1,71 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads device connections and blocking device requests run on
+ * Virtual threads need a Java 21 runtime (the Docker image has one) while the code is still compiled for Java 17,
+ * so they are looked up by reflection. On an older runtime the platform threads of before are used instead.
+ */
+public final class VirtualThreads {
+    private static final ThreadFactory VIRTUAL_FACTORY = lookUpVirtualThreadFactory();
+
+    private VirtualThreads() {}
+
+    /**
+     * @return true if the runtime can create virtual threads
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * @param name name of the threads, platform threads get a sequence number appended
+     * @param virtual whether virtual threads are wanted, ignored if the runtime does not support them
+     * @return factory of virtual threads, or of daemon platform threads
+     */
+    public static ThreadFactory factory(String name, boolean virtual) {
+        if (virtual && isSupported()) {
+            return runnable -> {
+                Thread thread = VIRTUAL_FACTORY.newThread(runnable);
+                thread.setName(name);
+                return thread;
+            };
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Executor that starts a new thread for every task, only sensible for virtual threads as they are cheap to create
+     *
+     * @param name
+     * @return executor running every task on a virtual thread of its own
+     */
+    public static Executor perTaskExecutor(String name) {
+        ThreadFactory factory = factory(name, true);
+        return task -> factory.newThread(task).start();
+    }
+
+    /**
+     * Thread.ofVirtual().factory(), which only exists from Java 21 on
+     *
+     * @return the virtual thread factory, or null if the runtime has none
+     */
+    private static ThreadFactory lookUpVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -33,3 +33,5 @@ CREATE TABLE public.temperature (
                                     CONSTRAINT temperature_fk FOREIGN KEY (bin_id) REFERENCES public.bin(id) ON UPDATE CASCADE
 
 );
+
+CREATE INDEX bin_device_id_idx ON public.bin USING btree (device_id);
@@ -8,12 +8,13 @@ import garbagegroup.cloud.model.Level;
 import garbagegroup.cloud.model.Temperature;
 import garbagegroup.cloud.service.serviceInterface.IBinService;
 import io.swagger.models.Response;
-import org.junit.Test;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.runner.RunWith;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -26,12 +27,12 @@ import java.util.NoSuchElementException;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
-@RunWith(MockitoJUnitRunner.class)
+@ExtendWith(MockitoExtension.class)
 public class BinControllerTest {
 
     @Mock
@@ -129,6 +130,25 @@ public class BinControllerTest {
         assertEquals(15D, result.getBody().getValue(), 0.5);
     }
 
+    @Test
+    public void getCurrentFillLevelByBinId_StaleLevel_ReturnsItWithItsAge() {
+        //Arrange
+        Level level = new Level(40.0, LocalDateTime.now().minusMinutes(90));
+
+        //Mock
+        when(binService.getCurrentFillLevelByBinId(1L)).thenReturn(Optional.of(level));
+
+        //Act
+        ResponseEntity<Level> result = binController.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(40.0, result.getBody().getValue(), 0.5);
+        assertEquals(level.getDateTime(), result.getBody().getDateTime());
+        long age = Long.parseLong(result.getHeaders().getFirst(HttpHeaders.AGE));
+        assertTrue(age >= 5400 && age < 5460, "Age was " + age);
+    }
+
     @Test
     public void getCurrentTemperatureByBinId_BinServiceThrowsException_ReturnsBadRequestStatus() {
         //Mock
@@ -0,0 +1,70 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.repository.IBinRepository;
+import garbagegroup.cloud.service.serviceImplementation.BinDeviceIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BinDeviceIndexTest {
+    @Mock
+    private IBinRepository binRepository;
+
+    private BinDeviceIndex deviceIndex;
+
+    @BeforeEach
+    void setUp() {
+        deviceIndex = new BinDeviceIndex(binRepository);
+        when(binRepository.findDeviceAssignments()).thenReturn(List.of(new Object[]{1L, 3456}, new Object[]{2L, 3456}, new Object[]{3L, 7890}));
+    }
+
+    @Test
+    void testGetBinIds_LoadsAssignmentsOnlyOnce() {
+        // Act
+        List<Long> binIds = deviceIndex.getBinIds(3456);
+        Optional<Integer> deviceId = deviceIndex.getDeviceId(3L);
+
+        // Assert
+        assertEquals(List.of(1L, 2L), binIds.stream().sorted().toList());
+        assertEquals(Optional.of(7890), deviceId);
+        verify(binRepository, times(1)).findDeviceAssignments();
+    }
+
+    @Test
+    void testPut_MovesBinToNewDevice() {
+        // Act
+        deviceIndex.put(3L, 1111);
+
+        // Assert
+        assertFalse(deviceIndex.isAssigned(7890));
+        assertTrue(deviceIndex.isAssigned(1111));
+        assertEquals(List.of(3L), deviceIndex.getBinIds(1111));
+    }
+
+    @Test
+    void testRemove_DeviceStaysAssignedWhileItHasOtherBins() {
+        // Act
+        deviceIndex.remove(1L);
+
+        // Assert
+        assertTrue(deviceIndex.isAssigned(3456));
+        assertEquals(List.of(2L), deviceIndex.getBinIds(3456));
+        assertTrue(deviceIndex.getDeviceId(1L).isEmpty());
+
+        // Act
+        deviceIndex.remove(2L);
+
+        // Assert
+        assertFalse(deviceIndex.isAssigned(3456));
+        assertTrue(deviceIndex.getBinIds(3456).isEmpty());
+    }
+}
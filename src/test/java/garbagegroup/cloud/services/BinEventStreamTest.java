@@ -0,0 +1,188 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.DTOs.BinEventDto;
+import garbagegroup.cloud.DTOs.NotificationBinDto;
+import garbagegroup.cloud.repository.IBinRepository;
+import garbagegroup.cloud.service.serviceImplementation.BinEventStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BinEventStreamTest {
+    private IBinRepository binRepository;
+    private BinEventStream eventStream;
+
+    @BeforeEach
+    void setUp() {
+        binRepository = mock(IBinRepository.class);
+        when(binRepository.findLocations()).thenReturn(List.of(
+                new Object[]{1L, 55.86, 9.85},
+                new Object[]{2L, 56.16, 10.20}));
+        eventStream = new BinEventStream(binRepository, 10, 60000, 4, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventStream.stop();
+    }
+
+    @Test
+    void testPublish_NoSubscribers_DoesNotLoadLocations() {
+        // Act
+        eventStream.publish(BinEventDto.status(1L, "ACTIVE"));
+
+        // Assert
+        verifyNoInteractions(binRepository);
+        assertEquals(0L, eventStream.getStatistics().get("published"));
+    }
+
+    @Test
+    void testPublish_SentOnlyToSubscribersWhoseRegionContainsTheBin() throws Exception {
+        // Arrange
+        RecordingEmitter everywhere = new RecordingEmitter();
+        RecordingEmitter horsens = new RecordingEmitter();
+        eventStream.subscribe(everywhere, null);
+        eventStream.subscribe(horsens, BinEventStream.Region.of(55.5, 56.0, null, null));
+
+        // Act
+        eventStream.publish(BinEventDto.reading(1L, "level", 40.0, LocalDateTime.now()));
+        eventStream.publish(BinEventDto.reading(2L, "level", 70.0, LocalDateTime.now()));
+
+        // Assert
+        assertEquals(1L, everywhere.next().getBinId());
+        assertEquals(2L, everywhere.next().getBinId());
+        assertEquals(1L, horsens.next().getBinId());
+        assertNull(horsens.sent.poll(100, TimeUnit.MILLISECONDS));
+        verify(binRepository, times(1)).findLocations();
+    }
+
+    @Test
+    void testPublish_SlowSubscriber_GetsOnlyTheLatestUpdateOfEachKind() throws Exception {
+        // Arrange
+        RecordingEmitter slow = new RecordingEmitter();
+        slow.blockNextSend();
+        eventStream.subscribe(slow, null);
+        eventStream.publish(BinEventDto.reading(1L, "level", 10.0, LocalDateTime.now()));
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+
+        // Act
+        eventStream.publish(BinEventDto.reading(1L, "level", 20.0, LocalDateTime.now()));
+        eventStream.publish(BinEventDto.alert(1L, new NotificationBinDto(25.0, 1L, 30.0, LocalDateTime.now())));
+        eventStream.publish(BinEventDto.reading(1L, "level", 30.0, LocalDateTime.now()));
+        slow.release.countDown();
+
+        // Assert
+        assertEquals(10.0, slow.next().getValue());
+        assertEquals(BinEventDto.ALERT, slow.next().getType());
+        assertEquals(30.0, slow.next().getValue());
+        assertNull(slow.sent.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1L, eventStream.getStatistics().get("coalesced"));
+    }
+
+    @Test
+    void testPublish_SubscriberThatCannotBeWrittenTo_IsDropped() throws Exception {
+        // Arrange
+        RecordingEmitter gone = new RecordingEmitter();
+        gone.failSends = true;
+        RecordingEmitter other = new RecordingEmitter();
+        eventStream.subscribe(gone, null);
+        eventStream.subscribe(other, null);
+
+        // Act
+        eventStream.publish(BinEventDto.status(1L, "OFFLINE"));
+
+        // Assert
+        assertEquals("OFFLINE", other.next().getStatus());
+        for (int i = 0; i < 50 && eventStream.getStatistics().get("dropped") == 0; i++) Thread.sleep(20);
+        assertEquals(1L, eventStream.getStatistics().get("dropped"));
+        assertEquals(1L, eventStream.getStatistics().get("subscribers"));
+    }
+
+    @Test
+    void testPublish_AllSenderThreadsBusy_BatchWaitsInsteadOfStartingAnotherThread() throws Exception {
+        // Arrange
+        eventStream.stop();
+        eventStream = new BinEventStream(binRepository, 10, 60000, 1, false);
+        RecordingEmitter slow = new RecordingEmitter();
+        slow.blockNextSend();
+        RecordingEmitter other = new RecordingEmitter();
+        eventStream.subscribe(slow, BinEventStream.Region.of(55.5, 56.0, null, null));
+        eventStream.publish(BinEventDto.status(1L, "ACTIVE"));
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        eventStream.subscribe(other, null);
+
+        // Act
+        eventStream.publish(BinEventDto.status(2L, "OFFLINE"));
+
+        // Assert
+        assertNull(other.sent.poll(200, TimeUnit.MILLISECONDS));
+        slow.release.countDown();
+        assertEquals(1L, slow.next().getBinId());
+        assertEquals(2L, other.next().getBinId());
+    }
+
+    @Test
+    void testRegion_BinWithoutLocationIsInNoRegionButStillStreamedToAll() throws Exception {
+        // Arrange
+        RecordingEmitter everywhere = new RecordingEmitter();
+        RecordingEmitter region = new RecordingEmitter();
+        eventStream.subscribe(everywhere, null);
+        eventStream.subscribe(region, BinEventStream.Region.of(null, null, 9.0, 11.0));
+        eventStream.putBin(3L, null, null);
+
+        // Act
+        eventStream.publish(BinEventDto.status(3L, "ACTIVE"));
+
+        // Assert
+        assertEquals(3L, everywhere.next().getBinId());
+        assertNull(region.sent.poll(100, TimeUnit.MILLISECONDS));
+        assertNull(BinEventStream.Region.of(null, null, null, null));
+    }
+
+    /**
+     * Records the events instead of writing them to a response
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<BinEventDto> sent = new LinkedBlockingQueue<>();
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private CountDownLatch release = new CountDownLatch(0);
+        private volatile boolean failSends;
+
+        private void blockNextSend() {
+            release = new CountDownLatch(1);
+        }
+
+        private BinEventDto next() throws InterruptedException {
+            BinEventDto event = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            return event;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failSends) throw new IOException("Broken pipe");
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof BinEventDto event) sent.add(event);
+            }
+        }
+    }
+}
@@ -4,10 +4,21 @@ import garbagegroup.cloud.DTOs.*;
 import garbagegroup.cloud.model.Bin;
 import garbagegroup.cloud.model.Humidity;
 import garbagegroup.cloud.model.Level;
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorReading;
+import garbagegroup.cloud.model.SensorType;
 import garbagegroup.cloud.model.Temperature;
 import garbagegroup.cloud.repository.IBinRepository;
 import garbagegroup.cloud.tcpserver.ITCPServer;
+import garbagegroup.cloud.service.serviceImplementation.BinDeviceIndex;
+import garbagegroup.cloud.service.serviceImplementation.BinEventStream;
 import garbagegroup.cloud.service.serviceImplementation.BinService;
+import garbagegroup.cloud.service.serviceImplementation.FillLevelAlertEngine;
+import garbagegroup.cloud.service.serviceImplementation.LevelPollingScheduler;
+import garbagegroup.cloud.service.serviceImplementation.SensorReadingWriteBuffer;
+import garbagegroup.cloud.service.serviceImplementation.SensorRetentionService;
+import garbagegroup.cloud.service.serviceImplementation.SensorRollupService;
+import garbagegroup.cloud.service.serviceImplementation.SensorStateCache;
 import garbagegroup.cloud.tcpserver.ServerSocketHandler;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,16 +28,26 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.net.Socket;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import javax.management.Notification;
 import javax.swing.text.html.Option;
@@ -40,12 +61,37 @@ public class BinServiceTest {
     @Mock
     private ITCPServer tcpServer;
 
+    @Mock
+    private SensorReadingWriteBuffer readingBuffer;
+
+    @Mock
+    private SensorStateCache stateCache;
+
+    @Mock
+    private LevelPollingScheduler pollingScheduler;
+
+    @Mock
+    private BinDeviceIndex deviceIndex;
+
+    @Mock
+    private FillLevelAlertEngine alertEngine;
+
+    @Mock
+    private BinEventStream eventStream;
+
+    @Mock
+    private SensorRollupService rollupService;
+
+    @Mock
+    private SensorRetentionService retentionService;
+
     @InjectMocks
     private BinService binService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        lenient().when(stateCache.getReadingTtl(any(SensorType.class))).thenReturn(SensorStateCache.READING_TTL);
     }
 
     @Test
@@ -54,15 +100,13 @@ public class BinServiceTest {
         Bin bin = new Bin();
         bin.setId(1L);
         bin.setDeviceId(1);
-        List<Humidity> humidityList = new ArrayList<>();
-        List<Level> levelList = new ArrayList<>();
-        List<Temperature> temperatureList = new ArrayList<>();
-        bin.setHumidity(humidityList);
-        bin.setFillLevels(levelList);
-        bin.setTemperatures(temperatureList);
 
         //Mock
         when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        // Read back after the fake reading has been saved
+        when(binRepository.findLatestHumidityByBinId(1L)).thenReturn(Optional.empty()).thenReturn(Optional.of(new Humidity(bin, 26.0, LocalDateTime.now())));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.empty()).thenReturn(Optional.of(new Level(bin, 37.0, LocalDateTime.now())));
+        when(binRepository.findLatestTemperatureByBinId(1L)).thenReturn(Optional.empty()).thenReturn(Optional.of(new Temperature(bin, 26.0, LocalDateTime.now())));
 
         //Act
         Optional<Humidity> humidityResult = binService.getCurrentHumidityByBinId(1L);
@@ -73,6 +117,7 @@ public class BinServiceTest {
         assertEquals(26.0, humidityResult.get().getValue());
         assertEquals(37.0, levelResult.get().getValue());
         assertEquals(26.0, temperatureResult.get().getValue());
+        verify(readingBuffer, times(3)).save(any(SensorReading.class));
     }
 
     @Test
@@ -101,24 +146,18 @@ public class BinServiceTest {
         Humidity humidity = new Humidity();
         humidity.setDateTime(LocalDateTime.now().minusMinutes(30));
         humidity.setValue(50.0);
-        List<Humidity> humidityList = new ArrayList<>();
-        humidityList.add(humidity);
-        bin.setHumidity(humidityList);
         Temperature temperature = new Temperature();
         temperature.setDateTime(LocalDateTime.now().minusMinutes(30));
         temperature.setValue(69.0);
-        List<Temperature> temperatureList = new ArrayList<>();
-        temperatureList.add(temperature);
-        bin.setTemperatures(temperatureList);
         Level level = new Level();
         level.setDateTime(LocalDateTime.now().minusMinutes(30));
         level.setValue(38.0);
-        List<Level> levelList = new ArrayList<>();
-        levelList.add(level);
-        bin.setFillLevels(levelList);
 
         //Mock
         when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestHumidityByBinId(1L)).thenReturn(Optional.of(humidity));
+        when(binRepository.findLatestTemperatureByBinId(1L)).thenReturn(Optional.of(temperature));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level));
 
         //Act
         Optional<Humidity> humidityResult = binService.getCurrentHumidityByBinId(1L);
@@ -141,24 +180,19 @@ public class BinServiceTest {
         Humidity humidity = new Humidity();
         humidity.setDateTime(LocalDateTime.now().minusMinutes(90));
         humidity.setValue(50.0);
-        List<Humidity> humidityList = new ArrayList<>();
-        humidityList.add(humidity);
-        bin.setHumidity(humidityList);
         Temperature temperature = new Temperature();
         temperature.setDateTime(LocalDateTime.now().minusMinutes(90));
         temperature.setValue(69.0);
-        List<Temperature> temperatureList = new ArrayList<>();
-        temperatureList.add(temperature);
-        bin.setTemperatures(temperatureList);
         Level level = new Level();
         level.setDateTime(LocalDateTime.now().minusMinutes(90));
         level.setValue(38.0);
-        List<Level> levelList = new ArrayList<>();
-        levelList.add(level);
-        bin.setFillLevels(levelList);
 
         //Mocks
         when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        // Read back after the fake reading has been saved
+        when(binRepository.findLatestHumidityByBinId(1L)).thenReturn(Optional.of(humidity)).thenReturn(Optional.of(new Humidity(bin, 26.0, LocalDateTime.now())));
+        when(binRepository.findLatestTemperatureByBinId(1L)).thenReturn(Optional.of(temperature)).thenReturn(Optional.of(new Temperature(bin, 26.0, LocalDateTime.now())));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level)).thenReturn(Optional.of(new Level(bin, 37.0, LocalDateTime.now())));
 
         //Act
         Optional<Humidity> humidityResult = binService.getCurrentHumidityByBinId(1L);
@@ -171,6 +205,111 @@ public class BinServiceTest {
         assertEquals(37.0, levelResult.get().getValue());
     }
 
+    @Test
+    void getCurrentSensorDataByBinId_CachedReading_SkipsDbAndDevice() {
+        //Arrange
+        Humidity humidity = new Humidity(null, 50.0, LocalDateTime.now().minusMinutes(10));
+
+        //Mock
+        when(stateCache.getReading(1L, SensorType.HUMIDITY)).thenReturn(Optional.of(humidity));
+
+        //Act
+        Optional<Humidity> result = binService.getCurrentHumidityByBinId(1L);
+
+        //Assert
+        assertSame(humidity, result.get());
+        verifyNoInteractions(binRepository, tcpServer);
+    }
+
+    @Test
+    void getCurrentSensorDataByBinId_NotCached_CachesReadingFromDb() {
+        //Arrange
+        Bin bin = new Bin();
+        bin.setId(1L);
+        Level level = new Level(bin, 38.0, LocalDateTime.now().minusMinutes(10));
+
+        //Mock
+        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level));
+
+        //Act
+        Optional<Level> result = binService.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        assertEquals(38.0, result.get().getValue());
+        verify(stateCache).putReading(1L, SensorType.LEVEL, level);
+    }
+
+    @Test
+    void getCurrentSensorDataByBinId_RecentReading_OnlyQueriesRecentReadings() {
+        //Arrange
+        Bin bin = new Bin();
+        bin.setId(1L);
+        Level level = new Level(bin, 38.0, LocalDateTime.now().minusMinutes(10));
+
+        //Mock
+        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinIdSince(eq(1L), any(LocalDateTime.class))).thenReturn(Optional.of(level));
+
+        //Act
+        Optional<Level> result = binService.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        assertEquals(38.0, result.get().getValue());
+        verify(binRepository).findLatestFillLevelByBinIdSince(eq(1L), argThat(since ->
+                since.isAfter(LocalDateTime.now().minusHours(1).minusMinutes(1)) && since.isBefore(LocalDateTime.now().minusMinutes(59))));
+        verify(binRepository, never()).findLatestFillLevelByBinId(anyLong());
+    }
+
+    @Test
+    void saveFillLevelByBinId_Saved_UpdatesCache() {
+        //Arrange
+        LocalDateTime dateTime = LocalDateTime.now();
+
+        //Mock
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(true);
+
+        //Act
+        binService.saveFillLevelByBinId(1, 42.5, dateTime);
+
+        //Assert
+        verify(stateCache).putReading(eq(1L), eq(SensorType.LEVEL), argThat(reading -> reading.getDateTime().equals(dateTime)
+                && ((Level) reading).getValue() == 42.5));
+        verify(alertEngine).onLevel(1L, 42.5, dateTime);
+    }
+
+    @Test
+    void saveFillLevelByBinId_CrossesThreshold_PublishesReadingAndAlert() {
+        //Arrange
+        LocalDateTime dateTime = LocalDateTime.now();
+        NotificationBinDto alert = new NotificationBinDto(80.0, 1L, 92.0, dateTime);
+
+        //Mock
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(true);
+        when(alertEngine.onLevel(1L, 92.0, dateTime)).thenReturn(true);
+        when(alertEngine.getAlert(1L)).thenReturn(Optional.of(alert));
+
+        //Act
+        binService.saveFillLevelByBinId(1, 92.0, dateTime);
+
+        //Assert
+        verify(eventStream).publish(argThat(event -> BinEventDto.READING.equals(event.getType()) && event.getBinId() == 1L
+                && event.getValue() == 92.0));
+        verify(eventStream).publish(argThat(event -> BinEventDto.ALERT.equals(event.getType()) && event.getRaised()
+                && event.getFillThreshold() == 80.0));
+    }
+
+    @Test
+    void saveFillLevelByBinId_NotSaved_LeavesCacheAlone() {
+        //Act
+        binService.saveFillLevelByBinId(1, 42.5, LocalDateTime.now());
+
+        //Assert
+        verify(stateCache, never()).putReading(anyLong(), any(), any());
+        verify(alertEngine, never()).onLevel(anyLong(), anyDouble(), any());
+        verifyNoInteractions(eventStream);
+    }
+
     @Test
     public void saveSensorDataByBinId_SuccessfulSave() {
         // Arrange
@@ -180,10 +319,7 @@ public class BinServiceTest {
         double level = 37.0;
         LocalDateTime dateTime = LocalDateTime.now();
 
-        Bin bin = new Bin();
-        bin.setId((long) binId);
-
-        when(binRepository.findById((long) binId)).thenReturn(Optional.of(bin));
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(true);
 
         // Act
         boolean humidityResult = binService.saveHumidityByBinId(binId, humidity, dateTime);
@@ -194,6 +330,8 @@ public class BinServiceTest {
         assertTrue(humidityResult);
         assertTrue(temperatureResult);
         assertTrue(levelResult);
+        verify(readingBuffer, times(3)).save(any(SensorReading.class));
+        verify(binRepository, never()).findById(anyLong());
     }
 
     @Test
@@ -204,7 +342,8 @@ public class BinServiceTest {
         double level = 1.0;
         LocalDateTime dateTime = LocalDateTime.now();
 
-        when(binRepository.findById((long) binId)).thenReturn(Optional.empty());
+        // No row is inserted for a bin that does not exist
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(false);
 
         // Act
         boolean humidityResult = binService.saveHumidityByBinId(binId, humidity, dateTime);
@@ -225,11 +364,8 @@ public class BinServiceTest {
         double level = 1.0;
         LocalDateTime dateTime = LocalDateTime.now();
 
-        Bin bin = new Bin();
-        bin.setId((long) binId);
-
-        when(binRepository.findById((long) binId)).thenReturn(Optional.of(bin));
-        when(binRepository.save(any(Bin.class))).thenThrow(new RuntimeException("Sensor save error"));
+        // The buffer catches the insert error and reports the reading as not saved
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(false);
 
         // Act
         boolean humidityResult = binService.saveHumidityByBinId(binId, humidity, dateTime);
@@ -295,6 +431,9 @@ public class BinServiceTest {
         binService.deleteBinById(binId);
 
         verify(binRepository).deleteById(binId);
+        verify(stateCache).evict(binId);
+        verify(deviceIndex).remove(binId);
+        verify(alertEngine).remove(binId);
     }
 
     @Test
@@ -325,6 +464,128 @@ public class BinServiceTest {
     }
 
 
+    @Test
+    void testFindAllBins_RequestsStatusFromAllDevicesAsynchronously() {
+        // Arrange
+        Bin bin1 = new Bin(20.7, 50.3, 56.8, 78.7, null, null);
+        bin1.setId(1L);
+        bin1.setDeviceId(11);
+        Bin bin2 = new Bin(60.7, 20.3, 56.8, 78.7, null, null);
+        bin2.setId(2L);
+        bin2.setDeviceId(22);
+
+        when(binRepository.findAll()).thenReturn(Arrays.asList(bin1, bin2));
+        when(tcpServer.isDeviceConnected(anyInt())).thenReturn(true);
+        when(tcpServer.requestAsync(eq(11), eq("getStatus"), any(Duration.class))).thenReturn(CompletableFuture.completedFuture("statu:OK"));
+        when(tcpServer.requestAsync(eq(22), eq("getStatus"), any(Duration.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("timeout")));
+
+        // Act
+        List<BinDto> result = binService.findAllBins();
+
+        // Assert
+        assertEquals("ACTIVE", result.get(0).getStatus());
+        assertEquals("OFFLINE", result.get(1).getStatus());
+        verify(tcpServer, never()).getDataById(anyInt(), anyString());
+    }
+
+    @Test
+    void testFindAllBins_ServesStoredPickupAndEmptiedTimesWithoutWriting() {
+        // Arrange
+        LocalDateTime emptiedLast = LocalDateTime.of(2023, 12, 6, 13, 0);
+        LocalDateTime pickUpTime = LocalDateTime.of(2023, 12, 8, 15, 0);
+        Bin bin = new Bin(20.7, 50.3, 56.8, 50.0, emptiedLast, pickUpTime);
+        bin.setId(1L);
+
+        when(binRepository.findAll()).thenReturn(List.of(bin));
+
+        // Act
+        List<BinDto> result = binService.findAllBins();
+
+        // Assert
+        assertEquals(pickUpTime, result.get(0).getPickUpTime());
+        assertEquals(emptiedLast, result.get(0).getEmptiedLast());
+        verify(binRepository, never()).save(any(Bin.class));
+        verify(binRepository, never()).saveAll(anyList());
+        verify(binRepository, never()).findLastPickupTime(anyLong());
+        verify(binRepository, never()).findLatestFillLevelByBinId(anyLong());
+    }
+
+    @Test
+    void getCurrentSensorDataByBinId_WithOldLevelAndActiveDevice_ReturnsStoredLevelWithoutWaitingForDevice() {
+        //Arrange
+        Bin bin = new Bin();
+        bin.setId(1L);
+        bin.setDeviceId(3456);
+        Level level = new Level();
+        level.setDateTime(LocalDateTime.now().minusMinutes(90));
+        level.setValue(38.0);
+
+        //Mock
+        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level));
+        when(tcpServer.isDeviceConnected(3456)).thenReturn(true);
+        when(tcpServer.requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class))).thenReturn(new CompletableFuture<>());
+
+        //Act
+        Optional<Level> levelResult = binService.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        assertEquals(38.0, levelResult.get().getValue());
+        verify(tcpServer, times(1)).requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class));
+        verify(tcpServer, never()).getDataById(anyInt(), anyString());
+    }
+
+    @Test
+    void getCurrentSensorDataByBinId_LevelOlderThanConfiguredTtl_IsRefreshedInBackground() {
+        //Arrange
+        Bin bin = new Bin();
+        bin.setId(1L);
+        bin.setDeviceId(3456);
+        Level level = new Level(38.0, LocalDateTime.now().minusMinutes(20));
+
+        //Mock
+        when(stateCache.getReadingTtl(SensorType.LEVEL)).thenReturn(Duration.ofMinutes(10));
+        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level));
+        when(tcpServer.isDeviceConnected(3456)).thenReturn(true);
+        when(tcpServer.requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class))).thenReturn(new CompletableFuture<>());
+
+        //Act
+        Optional<Level> levelResult = binService.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        assertSame(level, levelResult.get());
+        verify(tcpServer, times(1)).requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class));
+        verify(stateCache, never()).putReading(anyLong(), any(), any());
+    }
+
+    @Test
+    void getCurrentSensorDataByBinId_ConcurrentReadersOfOldLevel_ShareOneDeviceFetch() {
+        //Arrange
+        Bin bin = new Bin();
+        bin.setId(1L);
+        bin.setDeviceId(3456);
+        Level level = new Level();
+        level.setDateTime(LocalDateTime.now().minusMinutes(90));
+        level.setValue(38.0);
+        CompletableFuture<String> reply = new CompletableFuture<>();
+
+        //Mock
+        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(level));
+        when(tcpServer.isDeviceConnected(3456)).thenReturn(true);
+        when(tcpServer.requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class))).thenReturn(reply);
+
+        //Act
+        binService.getCurrentFillLevelByBinId(1L);
+        binService.getCurrentFillLevelByBinId(1L);
+        binService.getCurrentFillLevelByBinId(1L);
+
+        //Assert
+        verify(tcpServer, times(1)).requestAsync(eq(3456), eq("getCurrentLevel"), any(Duration.class));
+        assertEquals(2L, binService.getSensorCacheStatistics().get("deviceFetches.coalesced"));
+    }
+
     @Test
     public void testFindBinById_WhenBinExists() {
         long binId = 1L;
@@ -381,14 +642,8 @@ public class BinServiceTest {
         Level latestLevel = new Level();
         latestLevel.setValue(60);
         latestLevel.setDateTime(LocalDateTime.now());
-        bin.setFillLevels(Arrays.asList(latestLevel));
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
 
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
         when(tcpServer.getDataById(deviceId, "getStatus")).thenReturn("statu:OK");
@@ -412,14 +667,8 @@ public class BinServiceTest {
         Level latestLevel = new Level();
         latestLevel.setValue(60);
         latestLevel.setDateTime(LocalDateTime.now());
-        bin.setFillLevels(Arrays.asList(latestLevel));
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
 
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
         when(tcpServer.getDataById(deviceId, "getStatus")).thenReturn("statu:NOT OK");
@@ -444,14 +693,8 @@ public class BinServiceTest {
         Level latestLevel = new Level();
         latestLevel.setValue(60);
         latestLevel.setDateTime(LocalDateTime.now());
-        bin.setFillLevels(Arrays.asList(latestLevel));
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
 
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
         when(tcpServer.getDataById(deviceId, "getStatus")).thenReturn("statu:");
@@ -463,57 +706,6 @@ public class BinServiceTest {
         assertEquals(returnedDto.getStatus(), "OFFLINE");
     }
 
-    @Test
-    public void testSetPickupDate_LastFillLevelReadingIsOutsideOfWorkingHours() {
-        // Arrange
-        int deviceId = 123;
-        Long binId = 1L;
-        Bin bin = new Bin();
-        bin.setId(binId);
-        bin.setFillThreshold(20.0);
-        bin.setDeviceId(deviceId);
-        Level latestLevel = new Level();
-        latestLevel.setValue(60);
-        latestLevel.setDateTime(LocalDateTime.of(2023, 12, 7, 15, 50, 23));
-        bin.setFillLevels(Arrays.asList(latestLevel));
-
-        when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
-
-        // Test method
-        LocalDateTime dateTime = binService.setPickupDate(bin);
-
-        // Assertions
-        // We set up the latest Level reading to 7th day of the month but the time is after working hours
-        // Therefore the setPickUpTime will be set to the day after, so the 8th
-        assertEquals(dateTime.getDayOfMonth(), 8);
-    }
-
-    @Test
-    public void testSetPickupDate_LastFillLevelReadingIsWithinWorkingHours() {
-        // Arrange
-        int deviceId = 123;
-        Long binId = 1L;
-        Bin bin = new Bin();
-        bin.setId(binId);
-        bin.setFillThreshold(20.0);
-        bin.setDeviceId(deviceId);
-        Level latestLevel = new Level();
-        latestLevel.setValue(60);
-        latestLevel.setDateTime(LocalDateTime.of(2023, 12, 7, 10, 50, 23));
-        bin.setFillLevels(Arrays.asList(latestLevel));
-
-        when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
-
-        // Test method
-        LocalDateTime dateTime = binService.setPickupDate(bin);
-
-        // Assert
-        // Expect that the scheduled pick-up is set to be on the same day, 3 hours later
-        // As the level last reading is within working hours
-        assertEquals(dateTime.getDayOfMonth(), 7);
-        assertEquals(dateTime.getHour(), 13);
-    }
-
     @Test
     public void testIsValidLatitude() {
         BinService binService = new BinService(); // Assuming no-args constructor available
@@ -543,13 +735,12 @@ public class BinServiceTest {
         // Arrange
         int binId = 1;
         String data = "humid:45.0";
-        when(binRepository.findById((long) binId)).thenReturn(Optional.of(new Bin()));
 
         // Act
         binService.handleIoTData(binId, data);
 
         // Assert
-        verify(binRepository).save(any(Bin.class));
+        verify(readingBuffer).save(argThat(reading -> reading.getType() == SensorType.HUMIDITY && reading.getBinId() == binId));
     }
 
     @Test
@@ -557,13 +748,12 @@ public class BinServiceTest {
         // Arrange
         int binId = 1;
         String data = "level:45.0";
-        when(binRepository.findById((long) binId)).thenReturn(Optional.of(new Bin()));
 
         // Act
         binService.handleIoTData(binId, data);
 
         // Assert
-        verify(binRepository).save(any(Bin.class));
+        verify(readingBuffer).save(argThat(reading -> reading.getType() == SensorType.LEVEL && reading.getBinId() == binId));
     }
 
     @Test
@@ -571,13 +761,12 @@ public class BinServiceTest {
         // Arrange
         int binId = 1;
         String data = "tempe:33.0";
-        when(binRepository.findById((long) binId)).thenReturn(Optional.of(new Bin()));
 
         // Act
         binService.handleIoTData(binId, data);
 
         // Assert
-        verify(binRepository).save(any(Bin.class));
+        verify(readingBuffer).save(argThat(reading -> reading.getType() == SensorType.TEMPERATURE && reading.getBinId() == binId));
     }
 
     @Test
@@ -608,6 +797,7 @@ public class BinServiceTest {
         assertTrue(result.getDeviceId() != 0);
         assertTrue(result.getDeviceId() >= 1000 && result.getDeviceId() < 2000); // Assuming fake device ID is in this range
         verify(binRepository).save(any(Bin.class));
+        verify(deviceIndex).put(12L, result.getDeviceId());
     }
 
     @Test
@@ -638,7 +828,7 @@ public class BinServiceTest {
         int binId = 1;
         double humidity = 50.0;
         LocalDateTime dateTime = LocalDateTime.now();
-        when(binRepository.findById((long) binId)).thenReturn(Optional.empty());
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(false);
 
         // Act
         boolean result = binService.saveHumidityByBinId(binId, humidity, dateTime);
@@ -647,6 +837,23 @@ public class BinServiceTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testSaveFillLevelByBinId_SavesReadingWithoutLoadingBin() {
+        // Arrange
+        LocalDateTime dateTime = LocalDateTime.now();
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(true);
+
+        // Act
+        boolean result = binService.saveFillLevelByBinId(1, 42.5, dateTime);
+
+        // Assert
+        assertTrue(result);
+        verify(readingBuffer).save(argThat(reading -> reading.getType() == SensorType.LEVEL
+                && reading.getBinId() == 1 && reading.getValue() == 42.5 && reading.getDateTime().equals(dateTime)));
+        verify(binRepository, never()).findById(anyLong());
+        verify(binRepository, never()).save(any());
+    }
+
     @Test
     void testGetIoTData_WithActiveDevice() {
         // Arrange
@@ -654,15 +861,9 @@ public class BinServiceTest {
         int deviceId = 123;
         String payload = "somePayload";
         String expectedResponse = "Real IoT data";
-        Socket mockedSocket = mock(Socket.class);
-
 
         when(tcpServer.getDataById(deviceId, payload)).thenReturn(expectedResponse);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
 
         // Act
         String response = binService.getIoTData(binId, deviceId, payload);
@@ -710,8 +911,8 @@ public class BinServiceTest {
         ssh2.setDeviceId(2);
         IoTDevices.add(ssh2);
 
-        List<Bin> bins = Arrays.asList(bin1, bin2);
-        when(binRepository.findAll()).thenReturn(bins);
+        when(deviceIndex.isAssigned(1)).thenReturn(true);
+        when(deviceIndex.isAssigned(2)).thenReturn(true);
         when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
 
         // Act
@@ -737,8 +938,8 @@ public class BinServiceTest {
         ssh2.setDeviceId(2);
         IoTDevices.add(ssh2);
 
-        List<Bin> bins = Arrays.asList(bin1);
-        when(binRepository.findAll()).thenReturn(bins);
+        when(deviceIndex.isAssigned(1)).thenReturn(true);
+        when(deviceIndex.isAssigned(2)).thenReturn(false);
         when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
 
         // Act
@@ -752,19 +953,14 @@ public class BinServiceTest {
     @Test
     void testHasActiveDevice_ReturnsFalse() {
         // Arrange
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh1 = new ServerSocketHandler(mockedSocket);
-        ssh1.setDeviceId(1);
-        IoTDevices.add(ssh1);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(2)).thenReturn(false);
 
         // Act
         boolean response = binService.hasActiveDevice(2);
 
         // Assert
         assertFalse(response);
-        verify(tcpServer, times(1)).getIoTDevices();
+        verify(tcpServer, times(1)).isDeviceConnected(2);
     }
 
     @Test
@@ -811,6 +1007,44 @@ public class BinServiceTest {
         assertTrue(result);
     }
 
+    @Test
+    public void updateBin_LastLevelOverNewThreshold_SetsPickupTimeOnSave() {
+        //Arrange
+        UpdateBinDto updateBinDto = new UpdateBinDto(15L, 40D, 20D, 50D);
+        LocalDateTime levelTime = LocalDateTime.of(2023, 12, 7, 10, 0);
+
+        //Mock
+        when(binRepository.findById(15L)).thenReturn(Optional.of(new Bin(40D, 20D, null, 80D, null, null)));
+        when(binRepository.findLatestFillLevelByBinId(15L)).thenReturn(Optional.of(new Level(60D, levelTime)));
+
+        //Act
+        boolean result = binService.updateBin(updateBinDto);
+
+        //Assert
+        assertTrue(result);
+        verify(binRepository).save(argThat(bin -> levelTime.plusHours(3).equals(bin.getPickUpTime())
+                && levelTime.plusHours(3).equals(bin.getEmptiedLast())));
+        verify(alertEngine).putBin(15L, 50D);
+    }
+
+    @Test
+    public void updateBin_LastLevelAfterWorkingHours_SetsPickupTimeToNextDay() {
+        //Arrange
+        UpdateBinDto updateBinDto = new UpdateBinDto(15L, 40D, 20D, 50D);
+        LocalDateTime levelTime = LocalDateTime.of(2023, 12, 7, 15, 50, 23);
+
+        //Mock
+        when(binRepository.findById(15L)).thenReturn(Optional.of(new Bin(40D, 20D, null, 80D, null, null)));
+        when(binRepository.findLatestFillLevelByBinId(15L)).thenReturn(Optional.of(new Level(60D, levelTime)));
+
+        //Act
+        boolean result = binService.updateBin(updateBinDto);
+
+        //Assert
+        assertTrue(result);
+        verify(binRepository).save(argThat(bin -> levelTime.plusDays(1).equals(bin.getPickUpTime())));
+    }
+
     @Test
     public void testConvertToDTO() {
         // Arrange
@@ -840,12 +1074,7 @@ public class BinServiceTest {
         bin.setId(1L);
         bin.setDeviceId(1234);
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh1 = new ServerSocketHandler(mockedSocket);
-        ssh1.setDeviceId(1234);
-        IoTDevices.add(ssh1);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(1234)).thenReturn(true);
         when(tcpServer.getDataById(1234, "getStatus")).thenReturn("statu:OK");
 
         when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
@@ -857,7 +1086,7 @@ public class BinServiceTest {
 
         // Assert
         verify(binRepository, times(1)).findById(1L);
-        verify(tcpServer, times(2)).getIoTDevices();
+        verify(tcpServer, times(2)).isDeviceConnected(1234);
         verify(tcpServer, times(1)).getDataById(1234, "getStatus");
     }
 
@@ -869,13 +1098,7 @@ public class BinServiceTest {
         bin.setDeviceId(1234);
 
         // Mock IoT server and related dependencies
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh1 = new ServerSocketHandler(mockedSocket);
-        ssh1.setDeviceId(1234);
-        IoTDevices.add(ssh1);
-
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(1234)).thenReturn(true);
         when(tcpServer.getDataById(1234, "getStatus")).thenReturn("statu:NOT OK"); // Simulating device status as "Not OK"
 
         when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
@@ -908,9 +1131,9 @@ public class BinServiceTest {
 
 
     @Test
-    public void getLastLevelReadingWithTimestamp_NoBinFound_ReturnsEmptyLevel() {
+    public void getLastLevelReadingWithTimestamp_NoLevelReadings_ReturnsEmptyLevel() {
         //Mock
-        when(binRepository.findById(1L)).thenReturn(Optional.empty());
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.empty());
 
         //Act
         Level result = binService.getLastLevelReadingWithTimestamp(1L);
@@ -924,14 +1147,11 @@ public class BinServiceTest {
     public void getLastLevelReadingWithTimestamp_SuccessfulFlow_ReturnsLatestLevel() {
         //Arrange
         Bin bin = new Bin();
-        List<Level> levels = new ArrayList<>();
-        levels.add(new Level(59D, LocalDateTime.now().minusMinutes(90)));
-        levels.add(new Level(80D, LocalDateTime.now().minusMinutes(30)));
-        bin.setFillLevels(levels);
         bin.setId(1L);
+        Level latestLevel = new Level(bin, 80D, LocalDateTime.now().minusMinutes(30));
 
         //Mock
-        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(binRepository.findLatestFillLevelByBinId(1L)).thenReturn(Optional.of(latestLevel));
 
         //Act
         Level result = binService.getLastLevelReadingWithTimestamp(1L);
@@ -941,159 +1161,77 @@ public class BinServiceTest {
     }
 
     @Test
-    public void getBinsWithThresholdLessThanFillLevel_AllBinsHigherThreshold_ReturnsEmptyList() {
+    public void getFillLevelHistory_SuccessfulFlow_RequestsPageNewestFirst() {
         //Arrange
-        List<Bin> bins = new ArrayList<>();
-        Bin bin = new Bin(40D, 40D, 60D, 70D, LocalDateTime.now().minusMinutes(40), null);
-        List<Level> levels = new ArrayList<>();
-        Level level = new Level(60D, LocalDateTime.now().minusMinutes(40));
-        levels.add(level);
-        bin.setFillLevels(levels);
-        bins.add(bin);
-        bins.add(new Bin(40D, 40D, 12D, 50D, LocalDateTime.now().minusMinutes(40), null));
+        LocalDateTime from = LocalDateTime.of(2023, 12, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 12, 8, 0, 0);
+        Page<Level> levels = new PageImpl<>(List.of(new Level(80D, to.minusHours(1)), new Level(59D, to.minusHours(2))));
 
         //Mock
-        when(binRepository.findAll()).thenReturn(bins);
+        when(binRepository.existsById(1L)).thenReturn(true);
+        when(binRepository.findFillLevelHistory(eq(1L), eq(from), eq(to), any(Pageable.class))).thenReturn(levels);
 
         //Act
-        List<NotificationBinDto> result = binService.getBinsWithThresholdLessThanFillLevel();
+        Page<Level> result = binService.getFillLevelHistory(1L, from, to, 2, 50);
 
         //Assert
-        assertTrue(result.isEmpty());
+        assertSame(levels, result);
+        verify(binRepository).findFillLevelHistory(eq(1L), eq(from), eq(to), argThat(pageable -> pageable.getPageNumber() == 2
+                && pageable.getPageSize() == 50 && pageable.getSort().equals(Sort.by(Sort.Direction.DESC, "dateTime"))));
     }
 
     @Test
-    public void getBinsWithThresholdLessThanFillLevel_2BinsLowerThanThreshold_ReturnsListOfSize2() {
-        //Arrange
-        List<Bin> bins = new ArrayList<>();
-        Bin bin = new Bin(40D, 40D, 70D, 70D, LocalDateTime.now().minusMinutes(40), null);
-        bin.setId(1L);
-        List<Level> levels = new ArrayList<>();
-        Level level = new Level(70D, LocalDateTime.now().minusMinutes(40));
-        levels.add(level);
-        bin.setFillLevels(levels);
-        bins.add(bin);
-
-        Bin bin2 = new Bin(40D, 40D, 51D, 50D, LocalDateTime.now().minusMinutes(40), null);
-        bin2.setId(2L);
-        List<Level> levels2 = new ArrayList<>();
-        Level level2 = new Level(51D, LocalDateTime.now().minusMinutes(40));
-        levels2.add(level2);
-        bin2.setFillLevels(levels2);
-        bins.add(bin2);
-
-        Bin bin3 = new Bin(40D, 40D, 45D, 50D, LocalDateTime.now().minusMinutes(40), null);
-        bin3.setId(3L);
-        List<Level> levels3 = new ArrayList<>();
-        Level level3 = new Level(45D, LocalDateTime.now().minusMinutes(40));
-        levels3.add(level3);
-        bin3.setFillLevels(levels3);
-        bins.add(bin3);
-
-
+    public void getHumidityHistory_NoWindow_DefaultsToLastDay() {
         //Mock
-        when(binRepository.findAll()).thenReturn(bins);
-        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
-        when(binRepository.findById(2L)).thenReturn(Optional.of(bin2));
-        when(binRepository.findById(3L)).thenReturn(Optional.of(bin3));
+        when(binRepository.existsById(1L)).thenReturn(true);
+        when(binRepository.findHumidityHistory(eq(1L), any(LocalDateTime.class), any(LocalDateTime.class), any(Pageable.class))).thenReturn(Page.empty());
 
         //Act
-        List<NotificationBinDto> result = binService.getBinsWithThresholdLessThanFillLevel();
+        binService.getHumidityHistory(1L, null, null, 0, 100);
 
         //Assert
-        assertEquals(1, result.size());
+        verify(binRepository).findHumidityHistory(eq(1L), argThat(from -> from.isBefore(LocalDateTime.now().minusHours(23))),
+                argThat(to -> to.isAfter(LocalDateTime.now().minusMinutes(1))), any(Pageable.class));
     }
 
     @Test
-    public void verifyBinsFillLevel_hasActiveDevice_ReturnsCurrentLevel() {
+    public void getTemperatureHistory_InvalidRequest_ThrowsIllegalArgumentException() {
         //Arrange
-        Bin bin = new Bin(40D, 40D, 45D, 50D, LocalDateTime.now().minusMinutes(40), null);
-        bin.setDeviceId(1234);
-        bin.setId(1L);
-        List<Level> levels = new ArrayList<>();
-        Level level = new Level(70D, LocalDateTime.now().minusMinutes(40));
-        levels.add(level);
-        bin.setFillLevels(levels);
+        LocalDateTime now = LocalDateTime.now();
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh1 = new ServerSocketHandler(mockedSocket);
-        ssh1.setDeviceId(1234);
-        IoTDevices.add(ssh1);
+        //Act and assert
+        assertThrows(IllegalArgumentException.class, () -> binService.getTemperatureHistory(1L, now, now.minusDays(1), 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> binService.getTemperatureHistory(1L, null, null, 0, BinService.MAX_HISTORY_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> binService.getTemperatureHistory(1L, null, null, -1, 100));
+        verifyNoInteractions(binRepository);
+    }
 
+    @Test
+    public void getTemperatureHistory_BinNotFound_ThrowsNoSuchElementException() {
         //Mock
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
-        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
-
-        //Act
-        NotificationBinDto result = binService.verifyBinsFillLevel(bin);
+        when(binRepository.existsById(1L)).thenReturn(false);
 
-        assertEquals(70D, result.getLevelValue());
+        //Act and assert
+        assertThrows(NoSuchElementException.class, () -> binService.getTemperatureHistory(1L, null, null, 0, 100));
+        verify(binRepository, never()).findTemperatureHistory(anyLong(), any(), any(), any());
     }
 
     @Test
-    public void verifyBinsLevel_hasActiveDeviceButLowLevel_ReturnsNull() {
+    public void getBinsWithThresholdLessThanFillLevel_ReturnsAlertsWithoutScanningBins() {
         //Arrange
-        Bin bin = new Bin(40D, 40D, 45D, 50D, LocalDateTime.now().minusMinutes(40), null);
-        bin.setDeviceId(1234);
-        bin.setId(1L);
-        List<Level> levels = new ArrayList<>();
-        Level level = new Level(45D, LocalDateTime.now().minusMinutes(40));
-        levels.add(level);
-        bin.setFillLevels(levels);
-
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh1 = new ServerSocketHandler(mockedSocket);
-        ssh1.setDeviceId(1234);
-        IoTDevices.add(ssh1);
+        List<NotificationBinDto> alerts = List.of(new NotificationBinDto(50D, 2L, 51D, LocalDateTime.now().minusMinutes(40)));
 
         //Mock
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
-        when(binRepository.findById(1L)).thenReturn(Optional.of(bin));
+        when(alertEngine.getAlerts()).thenReturn(alerts);
 
         //Act
-        NotificationBinDto result = binService.verifyBinsFillLevel(bin);
+        List<NotificationBinDto> result = binService.getBinsWithThresholdLessThanFillLevel();
 
         //Assert
-        assertNull(result);
-    }
-
-
-    @Test
-    public void testSetLastEmptiedTime_WithLastPickupTime() {
-        // Arrange
-        Bin bin = new Bin();
-        bin.setId(1L);
-
-        LocalDateTime lastPickupTime = LocalDateTime.of(2023, 12, 5, 10, 0); // Simulating last pickup time
-        when(binRepository.findLastPickupTime(1L)).thenReturn(lastPickupTime);
-
-        // Act
-        binService.setLastEmptiedTime(bin);
-
-        // Assert
-        verify(binRepository, times(1)).findLastPickupTime(1L);
-        verify(binRepository, times(1)).save(bin);
-        assertEquals(lastPickupTime, bin.getEmptiedLast());
-    }
-
-    @Test
-    public void testSetLastEmptiedTime_WithoutLastPickupTime() {
-        // Arrange
-        Bin bin = new Bin();
-        bin.setId(1L);
-
-        // Simulating no last pickup time found
-        when(binRepository.findLastPickupTime(1L)).thenReturn(null);
-
-        // Act
-        binService.setLastEmptiedTime(bin);
-
-        // Assert
-        verify(binRepository, times(1)).findLastPickupTime(1L);
-        verify(binRepository, never()).save(bin);
-        assertNull(bin.getEmptiedLast());
+        assertEquals(alerts, result);
+        verify(binRepository, never()).findAll();
+        verify(binRepository, never()).findLatestFillLevels();
+        verify(tcpServer, never()).requestAsync(anyInt(), anyString(), any(Duration.class));
     }
 
     @Test
@@ -1106,12 +1244,7 @@ public class BinServiceTest {
         bin.setDeviceId(deviceId);
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
         when(tcpServer.setIoTData(deviceId, "activateBuzzer")).thenReturn(true);
 
         // Act
@@ -1131,12 +1264,7 @@ public class BinServiceTest {
         bin.setDeviceId(deviceId);
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
 
-        Socket mockedSocket = mock(Socket.class);
-        List<ServerSocketHandler> IoTDevices = new ArrayList<>();
-        ServerSocketHandler ssh = new ServerSocketHandler(mockedSocket);
-        ssh.setDeviceId(deviceId);
-        IoTDevices.add(ssh);
-        when(tcpServer.getIoTDevices()).thenReturn(IoTDevices);
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(true);
         when(tcpServer.setIoTData(deviceId, "activateBuzzer")).thenReturn(false);
 
         // Act
@@ -1156,7 +1284,7 @@ public class BinServiceTest {
         bin.setDeviceId(deviceId);
         when(binRepository.findById(binId)).thenReturn(Optional.of(bin));
 
-        when(tcpServer.getIoTDevices()).thenReturn(new ArrayList<>());
+        when(tcpServer.isDeviceConnected(deviceId)).thenReturn(false);
 
         // Act
         boolean response = binService.sendBuzzerActivationToIoT(123L);
@@ -1174,7 +1302,7 @@ public class BinServiceTest {
         // Act & Assert
         assertThrows(NoSuchElementException.class, () -> binService.sendBuzzerActivationToIoT(binId));
         verify(binRepository).findById(binId);
-        verifyNoInteractions(tcpServer);
+        verify(tcpServer, never()).requestAsync(anyInt(), anyString(), any(Duration.class));
     }
 
     @Test
@@ -1184,4 +1312,149 @@ public class BinServiceTest {
             binService.sendBuzzerActivationToIoT(null);
         });
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void startPeriodicLevelRequest_PollsOnlyBinsWithConnectedDevices() {
+        //Arrange
+        ServerSocketHandler connected = new ServerSocketHandler(mock(Socket.class));
+        connected.setDeviceId(11);
+        ArgumentCaptor<Supplier<Map<Long, Integer>>> targets = ArgumentCaptor.forClass(Supplier.class);
+
+        //Mock
+        when(tcpServer.getIoTDevices()).thenReturn(List.of(connected));
+        when(deviceIndex.getBinIds(11)).thenReturn(List.of(1L));
+
+        //Act
+        binService.startPeriodicLevelRequest(60);
+
+        //Assert
+        verify(pollingScheduler).start(eq(Duration.ofSeconds(60)), targets.capture(), any(), any());
+        assertEquals(Map.of(1L, 11), targets.getValue().get());
+        verify(binRepository, never()).findAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void startPeriodicLevelRequest_SkipsBinsWithLevelNewerThanMaxAge() {
+        //Arrange
+        ArgumentCaptor<BiPredicate<Long, Duration>> isFresh = ArgumentCaptor.forClass(BiPredicate.class);
+
+        //Mock
+        when(stateCache.peekReading(1L, SensorType.LEVEL)).thenReturn(Optional.of(new Level(40.0, LocalDateTime.now().minusSeconds(30))));
+        when(stateCache.peekReading(2L, SensorType.LEVEL)).thenReturn(Optional.of(new Level(40.0, LocalDateTime.now().minusSeconds(90))));
+        when(stateCache.peekReading(3L, SensorType.LEVEL)).thenReturn(Optional.empty());
+
+        //Act
+        binService.startPeriodicLevelRequest(60);
+
+        //Assert
+        verify(pollingScheduler).start(any(), any(), isFresh.capture(), any());
+        assertTrue(isFresh.getValue().test(1L, Duration.ofSeconds(54)));
+        assertFalse(isFresh.getValue().test(1L, Duration.ofSeconds(20)));
+        assertFalse(isFresh.getValue().test(2L, Duration.ofSeconds(54)));
+        assertFalse(isFresh.getValue().test(3L, Duration.ofSeconds(54)));
+    }
+
+    @Test
+    public void requestCurrentLevels_SavesLevelOfEveryConnectedDeviceWithoutAskingForStatus() {
+        //Arrange
+        ServerSocketHandler device = new ServerSocketHandler(mock(Socket.class));
+        device.setDeviceId(11);
+
+        //Mock
+        when(tcpServer.getIoTDevices()).thenReturn(List.of(device));
+        when(deviceIndex.getBinIds(11)).thenReturn(List.of(1L));
+        when(tcpServer.isDeviceConnected(11)).thenReturn(true);
+        when(tcpServer.requestAsync(eq(11), eq("getCurrentLevel"), any(Duration.class))).thenReturn(CompletableFuture.completedFuture("level:55.0"));
+        when(readingBuffer.save(any(SensorReading.class))).thenReturn(true);
+
+        //Act
+        binService.requestCurrentLevels();
+
+        //Assert
+        verify(readingBuffer).save(argThat(reading -> reading.getType() == SensorType.LEVEL && reading.getValue() == 55.0));
+        verify(tcpServer, never()).requestAsync(anyInt(), eq("getStatus"), any(Duration.class));
+    }
+
+    @Test
+    public void onDisconnected_MarksBinsOfDeviceOfflineAndPublishesStatus() {
+        //Mock
+        when(deviceIndex.getBinIds(11)).thenReturn(List.of(1L, 2L));
+        when(stateCache.putStatus(1L, "OFFLINE")).thenReturn("ACTIVE");
+        when(stateCache.putStatus(2L, "OFFLINE")).thenReturn("OFFLINE");
+
+        //Act
+        binService.onDisconnected(11);
+
+        //Assert
+        verify(eventStream, timeout(5000)).publish(argThat(event -> BinEventDto.STATUS.equals(event.getType())
+                && event.getBinId() == 1L && "OFFLINE".equals(event.getStatus())));
+        verify(stateCache, timeout(5000)).putStatus(2L, "OFFLINE");
+        verify(eventStream, never()).publish(argThat(event -> event.getBinId() == 2L));
+    }
+
+    @Test
+    public void onDisconnected_RunsOnBackgroundExecutorNotCommonPool() throws Exception {
+        //Mock
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        when(deviceIndex.getBinIds(11)).thenAnswer(invocation -> {
+            thread.complete(Thread.currentThread().getName());
+            return List.of();
+        });
+
+        //Act
+        binService.onDisconnected(11);
+
+        //Assert
+        assertEquals("bin-background", thread.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void onConnected_AsksDeviceForStatusAndPublishesIt() {
+        //Mock
+        when(deviceIndex.getBinIds(11)).thenReturn(List.of(1L));
+        when(tcpServer.isDeviceConnected(11)).thenReturn(true);
+        when(tcpServer.requestAsync(eq(11), eq("getStatus"), any(Duration.class))).thenReturn(CompletableFuture.completedFuture("statu:OK"));
+        when(stateCache.putStatus(1L, "ACTIVE")).thenReturn("OFFLINE");
+
+        //Act
+        binService.onConnected(11);
+
+        //Assert
+        verify(eventStream, timeout(5000)).publish(argThat(event -> BinEventDto.STATUS.equals(event.getType())
+                && event.getBinId() == 1L && "ACTIVE".equals(event.getStatus())));
+    }
+
+    @Test
+    public void getSensorSeries_NoWindow_DefaultsToLastDayAndLetsRollupsPickResolution() {
+        //Arrange
+        SensorSeriesDto series = new SensorSeriesDto(1L, "level", "raw", null, null, List.of());
+
+        //Mock
+        when(binRepository.existsById(1L)).thenReturn(true);
+        when(rollupService.getSeries(eq(SensorType.LEVEL), eq(1L), any(LocalDateTime.class), any(LocalDateTime.class), isNull())).thenReturn(series);
+
+        //Act
+        SensorSeriesDto result = binService.getSensorSeries(1L, SensorType.LEVEL, null, null, null);
+
+        //Assert
+        assertSame(series, result);
+        verify(rollupService).getSeries(eq(SensorType.LEVEL), eq(1L),
+                argThat(from -> from.isBefore(LocalDateTime.now().minusHours(23))), any(LocalDateTime.class), isNull());
+    }
+
+    @Test
+    public void getSensorSeries_UnknownBinOrEmptyWindow_Throws() {
+        //Arrange
+        LocalDateTime now = LocalDateTime.now();
+
+        //Mock
+        when(binRepository.existsById(99L)).thenReturn(false);
+
+        //Act & Assert
+        assertThrows(NoSuchElementException.class, () -> binService.getSensorSeries(99L, SensorType.HUMIDITY, null, null, Resolution.DAY));
+        assertThrows(IllegalArgumentException.class, () -> binService.getSensorSeries(1L, SensorType.HUMIDITY, now, now, null));
+        verifyNoInteractions(rollupService);
+    }
 }
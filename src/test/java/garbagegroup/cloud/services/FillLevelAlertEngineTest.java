@@ -0,0 +1,107 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.DTOs.NotificationBinDto;
+import garbagegroup.cloud.model.Bin;
+import garbagegroup.cloud.model.Level;
+import garbagegroup.cloud.repository.IBinRepository;
+import garbagegroup.cloud.service.serviceImplementation.FillLevelAlertEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FillLevelAlertEngineTest {
+    @Mock
+    private IBinRepository binRepository;
+
+    private FillLevelAlertEngine alertEngine;
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        alertEngine = new FillLevelAlertEngine(binRepository);
+        Bin bin1 = new Bin();
+        bin1.setId(1L);
+        Bin bin2 = new Bin();
+        bin2.setId(2L);
+        when(binRepository.findFillThresholds()).thenReturn(List.of(new Object[]{1L, 70D}, new Object[]{2L, 50D}, new Object[]{3L, 80D}));
+        when(binRepository.findLatestFillLevels()).thenReturn(List.of(new Level(bin1, 70D, now.minusMinutes(40)), new Level(bin2, 51D, now.minusMinutes(40))));
+    }
+
+    private List<Long> alertedBinIds() {
+        return alertEngine.getAlerts().stream().map(NotificationBinDto::getBinId).toList();
+    }
+
+    @Test
+    void testGetAlerts_LoadsStoredLevelsOnlyOnce() {
+        // Act
+        List<NotificationBinDto> alerts = alertEngine.getAlerts();
+        alertEngine.getAlerts();
+
+        // Assert
+        assertEquals(1, alerts.size());
+        assertEquals(2L, alerts.get(0).getBinId());
+        assertEquals(51D, alerts.get(0).getLevelValue());
+        assertEquals(50D, alerts.get(0).getFillThreshold());
+        verify(binRepository, times(1)).findFillThresholds();
+        verify(binRepository, times(1)).findLatestFillLevels();
+    }
+
+    @Test
+    void testOnLevel_CrossingTheThresholdAddsAndRemovesTheAlert() {
+        // Act
+        boolean rose = alertEngine.onLevel(3L, 85D, now);
+        List<Long> afterRise = alertedBinIds();
+        boolean stillOver = alertEngine.onLevel(3L, 90D, now);
+        boolean emptied = alertEngine.onLevel(2L, 10D, now);
+
+        // Assert
+        assertTrue(rose);
+        assertFalse(stillOver);
+        assertTrue(emptied);
+        assertEquals(List.of(2L, 3L), afterRise);
+        assertEquals(List.of(3L), alertedBinIds());
+        assertEquals(90D, alertEngine.getAlert(3L).orElseThrow().getLevelValue());
+        assertTrue(alertEngine.getAlert(2L).isEmpty());
+    }
+
+    @Test
+    void testOnLevel_OlderLevelOrUnknownBin_IsIgnored() {
+        // Act
+        alertEngine.onLevel(2L, 10D, now.minusHours(2));
+        alertEngine.onLevel(99L, 100D, now);
+
+        // Assert
+        assertEquals(List.of(2L), alertedBinIds());
+    }
+
+    @Test
+    void testPutBin_NewThresholdIsCheckedAgainstLastLevel() {
+        // Act
+        alertEngine.putBin(1L, 60D);
+        alertEngine.putBin(2L, 90D);
+        alertEngine.putBin(4L, 20D);
+        alertEngine.onLevel(4L, 30D, now);
+
+        // Assert
+        assertEquals(List.of(1L, 4L), alertedBinIds());
+    }
+
+    @Test
+    void testRemove_DeletedBinIsNoLongerAlerted() {
+        // Act
+        alertEngine.remove(2L);
+        alertEngine.onLevel(2L, 95D, now);
+
+        // Assert
+        assertTrue(alertEngine.getAlerts().isEmpty());
+    }
+}
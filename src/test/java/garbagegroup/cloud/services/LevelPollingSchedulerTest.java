@@ -0,0 +1,154 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.service.serviceImplementation.LevelPollingScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LevelPollingSchedulerTest {
+    private LevelPollingScheduler pollingScheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (pollingScheduler != null) pollingScheduler.stop();
+    }
+
+    private static Map<Long, Integer> bins(int count) {
+        Map<Long, Integer> bins = new LinkedHashMap<>();
+        for (int i = 1; i <= count; i++) bins.put((long) i, 100 + i);
+        return bins;
+    }
+
+    private Map<String, Long> awaitFirstCycle() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Map<String, Long> statistics = pollingScheduler.getStatistics();
+            if (statistics.containsKey("lastCycle.cycle")) return statistics;
+            Thread.sleep(20);
+        }
+        fail("The first polling cycle did not finish");
+        return null;
+    }
+
+    @Test
+    void testStart_PollsStaleBinsAndSkipsFreshOnes() throws InterruptedException {
+        // Arrange
+        pollingScheduler = new LevelPollingScheduler(64, 10);
+        Map<Long, Integer> polled = new ConcurrentHashMap<>();
+
+        // Act
+        pollingScheduler.start(Duration.ofMillis(500), () -> bins(20), (binId, maxAge) -> binId > 15, (binId, deviceId) -> {
+            polled.merge(binId, 1, Integer::sum);
+            return CompletableFuture.completedFuture(true);
+        });
+        Map<String, Long> statistics = awaitFirstCycle();
+
+        // Assert
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L), polled.keySet());
+        assertEquals(20L, statistics.get("lastCycle.bins"));
+        assertEquals(15L, statistics.get("lastCycle.polled"));
+        assertEquals(5L, statistics.get("lastCycle.skippedFresh"));
+        assertEquals(0L, statistics.get("lastCycle.failed"));
+    }
+
+    /**
+     * The first poll falls late in the bin's slot and the second one early, so they are less than an interval apart
+     * The level the first poll read must not count as fresh for the second one, otherwise the bin is skipped every so often
+     */
+    @Test
+    void testStart_SecondPollEarlierInSlot_LevelOfPreviousPollIsNotFresh() throws InterruptedException {
+        // Arrange
+        Deque<Long> jitters = new ConcurrentLinkedDeque<>(List.of(450_000_000L, 0L));
+        pollingScheduler = new LevelPollingScheduler(64, 2) {
+            @Override
+            protected long jitter(long slotNanos) {
+                Long jitter = jitters.poll();
+                return jitter == null ? 0 : jitter;
+            }
+        };
+        List<Long> polledAt = new CopyOnWriteArrayList<>();
+        List<Duration> maxAges = new CopyOnWriteArrayList<>();
+
+        // Act
+        pollingScheduler.start(Duration.ofMillis(1000), () -> Map.of(1L, 100), (binId, maxAge) -> {
+            maxAges.add(maxAge);
+            return !polledAt.isEmpty() && System.nanoTime() - polledAt.get(polledAt.size() - 1) < maxAge.toNanos();
+        }, (binId, deviceId) -> {
+            polledAt.add(System.nanoTime());
+            return CompletableFuture.completedFuture(true);
+        });
+        for (int i = 0; i < 150 && polledAt.size() < 2; i++) Thread.sleep(20);
+
+        // Assert
+        assertEquals(2, polledAt.size());
+        assertTrue(polledAt.get(1) - polledAt.get(0) < Duration.ofMillis(1000).toNanos());
+        assertEquals(Duration.ofMillis(500), maxAges.get(0));
+    }
+
+    @Test
+    void testStart_NeverRunsMoreThanMaxConcurrentPolls() throws InterruptedException {
+        // Arrange
+        pollingScheduler = new LevelPollingScheduler(3, 1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // Act
+        pollingScheduler.start(Duration.ofMillis(300), () -> bins(12), (binId, maxAge) -> false, (binId, deviceId) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                return true;
+            });
+        });
+        Map<String, Long> statistics = awaitFirstCycle();
+
+        // Assert
+        assertEquals(12L, statistics.get("lastCycle.polled"));
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test
+    void testStart_SlowOrFailingDevice_OnlyCountsAsFailed() throws InterruptedException {
+        // Arrange
+        pollingScheduler = new LevelPollingScheduler(64, 2);
+
+        // Act
+        pollingScheduler.start(Duration.ofMillis(200), () -> bins(4), (binId, maxAge) -> false, (binId, deviceId) -> {
+            if (binId == 1L) return CompletableFuture.completedFuture(false);
+            if (binId == 2L) throw new IllegalStateException("Device went away");
+            return CompletableFuture.completedFuture(true);
+        });
+        Map<String, Long> statistics = awaitFirstCycle();
+
+        // Assert
+        assertEquals(4L, statistics.get("lastCycle.polled"));
+        assertEquals(2L, statistics.get("lastCycle.failed"));
+        assertTrue(statistics.get("lastCycle.durationMs") < 1000);
+    }
+
+    @Test
+    void testStop_StopsPolling() {
+        // Arrange
+        pollingScheduler = new LevelPollingScheduler(64, 10);
+        pollingScheduler.start(Duration.ofSeconds(1), Map::of, (binId, maxAge) -> false, (binId, deviceId) -> CompletableFuture.completedFuture(true));
+
+        // Act
+        pollingScheduler.stop();
+
+        // Assert
+        assertFalse(pollingScheduler.isRunning());
+    }
+}
@@ -0,0 +1,74 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorPartitionRepository;
+import garbagegroup.cloud.service.serviceImplementation.SensorPartitionMaintainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.YearMonth;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SensorPartitionMaintainerTest {
+    private SensorPartitionRepository partitionRepository;
+    private SensorPartitionMaintainer maintainer;
+    private final YearMonth month = YearMonth.of(2024, 1);
+
+    @BeforeEach
+    void setUp() {
+        partitionRepository = mock(SensorPartitionRepository.class);
+        maintainer = new SensorPartitionMaintainer(partitionRepository, 2, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        maintainer.stop();
+    }
+
+    @Test
+    void testEnsurePartitions_CreatesMissingMonthsOfPartitionedTablesOnly() {
+        // Arrange
+        when(partitionRepository.isPartitioned(SensorType.LEVEL)).thenReturn(true);
+        when(partitionRepository.createPartition(eq(SensorType.LEVEL), any(YearMonth.class))).thenReturn(true);
+        when(partitionRepository.createPartition(SensorType.LEVEL, month)).thenReturn(false);     // Already there
+
+        // Act
+        int created = maintainer.ensurePartitions(month);
+
+        // Assert
+        assertEquals(2, created);
+        verify(partitionRepository).createPartition(SensorType.LEVEL, YearMonth.of(2024, 2));
+        verify(partitionRepository).createPartition(SensorType.LEVEL, YearMonth.of(2024, 3));
+        verify(partitionRepository, never()).createPartition(SensorType.LEVEL, YearMonth.of(2024, 4));
+        verify(partitionRepository, never()).createPartition(eq(SensorType.HUMIDITY), any());
+        verify(partitionRepository, never()).createPartition(eq(SensorType.TEMPERATURE), any());
+    }
+
+    @Test
+    void testEnsurePartitions_FailureOfOneTableDoesNotStopTheOthers() {
+        // Arrange
+        when(partitionRepository.isPartitioned(any(SensorType.class))).thenReturn(true);
+        when(partitionRepository.createPartition(eq(SensorType.HUMIDITY), any(YearMonth.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        when(partitionRepository.createPartition(eq(SensorType.TEMPERATURE), any(YearMonth.class))).thenReturn(true);
+
+        // Act
+        int created = maintainer.ensurePartitions(month);
+
+        // Assert
+        assertEquals(3, created);
+        verify(partitionRepository).createPartition(SensorType.LEVEL, YearMonth.of(2024, 3));
+    }
+
+    @Test
+    void testPartitionName_TableYearAndMonth() {
+        // Assert
+        assertEquals("level_2024_01", SensorPartitionRepository.partitionName(SensorType.LEVEL, month));
+        assertEquals("temperature_2025_12", SensorPartitionRepository.partitionName(SensorType.TEMPERATURE, YearMonth.of(2025, 12)));
+    }
+}
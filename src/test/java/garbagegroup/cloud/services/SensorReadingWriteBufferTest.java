@@ -0,0 +1,192 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.model.SensorReading;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorReadingBatchRepository;
+import garbagegroup.cloud.service.serviceImplementation.SensorReadingWriteBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorReadingWriteBufferTest {
+    @Mock
+    private SensorReadingBatchRepository batchRepository;
+
+    @Captor
+    private ArgumentCaptor<List<SensorReading>> humidity;
+
+    private SensorReadingWriteBuffer readingBuffer;
+
+    @AfterEach
+    void tearDown() {
+        if (readingBuffer != null) readingBuffer.shutdown();
+    }
+
+    private SensorReading reading(SensorType type, long binId, double value) {
+        return new SensorReading(type, binId, value, LocalDateTime.now());
+    }
+
+    @Test
+    void testSave_WriteBehindDisabled_InsertsReadingRightAway() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 100, 0);
+        SensorReading reading = reading(SensorType.HUMIDITY, 1, 25.0);
+        when(batchRepository.insertAll(SensorType.HUMIDITY, List.of(reading))).thenReturn(1);
+
+        // Act
+        boolean saved = readingBuffer.save(reading);
+
+        // Assert
+        assertTrue(saved);
+        assertEquals(0, readingBuffer.getQueuedCount());
+    }
+
+    @Test
+    void testSave_WriteBehindDisabled_BinNotFound_ReturnsFalse() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 100, 0);
+        when(batchRepository.insertAll(eq(SensorType.LEVEL), anyList())).thenReturn(0);
+
+        // Act
+        boolean saved = readingBuffer.save(reading(SensorType.LEVEL, 99, 40.0));
+
+        // Assert
+        assertFalse(saved);
+    }
+
+    @Test
+    void testSave_FillLevel_UpdatesPickUpTimeOfBin() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 100, 0);
+        SensorReading level = reading(SensorType.LEVEL, 1, 80.0);
+        when(batchRepository.insertAll(SensorType.LEVEL, List.of(level))).thenReturn(1);
+
+        // Act
+        readingBuffer.save(level);
+
+        // Assert
+        verify(batchRepository).updatePickUpTimes(List.of(level));
+    }
+
+    @Test
+    void testFlush_WritesOneBatchPerTable() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 100, 0);
+        readingBuffer.add(reading(SensorType.HUMIDITY, 1, 25.0));
+        readingBuffer.add(reading(SensorType.LEVEL, 1, 40.0));
+        readingBuffer.add(reading(SensorType.HUMIDITY, 2, 30.0));
+
+        // Act
+        readingBuffer.flush();
+
+        // Assert
+        verify(batchRepository).insertAll(eq(SensorType.HUMIDITY), humidity.capture());
+        assertEquals(2, humidity.getValue().size());
+        verify(batchRepository).insertAll(eq(SensorType.LEVEL), argThat(readings -> readings.size() == 1));
+        verify(batchRepository, never()).insertAll(eq(SensorType.TEMPERATURE), anyList());
+        verify(batchRepository).updatePickUpTimes(argThat(readings -> readings.size() == 1));
+        assertEquals(3, readingBuffer.getWrittenCount());
+        assertEquals(0, readingBuffer.getQueuedCount());
+    }
+
+    @Test
+    void testFlush_MoreReadingsThanBatchSize_WritesSeveralBatches() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 2, 1000, 100, 0);
+        for (int i = 0; i < 5; i++) readingBuffer.add(reading(SensorType.TEMPERATURE, 1, 20.0 + i));
+
+        // Act
+        readingBuffer.flush();
+
+        // Assert
+        verify(batchRepository, times(3)).insertAll(eq(SensorType.TEMPERATURE), anyList());
+        assertEquals(5, readingBuffer.getWrittenCount());
+    }
+
+    @Test
+    void testAdd_QueueFull_RejectsReadingAfterTimeout() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 1, 10);
+        assertTrue(readingBuffer.add(reading(SensorType.LEVEL, 1, 40.0)));
+
+        // Act
+        boolean added = readingBuffer.add(reading(SensorType.LEVEL, 1, 41.0));
+
+        // Assert
+        assertFalse(added);
+        assertEquals(1, readingBuffer.getRejectedCount());
+        assertEquals(1, readingBuffer.getQueuedCount());
+    }
+
+    @Test
+    void testEnabled_FullBatchIsWrittenInTheBackground() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, true, 3, 60_000, 100, 0);
+
+        // Act
+        for (int i = 0; i < 3; i++) readingBuffer.add(reading(SensorType.LEVEL, i + 1, 50.0));
+
+        // Assert
+        verify(batchRepository, timeout(2000)).insertAll(eq(SensorType.LEVEL), argThat(readings -> readings.size() == 3));
+    }
+
+    @Test
+    void testEnabled_PartialBatchIsWrittenAfterFlushInterval() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, true, 500, 50, 100, 0);
+
+        // Act
+        readingBuffer.add(reading(SensorType.HUMIDITY, 1, 25.0));
+
+        // Assert
+        verify(batchRepository, timeout(2000)).insertAll(eq(SensorType.HUMIDITY), argThat(readings -> readings.size() == 1));
+    }
+
+    /**
+     * The background thread has already taken the reading off the queue and waits for more to fill its batch,
+     * flush() still has to return only once that reading is in the DB
+     */
+    @Test
+    void testFlush_BackgroundThreadHoldsPartialBatch_WaitsUntilItIsWritten() throws InterruptedException {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, true, 500, 60_000, 100, 1000);
+        readingBuffer.add(reading(SensorType.LEVEL, 1, 40.0));
+        for (int i = 0; i < 100 && readingBuffer.getQueuedCount() > 0; i++) Thread.sleep(10);
+        assertEquals(0, readingBuffer.getQueuedCount());
+
+        // Act
+        readingBuffer.flush();
+
+        // Assert
+        verify(batchRepository).insertAll(eq(SensorType.LEVEL), argThat(readings -> readings.size() == 1));
+        verify(batchRepository).updatePickUpTimes(argThat(readings -> readings.size() == 1));
+        assertEquals(1, readingBuffer.getWrittenCount());
+    }
+
+    @Test
+    void testWrite_RepositoryFails_ReadingsAreCountedAsFailed() {
+        // Arrange
+        readingBuffer = new SensorReadingWriteBuffer(batchRepository, false, 500, 1000, 100, 0);
+        when(batchRepository.insertAll(eq(SensorType.LEVEL), anyList())).thenThrow(new RuntimeException("DB is down"));
+        readingBuffer.add(reading(SensorType.LEVEL, 1, 40.0));
+
+        // Act
+        readingBuffer.flush();
+
+        // Assert
+        assertEquals(1, readingBuffer.getFailedCount());
+        assertEquals(0, readingBuffer.getWrittenCount());
+    }
+}
@@ -0,0 +1,140 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorPartitionRepository;
+import garbagegroup.cloud.repository.SensorReadingBatchRepository;
+import garbagegroup.cloud.repository.SensorRollupRepository;
+import garbagegroup.cloud.service.serviceImplementation.SensorRetentionService;
+import garbagegroup.cloud.service.serviceImplementation.SensorRollupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SensorRetentionServiceTest {
+    private SensorPartitionRepository partitionRepository;
+    private SensorReadingBatchRepository batchRepository;
+    private SensorRollupRepository rollupRepository;
+    private SensorRollupService rollupService;
+    private SensorRetentionService retentionService;
+
+    @BeforeEach
+    void setUp() {
+        partitionRepository = mock(SensorPartitionRepository.class);
+        batchRepository = mock(SensorReadingBatchRepository.class);
+        rollupRepository = mock(SensorRollupRepository.class);
+        rollupService = mock(SensorRollupService.class);
+        when(rollupService.getRolledUpUntil(any(SensorType.class))).thenReturn(Optional.of(LocalDateTime.now().minusHours(1)));
+        // Humidity kept forever, temperature and level for 30 days, hourly aggregates for a year and daily ones forever
+        retentionService = new SensorRetentionService(partitionRepository, batchRepository, rollupRepository, rollupService,
+                0, 30, 30, 365, 0, 100, 0, 5000, 0, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retentionService.stop();
+    }
+
+    @Test
+    void testPurge_PlainTable_DeletesInBatchesUntilOneComesBackShort() {
+        // Arrange
+        when(batchRepository.deleteOlderThan(eq(SensorType.LEVEL), any(), eq(100))).thenReturn(100, 100, 40);
+
+        // Act
+        Map<String, Long> run = retentionService.purge();
+
+        // Assert
+        verify(batchRepository, times(3)).deleteOlderThan(eq(SensorType.LEVEL), argThat(cutoff ->
+                cutoff.isBefore(LocalDateTime.now().minusDays(29)) && cutoff.isAfter(LocalDateTime.now().minusDays(31))), eq(100));
+        verify(batchRepository, never()).deleteOlderThan(eq(SensorType.HUMIDITY), any(), anyInt());
+        verify(partitionRepository, never()).dropPartition(any(), any(), anyLong());
+        assertEquals(240L, run.get("rawPurged"));
+        assertEquals(240L, retentionService.getStatistics().get("lastRun.rawPurged"));
+    }
+
+    @Test
+    void testPurge_PartitionedTable_DropsMonthsEntirelyPastRetentionAndDeletesTheRest() {
+        // Arrange
+        YearMonth current = YearMonth.now();
+        when(partitionRepository.isPartitioned(SensorType.TEMPERATURE)).thenReturn(true);
+        when(partitionRepository.findPartitionMonths(SensorType.TEMPERATURE))
+                .thenReturn(List.of(current.minusMonths(4), current.minusMonths(3), current, current.plusMonths(1)));
+        when(partitionRepository.dropPartition(eq(SensorType.TEMPERATURE), any(), eq(5000L))).thenReturn(1000L);
+
+        // Act
+        Map<String, Long> run = retentionService.purge();
+
+        // Assert
+        verify(partitionRepository).dropPartition(SensorType.TEMPERATURE, current.minusMonths(4), 5000);
+        verify(partitionRepository).dropPartition(SensorType.TEMPERATURE, current.minusMonths(3), 5000);
+        verify(partitionRepository, never()).dropPartition(SensorType.TEMPERATURE, current, 5000);
+        verify(batchRepository).deleteOlderThan(eq(SensorType.TEMPERATURE), any(), eq(100));
+        assertEquals(2L, run.get("partitionsDropped"));
+        assertEquals(2000L, run.get("rawPurged"));
+    }
+
+    /**
+     * The bin stopped reporting months ago, its last reading is the only one telling its current fill level
+     */
+    @Test
+    void testPurge_BinWithOnlyStaleReadings_MonthHoldingItsNewestReadingIsNotDropped() {
+        // Arrange
+        YearMonth current = YearMonth.now();
+        when(partitionRepository.isPartitioned(SensorType.LEVEL)).thenReturn(true);
+        when(partitionRepository.findPartitionMonths(SensorType.LEVEL)).thenReturn(List.of(current.minusMonths(4), current.minusMonths(3)));
+        when(partitionRepository.holdsNewestReading(SensorType.LEVEL, current.minusMonths(3))).thenReturn(true);
+        when(partitionRepository.dropPartition(eq(SensorType.LEVEL), any(), eq(5000L))).thenReturn(1000L);
+        when(batchRepository.deleteOlderThan(eq(SensorType.LEVEL), any(), eq(100))).thenReturn(20);
+
+        // Act
+        Map<String, Long> run = retentionService.purge();
+
+        // Assert
+        verify(partitionRepository).dropPartition(SensorType.LEVEL, current.minusMonths(4), 5000);
+        verify(partitionRepository, never()).dropPartition(SensorType.LEVEL, current.minusMonths(3), 5000);
+        verify(batchRepository).deleteOlderThan(eq(SensorType.LEVEL), any(), eq(100));
+        assertEquals(1L, run.get("partitionsDropped"));
+        assertEquals(1020L, run.get("rawPurged"));
+    }
+
+    @Test
+    void testPurge_ReadingsNotRolledUpYet_AreKept() {
+        // Arrange
+        when(rollupService.getRolledUpUntil(SensorType.LEVEL)).thenReturn(Optional.empty());
+
+        // Act
+        retentionService.purge();
+
+        // Assert
+        verify(batchRepository, never()).deleteOlderThan(eq(SensorType.LEVEL), any(), anyInt());
+        verify(batchRepository).deleteOlderThan(eq(SensorType.TEMPERATURE), any(), anyInt());
+    }
+
+    @Test
+    void testPurge_RollupsPurgedPerResolutionAndFailuresCounted() {
+        // Arrange
+        when(rollupRepository.deleteOlderThan(eq(Resolution.HOUR), any(), eq(100))).thenReturn(7);
+        when(partitionRepository.isPartitioned(SensorType.LEVEL)).thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        // Act
+        Map<String, Long> run = retentionService.purge();
+
+        // Assert
+        verify(rollupRepository).deleteOlderThan(eq(Resolution.HOUR), argThat(cutoff -> cutoff.isBefore(LocalDateTime.now().minusDays(364))), eq(100));
+        verify(rollupRepository, never()).deleteOlderThan(eq(Resolution.DAY), any(), anyInt());
+        assertEquals(7L, run.get("rollupsPurged"));
+        assertEquals(1L, retentionService.getStatistics().get("failures"));
+        assertTrue(run.containsKey("millis"));
+    }
+}
@@ -0,0 +1,125 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.DTOs.SensorPointDto;
+import garbagegroup.cloud.DTOs.SensorSeriesDto;
+import garbagegroup.cloud.model.Resolution;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.repository.SensorRollupRepository;
+import garbagegroup.cloud.service.serviceImplementation.SensorRollupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SensorRollupServiceTest {
+    private SensorRollupRepository rollupRepository;
+    private SensorRollupService rollupService;
+    private final LocalDateTime from = LocalDateTime.of(2024, 1, 1, 10, 30);
+
+    @BeforeEach
+    void setUp() {
+        rollupRepository = mock(SensorRollupRepository.class);
+        rollupService = new SensorRollupService(rollupRepository, 0, 3600000, 1000, 86400000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rollupService.stop();
+    }
+
+    @Test
+    void testChooseResolution_FinestThatFitsTheWindow() {
+        // Assert
+        assertEquals(Resolution.RAW, rollupService.chooseResolution(from, from.plusHours(12)));
+        assertEquals(Resolution.HOUR, rollupService.chooseResolution(from, from.plusDays(30)));
+        assertEquals(Resolution.DAY, rollupService.chooseResolution(from, from.plusDays(90)));
+    }
+
+    @Test
+    void testGetSeries_LongWindow_ReadsDailyAggregatesFromStartOfFirstDay() {
+        // Arrange
+        List<SensorPointDto> days = List.of(new SensorPointDto(from.toLocalDate().atStartOfDay(), 10, 90, 45, 80, 288));
+        when(rollupRepository.findRollups(SensorType.LEVEL, Resolution.DAY, 1L, from.toLocalDate().atStartOfDay(), from.plusDays(90))).thenReturn(days);
+
+        // Act
+        SensorSeriesDto series = rollupService.getSeries(SensorType.LEVEL, 1L, from, from.plusDays(90), null);
+
+        // Assert
+        assertEquals("day", series.getResolution());
+        assertEquals("level", series.getSensor());
+        assertSame(days, series.getPoints());
+        verify(rollupRepository, never()).findReadings(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void testGetSeries_ShortWindowWithTooManyReadings_FallsBackToHours() {
+        // Arrange
+        when(rollupRepository.findReadings(SensorType.HUMIDITY, 1L, from, from.plusHours(6), 1001))
+                .thenReturn(Collections.nCopies(1001, SensorPointDto.reading(from, 40)));
+
+        // Act
+        SensorSeriesDto series = rollupService.getSeries(SensorType.HUMIDITY, 1L, from, from.plusHours(6), null);
+
+        // Assert
+        assertEquals("hour", series.getResolution());
+        verify(rollupRepository).findRollups(SensorType.HUMIDITY, Resolution.HOUR, 1L, from.withMinute(0), from.plusHours(6));
+    }
+
+    @Test
+    void testGetSeries_RequestedResolutionWithTooManyPoints_Throws() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> rollupService.getSeries(SensorType.LEVEL, 1L, from, from.plusDays(90), Resolution.HOUR));
+        verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    void testRollUp_FirstRunStartsAtOldestReadingAndLaterRunsAtLastRunMinusLateness() {
+        // Arrange
+        LocalDateTime oldest = LocalDateTime.now().minusDays(2).withMinute(15);
+        when(rollupRepository.findLastBucket(any(SensorType.class), any())).thenReturn(Optional.empty());
+        when(rollupRepository.findFirstReading(any(SensorType.class))).thenReturn(Optional.empty());
+        when(rollupRepository.findFirstReading(SensorType.LEVEL)).thenReturn(Optional.of(oldest));
+        when(rollupRepository.rollUpHours(eq(SensorType.LEVEL), any(), any())).thenReturn(5);
+
+        // Act
+        rollupService.rollUp();
+        rollupService.rollUp();
+
+        // Assert
+        LocalDateTime oldestHour = oldest.truncatedTo(ChronoUnit.HOURS);
+        verify(rollupRepository).rollUpHours(SensorType.LEVEL, oldestHour, oldestHour.plusDays(1));
+        verify(rollupRepository, times(4)).rollUpHours(eq(SensorType.LEVEL), any(), any());   // 3 chunks, then the last hour or two
+        verify(rollupRepository).rollUpDays(SensorType.LEVEL, oldest.toLocalDate().atStartOfDay(), LocalDateTime.now().toLocalDate().plusDays(1).atStartOfDay());
+        verify(rollupRepository, never()).rollUpHours(eq(SensorType.HUMIDITY), any(), any());
+        assertEquals(2L, rollupService.getStatistics().get("runs"));
+        assertEquals(20L, rollupService.getStatistics().get("hourly"));
+    }
+
+    @Test
+    void testRollUp_FailingSensorTypeIsCountedAndOthersStillRollUp() {
+        // Arrange
+        LocalDateTime lastBucket = LocalDateTime.now().minusHours(1).truncatedTo(ChronoUnit.HOURS);
+        when(rollupRepository.findLastBucket(any(SensorType.class), any())).thenReturn(Optional.of(lastBucket));
+        when(rollupRepository.rollUpHours(eq(SensorType.TEMPERATURE), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // Act
+        rollupService.rollUp();
+
+        // Assert
+        verify(rollupRepository).rollUpHours(eq(SensorType.HUMIDITY), eq(lastBucket), any());
+        verify(rollupRepository).rollUpDays(eq(SensorType.LEVEL), any(), any());
+        verify(rollupRepository, never()).rollUpDays(eq(SensorType.TEMPERATURE), any(), any());
+        assertEquals(1L, rollupService.getStatistics().get("failures"));
+    }
+}
@@ -0,0 +1,114 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.model.Humidity;
+import garbagegroup.cloud.model.Level;
+import garbagegroup.cloud.model.SensorType;
+import garbagegroup.cloud.service.serviceImplementation.SensorStateCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorStateCacheTest {
+
+    @Test
+    void testGetReading_FreshReading_CountsHit() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 30000);
+        Level level = new Level(40.0, LocalDateTime.now().minusMinutes(5));
+        stateCache.putReading(1L, SensorType.LEVEL, level);
+
+        // Act and Assert
+        assertSame(level, stateCache.getReading(1L, SensorType.LEVEL).get());
+        assertTrue(stateCache.getReading(1L, SensorType.HUMIDITY).isEmpty());
+        assertEquals(1, stateCache.getHitCount());
+        assertEquals(1, stateCache.getMissCount());
+    }
+
+    @Test
+    void testGetReading_OlderThanOneHour_IsMiss() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 30000);
+        stateCache.putReading(1L, SensorType.HUMIDITY, new Humidity(null, 25.0, LocalDateTime.now().minusMinutes(61)));
+
+        // Act and Assert
+        assertTrue(stateCache.getReading(1L, SensorType.HUMIDITY).isEmpty());
+        assertEquals(1, stateCache.getMissCount());
+    }
+
+    @Test
+    void testGetReading_ReadingTtlPerSensorType() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 30000, 3600000, 3600000, 600000);
+        stateCache.putReading(1L, SensorType.LEVEL, new Level(40.0, LocalDateTime.now().minusMinutes(15)));
+        stateCache.putReading(1L, SensorType.HUMIDITY, new Humidity(null, 25.0, LocalDateTime.now().minusMinutes(15)));
+
+        // Act and Assert
+        assertTrue(stateCache.getReading(1L, SensorType.LEVEL).isEmpty());
+        assertTrue(stateCache.getReading(1L, SensorType.HUMIDITY).isPresent());
+        assertEquals(Duration.ofMinutes(10), stateCache.getReadingTtl(SensorType.LEVEL));
+        assertEquals(SensorStateCache.READING_TTL, stateCache.getReadingTtl(SensorType.TEMPERATURE));
+    }
+
+    @Test
+    void testPutReading_OlderReadingDoesNotReplaceNewerOne() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 30000);
+        Level newer = new Level(50.0, LocalDateTime.now().minusMinutes(1));
+        stateCache.putReading(1L, SensorType.LEVEL, newer);
+
+        // Act
+        stateCache.putReading(1L, SensorType.LEVEL, new Level(40.0, LocalDateTime.now().minusMinutes(10)));
+
+        // Assert
+        assertSame(newer, stateCache.getReading(1L, SensorType.LEVEL).get());
+    }
+
+    @Test
+    void testPutReading_OverCapacity_EvictsLeastRecentlyUsedBin() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(2, 30000);
+        stateCache.putReading(1L, SensorType.LEVEL, new Level(10.0, LocalDateTime.now()));
+        stateCache.putReading(2L, SensorType.LEVEL, new Level(20.0, LocalDateTime.now()));
+        stateCache.getReading(1L, SensorType.LEVEL);
+
+        // Act
+        stateCache.putReading(3L, SensorType.LEVEL, new Level(30.0, LocalDateTime.now()));
+
+        // Assert
+        assertEquals(2, stateCache.size());
+        assertEquals(1, stateCache.getEvictionCount());
+        assertTrue(stateCache.getReading(1L, SensorType.LEVEL).isPresent());
+        assertTrue(stateCache.getReading(2L, SensorType.LEVEL).isEmpty());
+    }
+
+    @Test
+    void testGetStatus_ExpiresAfterStatusTtl() throws InterruptedException {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 50);
+        stateCache.putStatus(1L, "ACTIVE");
+
+        // Act and Assert
+        assertEquals("ACTIVE", stateCache.getStatus(1L));
+        Thread.sleep(100);
+        assertNull(stateCache.getStatus(1L));
+    }
+
+    @Test
+    void testEvict_ForgetsBin() {
+        // Arrange
+        SensorStateCache stateCache = new SensorStateCache(100, 30000);
+        stateCache.putReading(1L, SensorType.LEVEL, new Level(10.0, LocalDateTime.now()));
+        stateCache.putStatus(1L, "ACTIVE");
+
+        // Act
+        stateCache.evict(1L);
+
+        // Assert
+        assertTrue(stateCache.getReading(1L, SensorType.LEVEL).isEmpty());
+        assertNull(stateCache.getStatus(1L));
+        assertEquals(0, stateCache.size());
+    }
+}
@@ -0,0 +1,101 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.service.serviceImplementation.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testExecute_SameKeyWhileRunning_SharesTheCall() {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        // Act
+        CompletableFuture<String> first = singleFlight.execute("1/getCurrentLevel", () -> {
+            calls.incrementAndGet();
+            return reply;
+        });
+        CompletableFuture<String> second = singleFlight.execute("1/getCurrentLevel", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("level:10.0");
+        });
+        reply.complete("level:55.0");
+
+        // Assert
+        assertEquals(1, calls.get());
+        assertEquals("level:55.0", first.join());
+        assertEquals("level:55.0", second.join());
+        assertEquals(1L, singleFlight.getStatistics().get("coalesced"));
+        assertEquals(0L, singleFlight.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void testExecute_DifferentKeysOrAfterCompletion_StartsNewCalls() {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        singleFlight.execute("1/getCurrentLevel", () -> reply);
+
+        // Act
+        String otherPayload = singleFlight.execute("1/getHumidity", () -> CompletableFuture.completedFuture("humid:40.0")).join();
+        reply.complete("level:55.0");
+        String afterCompletion = singleFlight.execute("1/getCurrentLevel", () -> CompletableFuture.completedFuture("level:60.0")).join();
+
+        // Assert
+        assertEquals("humid:40.0", otherPayload);
+        assertEquals("level:60.0", afterCompletion);
+        assertEquals(3L, singleFlight.getStatistics().get("calls"));
+        assertEquals(0L, singleFlight.getStatistics().get("coalesced"));
+    }
+
+    @Test
+    void testExecute_BlockingCall_OtherThreadsWaitForItsResult() throws Exception {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("1/getStatus", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return CompletableFuture.completedFuture("statu:OK");
+        }).join());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        CompletableFuture<String> follower = singleFlight.execute("1/getStatus", () -> CompletableFuture.completedFuture("statu:NOT OK"));
+        release.countDown();
+
+        // Assert
+        assertEquals("statu:OK", follower.get(5, TimeUnit.SECONDS));
+        assertEquals("statu:OK", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExecute_CallFails_AllCallersSeeTheFailureAndNextCallRuns() {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        // Act
+        CompletableFuture<String> failed = singleFlight.execute("1/getStatus", () -> {
+            throw new IllegalStateException("device gone");
+        });
+        String next = singleFlight.execute("1/getStatus", () -> CompletableFuture.completedFuture("statu:OK")).join();
+
+        // Assert
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("statu:OK", next);
+    }
+}
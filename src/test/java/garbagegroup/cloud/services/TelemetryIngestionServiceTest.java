@@ -0,0 +1,89 @@
+package garbagegroup.cloud.services;
+
+import garbagegroup.cloud.service.serviceImplementation.BinDeviceIndex;
+import garbagegroup.cloud.service.serviceImplementation.TelemetryIngestionService;
+import garbagegroup.cloud.service.serviceInterface.IBinService;
+import garbagegroup.cloud.tcpserver.ITCPServer;
+import garbagegroup.cloud.tcpserver.Telemetry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TelemetryIngestionServiceTest {
+    @Mock
+    private IBinService binService;
+
+    @Mock
+    private BinDeviceIndex deviceIndex;
+
+    @Mock
+    private ITCPServer tcpServer;
+
+    private TelemetryIngestionService telemetryIngestionService;
+
+    @BeforeEach
+    void setUp() {
+        telemetryIngestionService = new TelemetryIngestionService(binService, deviceIndex, tcpServer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        telemetryIngestionService.shutdown();
+    }
+
+    @Test
+    void testConstructor_RegistersAsTelemetryListener() {
+        verify(tcpServer).setTelemetryListener(telemetryIngestionService);
+    }
+
+    @Test
+    void testOnTelemetry_SavesReadingForTheDevicesBinOffTheCallingThread() {
+        // Arrange
+        LocalDateTime receivedAt = LocalDateTime.now();
+        when(deviceIndex.getBinIds(3456)).thenReturn(List.of(1L));
+
+        // Act
+        telemetryIngestionService.onTelemetry(new Telemetry(3456, "level", 42.5, receivedAt));
+
+        // Assert
+        verify(binService, timeout(2000)).saveFillLevelByBinId(1, 42.5, receivedAt);
+        verify(binService, never()).saveHumidityByBinId(anyInt(), anyDouble(), any());
+    }
+
+    @Test
+    void testSave_DeviceNotAttachedToBin_SavesNothing() {
+        // Arrange
+        when(deviceIndex.getBinIds(3456)).thenReturn(Collections.emptyList());
+
+        // Act
+        telemetryIngestionService.save(new Telemetry(3456, "humid", 25.0, LocalDateTime.now()));
+
+        // Assert
+        verifyNoInteractions(binService);
+        assertEquals(0, telemetryIngestionService.getIngestedCount());
+    }
+
+    @Test
+    void testSave_RepositoryFails_ReadingIsCountedAsDropped() {
+        // Arrange
+        when(deviceIndex.getBinIds(3456)).thenThrow(new RuntimeException("DB is down"));
+
+        // Act
+        telemetryIngestionService.save(new Telemetry(3456, "tempe", 21.0, LocalDateTime.now()));
+
+        // Assert
+        assertEquals(1, telemetryIngestionService.getDroppedCount());
+    }
+}
@@ -0,0 +1,106 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ConnectionMonitorTest {
+    private DeviceRegistry deviceRegistry;
+    private List<ServerSocketHandler> heartbeatsSent;
+    private CompletableFuture<String> heartbeatReply;
+    private ConnectionMonitor connectionMonitor;
+
+    @BeforeEach
+    void setUp() {
+        deviceRegistry = new DeviceRegistry();
+        heartbeatsSent = new ArrayList<>();
+        heartbeatReply = new CompletableFuture<>();
+        connectionMonitor = new ConnectionMonitor(deviceRegistry, Duration.ofSeconds(30), Duration.ofSeconds(90), device -> {
+            heartbeatsSent.add(device);
+            return heartbeatReply;
+        });
+    }
+
+    private ServerSocketHandler device(int deviceId, Duration idleTime) {
+        ServerSocketHandler handler = new ServerSocketHandler(mock(Socket.class)) {
+            @Override
+            public Duration getIdleTime() {
+                return idleTime;
+            }
+        };
+        handler.setDeviceId(deviceId);
+        handler.setOnClose(deviceRegistry::unregister);
+        deviceRegistry.register(handler);
+        return handler;
+    }
+
+    @Test
+    void testCheck_RecentlyActiveDevice_IsLeftAlone() {
+        // Arrange
+        ServerSocketHandler device = device(1, Duration.ofSeconds(5));
+
+        // Act
+        connectionMonitor.check();
+
+        // Assert
+        assertTrue(heartbeatsSent.isEmpty());
+        assertTrue(deviceRegistry.contains(1));
+        assertFalse(device.isClosed());
+    }
+
+    @Test
+    void testCheck_SilentDevice_GetsOneHeartbeatAndStaysIfItAnswers() {
+        // Arrange
+        ServerSocketHandler device = device(1, Duration.ofSeconds(40));
+
+        // Act
+        connectionMonitor.check();
+        connectionMonitor.check();      // Still waiting for the first heartbeat's reply
+        heartbeatReply.complete("statu:OK");
+
+        // Assert
+        assertEquals(List.of(device), heartbeatsSent);
+        assertTrue(deviceRegistry.contains(1));
+        assertEquals(1L, connectionMonitor.getStatistics().get("heartbeats"));
+    }
+
+    @Test
+    void testCheck_HeartbeatTimesOut_DeviceIsEvicted() {
+        // Arrange
+        ServerSocketHandler device = device(1, Duration.ofSeconds(40));
+
+        // Act
+        connectionMonitor.check();
+        heartbeatReply.completeExceptionally(new TimeoutException());
+
+        // Assert
+        assertFalse(deviceRegistry.contains(1));
+        assertTrue(device.isClosed());
+        assertEquals(1L, connectionMonitor.getStatistics().get("evictions"));
+    }
+
+    @Test
+    void testCheck_DeviceSilentForIdleTimeout_IsEvictedWithoutHeartbeat() {
+        // Arrange
+        ServerSocketHandler device = device(1, Duration.ofSeconds(120));
+        device(2, Duration.ofSeconds(1));
+
+        // Act
+        connectionMonitor.check();
+
+        // Assert
+        assertTrue(heartbeatsSent.isEmpty());
+        assertFalse(deviceRegistry.contains(1));
+        assertTrue(deviceRegistry.contains(2));
+        assertTrue(device.isClosed());
+    }
+}
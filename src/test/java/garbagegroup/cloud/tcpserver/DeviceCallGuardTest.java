@@ -0,0 +1,144 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceCallGuardTest {
+
+    @Test
+    void testCall_FailuresReachThreshold_OpensCircuitAndFailsFast() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(3, 60000, 4);
+        AtomicInteger sent = new AtomicInteger();
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            guard.call(1, () -> {
+                sent.incrementAndGet();
+                return ServerSocketHandler.disconnectedReply(1);
+            });
+        }
+        String response = guard.call(1, () -> {
+            sent.incrementAndGet();
+            return "OK";
+        });
+
+        // Assert
+        assertEquals("", response);
+        assertEquals(3, sent.get());
+        assertEquals(DeviceCallGuard.State.OPEN, guard.getState(1));
+        assertEquals(DeviceCallGuard.State.CLOSED, guard.getState(2));
+        assertEquals(1L, guard.getStatistics().get("open"));
+        assertEquals(1L, guard.getStatistics().get("rejectedOpen"));
+    }
+
+    @Test
+    void testCall_SuccessBetweenFailures_KeepsCircuitClosed() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(2, 60000, 4);
+
+        // Act
+        guard.call(1, () -> "");
+        guard.call(1, () -> "50.0");
+        guard.call(1, () -> "");
+
+        // Assert
+        assertEquals(DeviceCallGuard.State.CLOSED, guard.getState(1));
+        assertTrue(guard.getUnhealthyDevices().isEmpty());
+    }
+
+    @Test
+    void testCall_OpenDurationPassed_TrialDecidesState() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(1, 0, 4);
+        guard.call(1, () -> "");
+        assertEquals(DeviceCallGuard.State.HALF_OPEN, guard.getState(1));
+
+        // Act
+        guard.call(1, () -> "");
+        DeviceCallGuard.State afterFailedTrial = guard.getUnhealthyDevices().get(1);
+        String response = guard.call(1, () -> "OK");
+
+        // Assert
+        assertEquals(DeviceCallGuard.State.HALF_OPEN, afterFailedTrial);     // Reopened, and with no open duration half-open right away
+        assertEquals("OK", response);
+        assertEquals(DeviceCallGuard.State.CLOSED, guard.getState(1));
+        assertEquals(2L, guard.getStatistics().get("opened"));
+    }
+
+    @Test
+    void testCallAsync_HalfOpen_LetsOnlyOneTrialThrough() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(1, 0, 4);
+        guard.call(1, () -> "");
+        CompletableFuture<String> trialReply = new CompletableFuture<>();
+
+        // Act
+        CompletableFuture<String> trial = guard.callAsync(1, () -> trialReply);
+        CompletableFuture<String> second = guard.callAsync(1, () -> CompletableFuture.completedFuture("OK"));
+        trialReply.complete("OK");
+
+        // Assert
+        assertEquals("", second.join());
+        assertEquals("OK", trial.join());
+        assertEquals(DeviceCallGuard.State.CLOSED, guard.getState(1));
+    }
+
+    @Test
+    void testCallAsync_BulkheadFull_RejectsUntilACallCompletes() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(5, 60000, 2);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        guard.callAsync(1, () -> first);
+        guard.callAsync(1, () -> second);
+
+        // Act
+        CompletableFuture<String> rejected = guard.callAsync(1, () -> CompletableFuture.completedFuture("OK"));
+        CompletableFuture<String> otherDevice = guard.callAsync(2, () -> CompletableFuture.completedFuture("OK"));
+        first.complete("OK");
+        CompletableFuture<String> afterRelease = guard.callAsync(1, () -> CompletableFuture.completedFuture("OK"));
+
+        // Assert
+        assertEquals("", rejected.join());
+        assertEquals("OK", otherDevice.join());
+        assertEquals("OK", afterRelease.join());
+        assertEquals(1L, guard.getStatistics().get("rejectedBulkhead"));
+    }
+
+    @Test
+    void testCallAsync_TimedOutReply_CountsAsFailure() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(1, 60000, 4);
+
+        // Act
+        CompletableFuture<String> reply = guard.callAsync(1, () -> CompletableFuture.failedFuture(new TimeoutException()));
+
+        // Assert
+        assertTrue(reply.isCompletedExceptionally());
+        assertEquals(DeviceCallGuard.State.OPEN, guard.getState(1));
+        assertEquals(1L, guard.getStatistics().get("failures"));
+    }
+
+    @Test
+    void testCallAsync_TimedOutWhileQueued_CountsAsRejectionNotFailure() {
+        // Arrange
+        DeviceCallGuard guard = new DeviceCallGuard(1, 60000, 1);
+
+        // Act
+        CompletableFuture<String> reply = guard.callAsync(1, () -> CompletableFuture.failedFuture(new DeviceCallGuard.NotSentException("queued")));
+        CompletableFuture<String> next = guard.callAsync(1, () -> CompletableFuture.completedFuture("OK"));
+
+        // Assert
+        assertTrue(reply.isCompletedExceptionally());
+        assertEquals("OK", next.join());
+        assertEquals(DeviceCallGuard.State.CLOSED, guard.getState(1));
+        assertEquals(0L, guard.getStatistics().get("failures"));
+        assertEquals(1L, guard.getStatistics().get("rejectedQueued"));
+    }
+}
@@ -0,0 +1,116 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class DeviceRegistryTest {
+    private DeviceRegistry deviceRegistry;
+
+    @BeforeEach
+    void setUp() {
+        deviceRegistry = new DeviceRegistry();
+    }
+
+    private ServerSocketHandler handler(int deviceId) {
+        ServerSocketHandler handler = new ServerSocketHandler(mock(Socket.class));
+        handler.setDeviceId(deviceId);
+        return handler;
+    }
+
+    @Test
+    void testRegister_DeviceCanBeFoundById() {
+        // Arrange
+        ServerSocketHandler handler = handler(3456);
+
+        // Act
+        deviceRegistry.register(handler);
+
+        // Assert
+        assertSame(handler, deviceRegistry.get(3456));
+        assertTrue(deviceRegistry.contains(3456));
+        assertFalse(deviceRegistry.contains(1234));
+        assertNull(deviceRegistry.get(1234));
+    }
+
+    @Test
+    void testRegister_ReconnectReplacesOldConnection() {
+        // Arrange
+        ServerSocketHandler oldConnection = handler(3456);
+        ServerSocketHandler newConnection = handler(3456);
+        deviceRegistry.register(oldConnection);
+
+        // Act
+        ServerSocketHandler replaced = deviceRegistry.register(newConnection);
+
+        // Assert
+        assertSame(oldConnection, replaced);
+        assertSame(newConnection, deviceRegistry.get(3456));
+        assertEquals(1, deviceRegistry.size());
+        assertTrue(oldConnection.isClosed());
+        assertFalse(newConnection.isClosed());
+    }
+
+    @Test
+    void testUnregister_StaleConnectionDoesNotRemoveNewerOne() {
+        // Arrange
+        ServerSocketHandler oldConnection = handler(3456);
+        ServerSocketHandler newConnection = handler(3456);
+        deviceRegistry.register(oldConnection);
+        deviceRegistry.register(newConnection);
+
+        // Act and Assert
+        assertFalse(deviceRegistry.unregister(oldConnection));
+        assertSame(newConnection, deviceRegistry.get(3456));
+        assertTrue(deviceRegistry.unregister(newConnection));
+        assertFalse(deviceRegistry.contains(3456));
+    }
+
+    @Test
+    void testSnapshot_IsNotChangedByLaterConnects() {
+        // Arrange
+        deviceRegistry.register(handler(1));
+        List<ServerSocketHandler> snapshot = deviceRegistry.snapshot();
+
+        // Act
+        deviceRegistry.register(handler(2));
+
+        // Assert
+        assertEquals(1, snapshot.size());
+        assertEquals(2, deviceRegistry.snapshot().size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(handler(3)));
+    }
+
+    @Test
+    void testConnectionListener_ToldAboutConnectAndDisconnectOnce() {
+        // Arrange
+        List<String> events = new ArrayList<>();
+        deviceRegistry.setConnectionListener(new IConnectionListener() {
+            @Override
+            public void onConnected(int deviceId) {
+                events.add("connected:" + deviceId);
+            }
+
+            @Override
+            public void onDisconnected(int deviceId) {
+                events.add("disconnected:" + deviceId);
+            }
+        });
+        ServerSocketHandler handler = handler(3456);
+
+        // Act
+        deviceRegistry.register(handler);
+        deviceRegistry.register(handler);
+        deviceRegistry.unregister(handler);
+        deviceRegistry.unregister(handler);
+
+        // Assert
+        assertEquals(List.of("connected:3456", "disconnected:3456"), events);
+    }
+}
@@ -0,0 +1,89 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCodecTest {
+
+    @Test
+    void testFromText_ReadingIsEncodedCompactly() {
+        // Act
+        Frame frame = Frame.fromText("humid:25.0");
+
+        // Assert
+        assertEquals(Frame.READING, frame.getType());
+        assertEquals(5, frame.getPayload().length);
+        assertEquals("humid:25.0", frame.toText());
+    }
+
+    @Test
+    void testFromText_RoundTripsAllReplies() {
+        for (String reply : new String[]{"OK", "3456", "statu:OK", "statu:NOT OK", "level:42.5", "tempe:-3.5", "Threshold set"}) {
+            assertEquals(reply, Frame.fromText(reply).toText());
+        }
+    }
+
+    @Test
+    void testRead_ReadsWholeFrameFromStream() throws IOException {
+        // Arrange
+        byte[] bytes = FrameCodec.encode(Frame.command(7, "getHumidity"));
+
+        // Act
+        Frame frame = FrameCodec.read(new ByteArrayInputStream(bytes));
+
+        // Assert
+        assertEquals(Frame.COMMAND, frame.getType());
+        assertEquals(7, frame.getRequestId());
+        assertEquals("getHumidity", frame.toText());
+    }
+
+    @Test
+    void testRead_StreamEndsInTheMiddleOfFrame_ThrowsEOFException() {
+        // Arrange
+        byte[] bytes = FrameCodec.encode(Frame.command(1, "getHumidity"));
+        byte[] cut = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, cut, 0, cut.length);
+
+        // Act and Assert
+        assertThrows(EOFException.class, () -> FrameCodec.read(new ByteArrayInputStream(cut)));
+    }
+
+    @Test
+    void testDecode_SplitFrame_WaitsForTheRest() throws IOException {
+        // Arrange
+        byte[] bytes = FrameCodec.encode(Frame.fromText("level:42.5"));
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(bytes, 0, 4).flip();
+
+        // Act and Assert
+        assertNull(FrameCodec.decode(buffer));
+        assertEquals(0, buffer.position());
+
+        buffer.compact().put(bytes, 4, bytes.length - 4).flip();
+        assertEquals("level:42.5", FrameCodec.decode(buffer).toText());
+    }
+
+    @Test
+    void testDecode_GluedFrames_AreDecodedSeparately() throws IOException {
+        // Arrange
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(FrameCodec.encode(Frame.fromText("humid:25.0").withRequestId(1)))
+                .put(FrameCodec.encode(Frame.fromText("statu:OK").withRequestId(2)))
+                .flip();
+
+        // Act and Assert
+        Frame first = FrameCodec.decode(buffer);
+        Frame second = FrameCodec.decode(buffer);
+        assertEquals("humid:25.0", first.toText());
+        assertEquals(1, first.getRequestId());
+        assertEquals("statu:OK", second.toText());
+        assertEquals(2, second.getRequestId());
+        assertNull(FrameCodec.decode(buffer));
+    }
+}
@@ -0,0 +1,309 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioTCPServerTest {
+    private NioTCPServer nioTCPServer;
+    private Socket deviceSocket;
+
+    @BeforeEach
+    void setUp() {
+        nioTCPServer = new NioTCPServer(0, 2, 2000, "text");
+        nioTCPServer.startServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (deviceSocket != null) deviceSocket.close();
+        nioTCPServer.stopServer();
+    }
+
+    /**
+     * Connects a fake device that answers every request with the given replies, in order
+     */
+    private void connectDevice(String... replies) throws IOException {
+        deviceSocket = new Socket("localhost", nioTCPServer.getLocalPort());
+        InputStream in = deviceSocket.getInputStream();
+        OutputStream out = deviceSocket.getOutputStream();
+        Thread device = new Thread(() -> {
+            byte[] buffer = new byte[1024];
+            try {
+                for (String reply : replies) {
+                    if (in.read(buffer) == -1) return;
+                    out.write(reply.getBytes());
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        device.setDaemon(true);
+        device.start();
+    }
+
+    /**
+     * Connects a fake device speaking the framed protocol, every reply is written in two pieces to simulate TCP splitting it
+     */
+    private void connectFramedDevice(String... replies) throws IOException {
+        deviceSocket = new Socket("localhost", nioTCPServer.getLocalPort());
+        InputStream in = deviceSocket.getInputStream();
+        OutputStream out = deviceSocket.getOutputStream();
+        Thread device = new Thread(() -> {
+            try {
+                for (String reply : replies) {
+                    Frame command = FrameCodec.read(in);
+                    byte[] frame = FrameCodec.encode(Frame.fromText(reply).withRequestId(command.getRequestId()));
+                    out.write(frame, 0, 1);
+                    out.flush();
+                    Thread.sleep(20);
+                    out.write(frame, 1, frame.length - 1);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        device.setDaemon(true);
+        device.start();
+    }
+
+    private void waitForDevices(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && nioTCPServer.getIoTDevices().size() < count; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testHandshake_RegistersDeviceWithSerialNumber() throws Exception {
+        // Arrange
+        connectDevice("3456");
+
+        // Act
+        waitForDevices(1);
+
+        // Assert
+        assertEquals(1, nioTCPServer.getIoTDevices().size());
+        assertEquals(3456, nioTCPServer.getIoTDevices().get(0).getDeviceId());
+    }
+
+    @Test
+    void testGetDataById_DeviceAvailable_ReturnsReply() throws Exception {
+        // Arrange
+        connectDevice("3456", "humid:25.0");
+        waitForDevices(1);
+
+        // Act
+        String response = nioTCPServer.getDataById(3456, "getHumidity");
+
+        // Assert
+        assertEquals("humid:25.0", response);
+    }
+
+    @Test
+    void testSetIoTData_DeviceAnswersOK_ReturnsTrue() throws Exception {
+        // Arrange
+        connectDevice("3456", "OK");
+        waitForDevices(1);
+
+        // Act and Assert
+        assertTrue(nioTCPServer.setIoTData(3456, "calibrateDevice"));
+    }
+
+    @Test
+    void testGetDataById_DeviceNotPresent_ReturnsEmptyString() {
+        assertEquals("", nioTCPServer.getDataById(1, "getHumidity"));
+    }
+
+    @Test
+    void testHandshake_InvalidSerialNumber_DeviceIsNotRegistered() throws Exception {
+        // Arrange
+        connectDevice("not a number");
+
+        // Act
+        waitForDevices(1);
+
+        // Assert
+        assertTrue(nioTCPServer.getIoTDevices().isEmpty());
+    }
+
+    @Test
+    void testDisconnect_RemovesDevice() throws Exception {
+        // Arrange
+        connectDevice("3456");
+        waitForDevices(1);
+
+        // Act
+        deviceSocket.close();
+        for (int i = 0; i < 100 && !nioTCPServer.getIoTDevices().isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        // Assert
+        assertTrue(nioTCPServer.getIoTDevices().isEmpty());
+    }
+
+    @Test
+    void testRequestAsync_DeviceAvailable_CompletesWithReply() throws Exception {
+        // Arrange
+        connectDevice("3456", "level:42.0");
+        waitForDevices(1);
+
+        // Act
+        CompletableFuture<String> response = nioTCPServer.requestAsync(3456, "getCurrentLevel", Duration.ofSeconds(2));
+
+        // Assert
+        assertEquals("level:42.0", response.get());
+    }
+
+    @Test
+    void testRequestAsync_DeviceDoesNotAnswer_FailsWithTimeout() throws Exception {
+        // Arrange
+        connectDevice("3456");
+        waitForDevices(1);
+
+        // Act
+        CompletableFuture<String> response = nioTCPServer.requestAsync(3456, "getCurrentLevel", Duration.ofMillis(100));
+
+        // Assert
+        ExecutionException e = assertThrows(ExecutionException.class, response::get);
+        assertInstanceOf(TimeoutException.class, e.getCause());
+    }
+
+    /**
+     * A text reply carries nothing to tell which request it answers, so once a request has timed out
+     * a late reply would be taken for the next one; the connection is closed instead and the device has to reconnect
+     */
+    @Test
+    void testRequestAsync_TextDeviceDoesNotAnswerInTime_ClosesConnection() throws Exception {
+        // Arrange
+        connectDevice("3456");
+        waitForDevices(1);
+        ServerSocketHandler device = nioTCPServer.getIoTDevices().get(0);
+
+        // Act
+        CompletableFuture<String> response = nioTCPServer.requestAsync(3456, "getCurrentLevel", Duration.ofMillis(100));
+        assertThrows(ExecutionException.class, response::get);
+        for (int i = 0; i < 100 && !device.isClosed(); i++) Thread.sleep(20);     // Closed right after the caller is told
+
+        // Assert
+        assertTrue(device.isClosed());
+        assertFalse(nioTCPServer.isDeviceConnected(3456));
+    }
+
+    @Test
+    void testGetDataById_FramedDeviceDoesNotAnswerInTime_ClosesConnectionAndForgetsRequest() throws Exception {
+        // Arrange
+        nioTCPServer.stopServer();
+        nioTCPServer = new NioTCPServer(0, 2, 200, "framed");
+        nioTCPServer.startServer();
+        connectFramedDevice("3456");
+        waitForDevices(1);
+        ServerSocketHandler device = nioTCPServer.getIoTDevices().get(0);
+
+        // Act
+        String response = nioTCPServer.getDataById(3456, "getTemperature");
+        for (int i = 0; i < 100 && !device.isClosed(); i++) Thread.sleep(20);
+
+        // Assert
+        assertEquals("Client with an ID: 3456 disconnected", response);
+        assertTrue(device.isClosed());
+        assertEquals(0, device.pendingRequests.size());
+    }
+
+    @Test
+    void testSetIoTDataAsync_DeviceAnswersOK_CompletesWithTrue() throws Exception {
+        // Arrange
+        connectDevice("3456", "OK");
+        waitForDevices(1);
+
+        // Act and Assert
+        assertTrue(nioTCPServer.setIoTDataAsync(3456, "activateBuzzer", Duration.ofSeconds(2)).get());
+    }
+
+    @Test
+    void testFramedProtocol_SplitReplies_AreReassembled() throws Exception {
+        // Arrange
+        nioTCPServer.stopServer();
+        nioTCPServer = new NioTCPServer(0, 2, 2000, "framed");
+        nioTCPServer.startServer();
+        connectFramedDevice("3456", "tempe:21.5");
+        waitForDevices(1);
+
+        // Act
+        String response = nioTCPServer.getDataById(3456, "getTemperature");
+
+        // Assert
+        assertEquals("tempe:21.5", response);
+    }
+
+    @Test
+    void testFramedProtocol_PipelinedRequests_RepliesOutOfOrder_AreMatchedByRequestId() throws Exception {
+        // Arrange
+        nioTCPServer.stopServer();
+        nioTCPServer = new NioTCPServer(0, 2, 2000, "framed");
+        nioTCPServer.startServer();
+        deviceSocket = new Socket("localhost", nioTCPServer.getLocalPort());
+        InputStream in = deviceSocket.getInputStream();
+        OutputStream out = deviceSocket.getOutputStream();
+        Thread device = new Thread(() -> {
+            try {
+                Frame serialRequest = FrameCodec.read(in);
+                out.write(FrameCodec.encode(Frame.fromText("3456").withRequestId(serialRequest.getRequestId())));
+                out.flush();
+
+                Frame first = FrameCodec.read(in);
+                Frame second = FrameCodec.read(in);
+                for (Frame command : new Frame[]{second, first}) {
+                    String reply = command.toText().equals("getHumidity") ? "humid:25.0" : "statu:OK";
+                    out.write(FrameCodec.encode(Frame.fromText(reply).withRequestId(command.getRequestId())));
+                }
+                out.flush();
+            } catch (IOException ignored) {
+            }
+        });
+        device.setDaemon(true);
+        device.start();
+        waitForDevices(1);
+
+        // Act
+        CompletableFuture<String> humidity = nioTCPServer.requestAsync(3456, "getHumidity", Duration.ofSeconds(2));
+        CompletableFuture<String> status = nioTCPServer.requestAsync(3456, "getStatus", Duration.ofSeconds(2));
+
+        // Assert
+        assertEquals("humid:25.0", humidity.get());
+        assertEquals("statu:OK", status.get());
+    }
+
+    @Test
+    void testFramedProtocol_PushedReading_IsHandedToTelemetryListener() throws Exception {
+        // Arrange
+        nioTCPServer.stopServer();
+        nioTCPServer = new NioTCPServer(0, 2, 2000, "framed");
+        nioTCPServer.startServer();
+        BlockingQueue<Telemetry> received = new LinkedBlockingQueue<>();
+        nioTCPServer.setTelemetryListener(received::add);
+        connectFramedDevice("3456");
+        waitForDevices(1);
+
+        // Act
+        OutputStream out = deviceSocket.getOutputStream();
+        out.write(FrameCodec.encode(Frame.fromText("level:42.5")));
+        out.flush();
+
+        // Assert
+        Telemetry telemetry = received.poll(2, TimeUnit.SECONDS);
+        assertNotNull(telemetry);
+        assertEquals(3456, telemetry.getDeviceId());
+        assertEquals("level", telemetry.getSensor());
+        assertEquals(42.5, telemetry.getValue());
+    }
+}
@@ -0,0 +1,85 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PendingRequestsTest {
+    private final PendingRequests pendingRequests = new PendingRequests();
+
+    @Test
+    void testComplete_CompletesOnlyTheMatchingRequest() {
+        // Arrange
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        int firstId = pendingRequests.register(first);
+        int secondId = pendingRequests.register(second);
+
+        // Act
+        boolean completed = pendingRequests.complete(secondId, "statu:OK");
+
+        // Assert
+        assertTrue(completed);
+        assertNotEquals(firstId, secondId);
+        assertEquals("statu:OK", second.join());
+        assertFalse(first.isDone());
+        assertEquals(1, pendingRequests.size());
+    }
+
+    @Test
+    void testComplete_UnknownRequestId_ReturnsFalse() {
+        assertFalse(pendingRequests.complete(Frame.UNSOLICITED, "humid:25.0"));
+    }
+
+    @Test
+    void testRegister_TimedOutRequestIsRemoved() {
+        // Arrange
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        int requestId = pendingRequests.register(reply);
+
+        // Act
+        reply.orTimeout(1, TimeUnit.MILLISECONDS).exceptionally(e -> null).join();
+
+        // Assert
+        assertEquals(0, pendingRequests.size());
+        assertFalse(pendingRequests.complete(requestId, "late reply"));
+    }
+
+    @Test
+    void testRemove_GivenUpRequestIsDeregistered() {
+        // Arrange
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        int requestId = pendingRequests.register(reply);
+
+        // Act
+        boolean removed = pendingRequests.remove(requestId);
+
+        // Assert
+        assertTrue(removed);
+        assertTrue(reply.isCancelled());
+        assertEquals(0, pendingRequests.size());
+        assertFalse(pendingRequests.complete(requestId, "late reply"));
+        assertFalse(pendingRequests.remove(requestId));
+    }
+
+    @Test
+    void testFailAll_FailsEveryWaitingRequest() {
+        // Arrange
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        pendingRequests.register(first);
+        pendingRequests.register(second);
+
+        // Act
+        pendingRequests.failAll(new IOException("disconnected"));
+
+        // Assert
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, pendingRequests.size());
+    }
+}
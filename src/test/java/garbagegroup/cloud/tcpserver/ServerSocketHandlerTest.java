@@ -8,9 +8,17 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.*;
 import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.Mockito.*;
 
 class ServerSocketHandlerTest {
@@ -48,6 +56,129 @@ class ServerSocketHandlerTest {
         assertEquals("Response", response);
     }
 
+    @Test
+    void testSendMessage_FramedProtocol_ReadsWholeFrame() throws IOException {
+        // Arrange
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(FrameCodec.encode(Frame.fromText("humid:25.0").withRequestId(1)));
+        when(mockedSocket.getOutputStream()).thenReturn(outputStream);
+        when(mockedSocket.getInputStream()).thenReturn(inputStream);
+
+        serverSocketHandler = new ServerSocketHandler(mockedSocket, DeviceProtocol.FRAMED);
+        serverSocketHandler.setDeviceId(123);
+
+        // Act
+        String response = serverSocketHandler.sendMessage("getHumidity");
+
+        // Assert
+        assertEquals("humid:25.0", response);
+        assertEquals("getHumidity", FrameCodec.read(new ByteArrayInputStream(outputStream.toByteArray())).toText());
+    }
+
+    /**
+     * Two callers share one connection and the device answers their commands in reverse order,
+     * each caller still has to get the reply to its own command
+     */
+    @Test
+    void testSendMessage_FramedProtocol_ConcurrentRequestsGetTheirOwnReplies() throws Exception {
+        // Arrange
+        PipedOutputStream serverOut = new PipedOutputStream();
+        PipedInputStream deviceIn = new PipedInputStream(serverOut);
+        PipedOutputStream deviceOut = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(deviceOut);
+        when(mockedSocket.getOutputStream()).thenReturn(serverOut);
+        when(mockedSocket.getInputStream()).thenReturn(serverIn);
+
+        serverSocketHandler = new ServerSocketHandler(mockedSocket, DeviceProtocol.FRAMED);
+        serverSocketHandler.setDeviceId(123);
+
+        Thread device = new Thread(() -> {
+            try {
+                Frame first = FrameCodec.read(deviceIn);
+                Frame second = FrameCodec.read(deviceIn);
+                for (Frame command : new Frame[]{second, first}) {
+                    String reply = command.toText().equals("getHumidity") ? "humid:25.0" : "statu:OK";
+                    deviceOut.write(FrameCodec.encode(Frame.fromText(reply).withRequestId(command.getRequestId())));
+                    deviceOut.flush();
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        device.start();
+
+        // Act
+        CompletableFuture<String> humidity = CompletableFuture.supplyAsync(() -> serverSocketHandler.sendMessage("getHumidity"));
+        CompletableFuture<String> status = CompletableFuture.supplyAsync(() -> serverSocketHandler.sendMessage("getStatus"));
+
+        // Assert
+        assertEquals("humid:25.0", humidity.get());
+        assertEquals("statu:OK", status.get());
+        device.join();
+    }
+
+    /**
+     * The connection's reader holds the read lock and waits for frames without a socket timeout,
+     * a device that never replies must still not block the caller for longer than the reply timeout
+     */
+    @Test
+    void testSendMessage_FramedProtocol_DeviceNeverReplies_GivesUpAfterReplyTimeout() throws Exception {
+        // Arrange
+        PipedOutputStream deviceOut = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(deviceOut);
+        when(mockedSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(mockedSocket.getInputStream()).thenReturn(serverIn);
+
+        serverSocketHandler = new ServerSocketHandler(mockedSocket, DeviceProtocol.FRAMED);
+        serverSocketHandler.setDeviceId(123);
+        serverSocketHandler.setReplyTimeoutMillis(100);
+        CompletableFuture<Telemetry> readerStarted = new CompletableFuture<>();
+        serverSocketHandler.setTelemetryListener(readerStarted::complete);
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            try {
+                serverSocketHandler.listen();
+            } catch (IOException ignored) {
+            }
+        });
+        deviceOut.write(FrameCodec.encode(Frame.fromText("humid:25.0")));
+        deviceOut.flush();
+        readerStarted.get(5, TimeUnit.SECONDS);     // The reader holds the read lock from now on
+
+        // Act
+        String response = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> serverSocketHandler.sendMessage("getHumidity"));
+
+        // Assert
+        assertEquals("Client with an ID: 123 disconnected", response);
+        assertEquals(0, serverSocketHandler.pendingRequests.size());
+        assertTrue(serverSocketHandler.isClosed());
+        deviceOut.close();
+        reader.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testListen_FramedProtocol_PushedReadingsGoToListenerAndRepliesToCallers() throws Exception {
+        // Arrange
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream deviceBytes = new ByteArrayOutputStream();
+        deviceBytes.write(FrameCodec.encode(Frame.fromText("humid:25.0")));
+        deviceBytes.write(FrameCodec.encode(Frame.fromText("3456").withRequestId(7)));
+        deviceBytes.write(FrameCodec.encode(Frame.fromText("tempe:21.0")));
+        when(mockedSocket.getOutputStream()).thenReturn(outputStream);
+        when(mockedSocket.getInputStream()).thenReturn(new ByteArrayInputStream(deviceBytes.toByteArray()));
+
+        serverSocketHandler = new ServerSocketHandler(mockedSocket, DeviceProtocol.FRAMED);
+        serverSocketHandler.setDeviceId(123);
+        BlockingQueue<Telemetry> received = new LinkedBlockingQueue<>();
+        serverSocketHandler.setTelemetryListener(received::add);
+
+        // Act and Assert
+        assertThrows(EOFException.class, () -> serverSocketHandler.listen());
+        assertEquals(2, received.size());
+        Telemetry humidity = received.poll();
+        assertEquals(123, humidity.getDeviceId());
+        assertEquals("humid:25.0", humidity.toString());
+        assertEquals("tempe:21.0", received.poll().toString());
+    }
+
     @Test
     void testSendMessage_OutputStreamThrowsIOException() throws IOException {
         // Arrange
@@ -73,6 +204,26 @@ class ServerSocketHandlerTest {
         assertEquals("Client with an ID: 123 disconnected", response);
     }
 
+    @Test
+    void testSendMessage_DeviceClosedConnection_ClosesHandlerAndCallsOnClose() throws IOException {
+        // Arrange
+        when(mockedSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(mockedSocket.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        serverSocketHandler = new ServerSocketHandler(mockedSocket);
+        serverSocketHandler.setDeviceId(123);
+        CompletableFuture<ServerSocketHandler> closed = new CompletableFuture<>();
+        serverSocketHandler.setOnClose(closed::complete);
+
+        // Act
+        String response = serverSocketHandler.sendMessage("getHumidity");
+
+        // Assert
+        assertEquals("Client with an ID: 123 disconnected", response);
+        assertTrue(serverSocketHandler.isClosed());
+        assertSame(serverSocketHandler, closed.getNow(null));
+        verify(mockedSocket).close();
+    }
+
     @Test
     void testSendMessage_throwsNullPointerException_DueToInitializedOutputStream() {
         // Arrange
@@ -13,13 +13,21 @@ import javax.imageio.IIOException;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,7 +49,7 @@ class TCPServerTest {
     @Test
     void testGetHumidityById_ReturnsEmptyString_DeviceIsNotPresent() {
         // Arrange
-        tcpServer.IoTDevices = Collections.emptyList();
+        tcpServer.setIoTDevices(Collections.emptyList());
 
         // Act
         String response = tcpServer.getDataById(1, "getHumidity");
@@ -56,7 +64,7 @@ class TCPServerTest {
         ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
         when(mockHandler.getDeviceId()).thenReturn(1);
         when(mockHandler.sendMessage(anyString())).thenReturn("humidityData");
-        tcpServer.IoTDevices = Collections.singletonList(mockHandler);
+        tcpServer.setIoTDevices(Collections.singletonList(mockHandler));
 
         // Act
         String response = tcpServer.getDataById(1, "getHumidity");
@@ -65,11 +73,64 @@ class TCPServerTest {
         assertEquals("humidityData", response);
     }
 
+    @Test
+    void testRequestAsync_DeviceAvailable_CompletesWithReply() throws Exception {
+        // Arrange
+        ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
+        when(mockHandler.getDeviceId()).thenReturn(1);
+        when(mockHandler.sendMessage("getCurrentLevel")).thenReturn("level:42.0");
+        tcpServer.setIoTDevices(Collections.singletonList(mockHandler));
+
+        // Act
+        String response = tcpServer.requestAsync(1, "getCurrentLevel", Duration.ofSeconds(1)).get();
+
+        // Assert
+        assertEquals("level:42.0", response);
+    }
+
+    /**
+     * The only request thread is busy, so the second request times out while it is still queued
+     * It must not be sent once the thread is free again, the caller has long given up on it
+     */
+    @Test
+    void testRequestAsync_TimesOutWhileQueued_IsNeverSent() throws Exception {
+        // Arrange
+        tcpServer.useVirtualThreads(false, 1);
+        CountDownLatch busy = new CountDownLatch(1);
+        ServerSocketHandler slowHandler = mock(ServerSocketHandler.class);
+        when(slowHandler.getDeviceId()).thenReturn(1);
+        when(slowHandler.sendMessage("getCurrentLevel")).thenAnswer(invocation -> {
+            busy.await(5, TimeUnit.SECONDS);
+            return "level:42.0";
+        });
+        ServerSocketHandler queuedHandler = mock(ServerSocketHandler.class);
+        when(queuedHandler.getDeviceId()).thenReturn(2);
+        when(queuedHandler.sendMessage(anyString())).thenReturn("OK");
+        tcpServer.setIoTDevices(List.of(slowHandler, queuedHandler));
+        CompletableFuture<String> slow = tcpServer.requestAsync(1, "getCurrentLevel", Duration.ofSeconds(5));
+
+        // Act
+        CompletableFuture<String> queued = tcpServer.requestAsync(2, "activateBuzzer", Duration.ofMillis(50));
+        ExecutionException timedOut = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        busy.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+        tcpServer.requestAsync(2, "getStatus", Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);    // Runs after the queued one
+
+        // Assert
+        assertInstanceOf(TimeoutException.class, timedOut.getCause());
+        assertInstanceOf(DeviceCallGuard.NotSentException.class, timedOut.getCause());
+        verify(queuedHandler, never()).sendMessage("activateBuzzer");
+        verify(queuedHandler).sendMessage("getStatus");
+        // Waiting for a thread is not the device's fault, it must not count towards opening its circuit
+        assertEquals(0L, tcpServer.getCircuitStatistics().get("failures"));
+        assertEquals(1L, tcpServer.getCircuitStatistics().get("rejectedQueued"));
+    }
+
     @Test
     void testGetIoTDevices() {
         // Arrange / Act
         ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
-        tcpServer.IoTDevices = Collections.singletonList(mockHandler);
+        tcpServer.setIoTDevices(Collections.singletonList(mockHandler));
 
         // Assert
         assertEquals(Collections.singletonList(mockHandler), tcpServer.getIoTDevices());
@@ -98,7 +159,7 @@ class TCPServerTest {
         ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
         when(mockHandler.getDeviceId()).thenReturn(deviceId);
         when(mockHandler.sendMessage(payload)).thenReturn("OK");
-        tcpServer.IoTDevices = Collections.singletonList(mockHandler);
+        tcpServer.setIoTDevices(Collections.singletonList(mockHandler));
 
         // Act
         boolean result = tcpServer.setIoTData(deviceId, payload);
@@ -116,7 +177,7 @@ class TCPServerTest {
 
         ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
         when(mockHandler.getDeviceId()).thenReturn(deviceId + 1);
-        tcpServer.IoTDevices = Collections.singletonList(mockHandler);
+        tcpServer.setIoTDevices(Collections.singletonList(mockHandler));
 
         // Act
         boolean result = tcpServer.setIoTData(deviceId, payload);
@@ -128,63 +189,120 @@ class TCPServerTest {
 
     /**
      * This test is a bit funny because it tests the Thread-native run() method which just iterates forever and waits for new clients to connect
-     * Therefore, this test only tries the first iteration of the TCP server registering a client and then the code throws StringIndexOutOfBoundsException
-     * Because it tries to request a serial number from the second connected client (as the mocked clients just keep coming and connecting)
-     * But the OutputStream set up below only returns the message once (so only for the first client).
+     * Therefore, the mocked server socket accepts one client and then throws, which ends the loop.
+     * The client answers getSerialNumber with 123, so it has to be registered under that ID.
      *
      * @throws IOException because of mockedServerSocket.accept()
      */
     @Test
     public void testRun_ClientConnection_Success() throws IOException {
         // Arrange
-        int deviceId = 123;
         Socket mockedClientSocket = mock(Socket.class);
-        ServerSocketHandler mockHandler = mock(ServerSocketHandler.class);
-
-        when(mockedServerSocket.accept()).thenReturn(mockedClientSocket);
-        when(mockHandler.getDeviceId()).thenReturn(deviceId);
-
+        when(mockedServerSocket.accept()).thenReturn(mockedClientSocket).thenThrow(new IllegalStateException("No more clients"));
         tcpServer.setIoTDevices(new ArrayList<>());
 
         // Set up for the Server Socket Handler's input and output streams, so it actually send some data
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         ByteArrayInputStream inputStream = new ByteArrayInputStream("123".getBytes());
+        when(mockedClientSocket.getOutputStream()).thenReturn(outputStream);
+        when(mockedClientSocket.getInputStream()).thenReturn(inputStream);
 
-        try {
-            when(mockedClientSocket.getOutputStream()).thenReturn(outputStream);
-            when(mockedClientSocket.getInputStream()).thenReturn(inputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Act
+        assertThrows(IllegalStateException.class, () -> tcpServer.run());
+
+        // Assert
+        awaitDevice(123);     // The handshake runs after run() has moved on
+        assertTrue(tcpServer.isDeviceConnected(123));
+        verify(mockedClientSocket).setSoTimeout(anyInt());
+    }
+
+    @Test
+    public void testRun_ClientClosesConnectionBeforeSendingSerialNumber_IsNotRegistered() throws IOException {
+        // Arrange
+        Socket mockedClientSocket = mock(Socket.class);
+        when(mockedServerSocket.accept()).thenReturn(mockedClientSocket).thenThrow(new IllegalStateException("No more clients"));
+        tcpServer.setIoTDevices(new ArrayList<>());
+        when(mockedClientSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(mockedClientSocket.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
 
-        // Act and Assert
-        assertThrows(StringIndexOutOfBoundsException.class, () -> {
-            tcpServer.run();
+        // Act
+        assertThrows(IllegalStateException.class, () -> tcpServer.run());
 
-            verify(mockedServerSocket).accept(); // Verify the server accepted a connection
-            verify(mockHandler).getDeviceId(); // Verify the device ID was retrieved
-            verify(mockedClientSocket).close();
+        // Assert
+        awaitClose(mockedClientSocket);
+        verify(mockedClientSocket).close();
+        assertTrue(tcpServer.getIoTDevices().isEmpty());
+    }
+
+    @Test
+    public void testRun_SilentDevice_DoesNotHoldUpTheNextOne() throws IOException {
+        // Arrange
+        Socket silentSocket = mock(Socket.class);
+        when(silentSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(silentSocket.getInputStream()).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(5000);     // Like a device that never answers before the read timeout
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new SocketTimeoutException();
+            }
         });
+        Socket deviceSocket = mock(Socket.class);
+        when(deviceSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(deviceSocket.getInputStream()).thenReturn(new ByteArrayInputStream("456".getBytes()));
+        when(mockedServerSocket.accept()).thenReturn(silentSocket, deviceSocket).thenThrow(new IllegalStateException("No more clients"));
+        tcpServer.setIoTDevices(new ArrayList<>());
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> tcpServer.run());
+
+        // Assert
+        awaitDevice(456);
+        assertTrue(tcpServer.isDeviceConnected(456));
     }
 
     /**
+     * Once the server socket is closed, accept() keeps failing, so run() has to return instead of retrying forever
      *
      * @throws IOException
-     * @throws NullPointerException because it tries to read the ID of the client that just disconnected but it is null
      */
     @Test
-    public void testRun_ClientConnection_Failure() throws IOException {
+    public void testRun_ServerSocketClosed_StopsAccepting() throws IOException {
         // Arrange
         when(mockedServerSocket.accept()).thenThrow(IOException.class);
+        when(mockedServerSocket.isClosed()).thenReturn(true);
 
-        // Act and Assert
-        assertThrows(NullPointerException.class, () -> {
-            tcpServer.run();
+        // Act
+        tcpServer.run();
 
-            verify(mockedServerSocket).accept();
-        });
+        // Assert
+        verify(mockedServerSocket, times(1)).accept();
+        assertTrue(tcpServer.getIoTDevices().isEmpty());
+    }
 
+    // Socket's methods are synchronized, so verify(socket, timeout(...)) would hold the socket's lock while the handshake needs it
+    private void awaitClose(Socket socket) {
+        for (int i = 0; i < 100 && mockingDetails(socket).getInvocations().stream()
+                .noneMatch(invocation -> invocation.getMethod().getName().equals("close")); i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
+    private void awaitDevice(int deviceId) {
+        for (int i = 0; i < 100 && !tcpServer.isDeviceConnected(deviceId); i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
 
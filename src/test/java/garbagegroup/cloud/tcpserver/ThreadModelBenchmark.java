@@ -0,0 +1,108 @@
+package garbagegroup.cloud.tcpserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the bounded request pool with virtual threads for blocking device requests
+ * Every simulated device answers after a fixed latency, one request is sent to each device at the same time
+ * and the time until all replies are in is measured. Not a unit test, run it by hand:
+ *
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes garbagegroup.cloud.tcpserver.ThreadModelBenchmark [devices] [latencyMs] [requestThreads]
+ *
+ * Virtual threads need a Java 21 runtime, on an older one only the pool is measured.
+ */
+public class ThreadModelBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int requestThreads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        System.out.println(devices + " devices, " + latencyMillis + " ms device latency, Java " + Runtime.version());
+
+        run("pool of " + requestThreads + " platform threads", devices, latencyMillis, false, requestThreads);
+        if (VirtualThreads.isSupported()) {
+            run("virtual threads", devices, latencyMillis, true, requestThreads);
+        } else {
+            System.out.println("virtual threads: not supported by this runtime, skipped");
+        }
+    }
+
+    private static void run(String model, int devices, long latencyMillis, boolean virtualThreads, int requestThreads) throws Exception {
+        TCPServer tcpServer = new TCPServer();
+        tcpServer.useVirtualThreads(virtualThreads, requestThreads);
+        List<ServerSocketHandler> handlers = new ArrayList<>(devices);
+        for (int deviceId = 1; deviceId <= devices; deviceId++) {
+            ServerSocketHandler handler = new ServerSocketHandler(new SlowDeviceSocket(latencyMillis));
+            handler.setDeviceId(deviceId);
+            handlers.add(handler);
+        }
+        tcpServer.setIoTDevices(handlers);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> replies = new ArrayList<>(devices);
+        for (int deviceId = 1; deviceId <= devices; deviceId++) {
+            replies.add(tcpServer.requestAsync(deviceId, "getCurrentLevel", Duration.ofMinutes(10)));
+        }
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).join();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%s: %d replies in %d ms (%.0f requests/s), peak platform threads %d%n",
+                model, devices, elapsedMillis, devices * 1000.0 / Math.max(1, elapsedMillis), threads.getPeakThreadCount());
+        if (tcpServer.serverSocket != null) tcpServer.serverSocket.close();
+    }
+
+    /**
+     * Device connection that discards what it is sent and replies with a fill level after the latency
+     * The wait is a sleep, so it blocks the calling thread just like waiting on a real socket does
+     */
+    private static class SlowDeviceSocket extends Socket {
+        private final long latencyMillis;
+
+        private SlowDeviceSocket(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                    byte[] reply = "level:42.0".getBytes(StandardCharsets.UTF_8);
+                    int copied = Math.min(length, reply.length);
+                    System.arraycopy(reply, 0, buffer, offset, copied);
+                    return copied;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
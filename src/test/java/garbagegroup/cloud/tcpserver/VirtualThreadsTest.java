@@ -0,0 +1,49 @@
+package garbagegroup.cloud.tcpserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadsTest {
+
+    @Test
+    void testFactory_PlatformThreads_AreNamedDaemonThreads() {
+        // Arrange / Act
+        Thread thread = VirtualThreads.factory("iot-reader", false).newThread(() -> {});
+
+        // Assert
+        assertEquals("iot-reader-1", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    void testFactory_VirtualThreadsWanted_FallsBackToPlatformThreadsIfUnsupported() throws Exception {
+        // Arrange
+        CompletableFuture<String> ranOn = new CompletableFuture<>();
+
+        // Act
+        Thread thread = VirtualThreads.factory("iot-reader", true).newThread(() -> ranOn.complete(Thread.currentThread().getName()));
+        thread.start();
+
+        // Assert
+        assertTrue(ranOn.get(1, TimeUnit.SECONDS).startsWith("iot-reader"));
+        assertTrue(thread.isDaemon());     // Virtual threads are always daemon threads
+    }
+
+    @Test
+    void testPerTaskExecutor_RunsEveryTaskOnANewThread() throws Exception {
+        // Arrange
+        CompletableFuture<Thread> first = new CompletableFuture<>();
+        CompletableFuture<Thread> second = new CompletableFuture<>();
+
+        // Act
+        VirtualThreads.perTaskExecutor("iot-request").execute(() -> first.complete(Thread.currentThread()));
+        VirtualThreads.perTaskExecutor("iot-request").execute(() -> second.complete(Thread.currentThread()));
+
+        // Assert
+        assertNotSame(first.get(1, TimeUnit.SECONDS), second.get(1, TimeUnit.SECONDS));
+    }
+}